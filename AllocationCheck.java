@@ -0,0 +1,53 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+
+// The -allocations check of the headless runner: Explore and Backtrack Mode polls must not allocate
+class AllocationCheck {
+	/* Check that Explore and Backtrack Mode polls don't allocate. One controller solves the first run of every maze on this thread,
+	   as it would in the environment, and the first half of the mazes only warm the JIT up and grow the controller's storage. The
+	   first poll on a maze sets the maze up, and the poll that ends backtracking plans the path, so only polls which start and end
+	   in Explore or Backtrack Mode are counted; returns false if any of them allocated
+	 */
+	public static boolean run(String[] generatorNames, int size, int mazes) throws Exception {
+		long overhead = Long.MAX_VALUE;
+		long allocated, before;
+		long polls = 0, allocatingPolls = 0, allocatedBytes = 0;
+		boolean firstPoll, exploring;
+		GrandFinale controller = new GrandFinale();
+		HeadlessRobot robot;
+		Maze maze;
+
+		// Reading the allocation counter may allocate itself; take off the least it was seen to cost
+		for (int i = 0; i < 1000; i++) {
+			before = SolverMetrics.allocatedBytes();
+			overhead = Math.min(overhead, SolverMetrics.allocatedBytes() - before);
+		}
+
+		for (int i = 0; i < mazes; i++) {
+			maze = HeadlessRunner.createGenerator(generatorNames[i % generatorNames.length], size).generateMaze();
+			if (HeadlessRunner.shortestPathLength(maze) < 0) {
+				continue;
+			}
+			robot = new HeadlessRobot(maze);
+			firstPoll = true;
+			while (robot.isAtTarget() == false) {
+				exploring = controller.getSearchMode() < 2;
+				before = SolverMetrics.allocatedBytes();
+				controller.controlRobot(robot);
+				allocated = SolverMetrics.allocatedBytes() - before - overhead;
+				if (i >= mazes / 2 && firstPoll == false && exploring == true && controller.getSearchMode() < 2) {
+					polls++;
+					if (allocated > 0) {
+						allocatingPolls++;
+						allocatedBytes += allocated;
+					}
+				}
+				firstPoll = false;
+				robot.advance();
+			}
+			controller.reset();
+		}
+
+		System.out.printf("%d Explore and Backtrack polls checked, %d allocated (%d bytes)%n", polls, allocatingPolls, allocatedBytes);
+		return allocatingPolls == 0;
+	}
+}
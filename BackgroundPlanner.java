@@ -0,0 +1,208 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/* Plans the path the robot takes once it has finished exploring on a worker thread while the robot is still backtracking, so the
+   poll that switches to Shortest Path Mode only has to pick the plan up. Walls are only found while exploring, so the controller
+   logs each one; a request says how much of the log the plan is for, and the worker adds the walls it hasn't seen yet to its own
+   grid frame before planning. Plans are published whole through a volatile field: the controller reads the last finished plan
+   while the worker builds the next one, and never sees one half built. Handing a request over doesn't allocate: the planner
+   links itself into a list its worker takes from, and if it is already waiting there, the worker just plans the newest request.
+   There is a worker for each processor, so solvers running side by side don't queue behind each other; each planner is given
+   one of them in turn. The worker picks the planner the controller would pick for the first path once exploring ends: the tree
+   distance oracle on a maze without loops, Jump Point Search on an open maze, and otherwise only the grid frame, leaving the path
+   to the controller's junction graph, so a plan never resolves a tie between equally short paths differently
+ */
+class BackgroundPlanner {
+	private static final int WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+	private static final AtomicReferenceArray<BackgroundPlanner> waitingPlanners = new AtomicReferenceArray<BackgroundPlanner>(WORKER_COUNT); // Planners with a request each worker hasn't taken, linked through nextWaiting
+	private static final Thread[] workers = new Thread[WORKER_COUNT]; // Daemon threads, started when a planner is first given to them
+	private static final AtomicInteger plannersMade = new AtomicInteger();
+
+	private int workerIndex; // The worker that plans this planner's requests
+	private int gridSize; // Width and height of the grid the squares are indexed in
+	private int[] wallLog; // Squares of the walls found so far, in the order they were found
+	private int wallCount; // Number of walls in the log
+	private BackgroundPlanner nextWaiting; // The planner after this one in waitingPlanners
+
+	// The last request, so that asking again for the same plan is free; guarded by the planner's lock, as the worker reads them
+	private int[] requestedLog;
+	private int requestedWalls = -1; // Wall count of the last request, or -1 if nothing was requested yet
+	private int requestedSource, requestedTarget;
+	private boolean requestedLoopy;
+	private int requestedMazeX, requestedMazeY;
+	private boolean waiting; // True while the planner is in waitingPlanners
+	private volatile PlannedPath publishedPlan; // The last plan the worker finished, or null
+
+	// Only used by the worker thread
+	private int[][] gridFrame; // Walls logged so far
+	private int appliedWalls; // Number of logged walls already in gridFrame
+	private boolean frameIsPublished; // True if gridFrame was handed over with a plan, so it must be copied before adding walls
+	private JumpPointSearch jumpPointSearch; // Search for open mazes
+
+	// The wall log starts out with room for wallCapacity walls, e.g. as many as the last maze's log held, so it rarely has to grow
+	public BackgroundPlanner(int gridSize, int wallCapacity) {
+		this.gridSize = gridSize;
+		wallLog = new int[Math.max(16, wallCapacity)];
+		workerIndex = Math.floorMod(plannersMade.getAndIncrement(), WORKER_COUNT);
+	}
+
+	// Log a wall found by the robot
+	public void addWall(int square) {
+		if (wallCount == wallLog.length) {
+			wallLog = Arrays.copyOf(wallLog, wallCount * 2);
+		}
+		wallLog[wallCount++] = square;
+	}
+
+	public int getWallCount() {
+		return wallCount;
+	}
+
+	public int getWallCapacity() {
+		return wallLog.length;
+	}
+
+	// Ask for the path between two squares over the walls logged so far; returns at once, and does nothing if it was just asked for
+	public void request(int sourceSquare, int targetSquare, boolean mazeIsLoopy, int mazeX, int mazeY) {
+		BackgroundPlanner first;
+
+		// The lock makes the log written so far visible to the worker; the log only ever grows past the requested count
+		synchronized (this) {
+			if (wallCount == requestedWalls && sourceSquare == requestedSource && targetSquare == requestedTarget && mazeIsLoopy == requestedLoopy &&
+				mazeX == requestedMazeX && mazeY == requestedMazeY) {
+				return;
+			}
+			requestedLog = wallLog;
+			requestedWalls = wallCount;
+			requestedSource = sourceSquare;
+			requestedTarget = targetSquare;
+			requestedLoopy = mazeIsLoopy;
+			requestedMazeX = mazeX;
+			requestedMazeY = mazeY;
+			if (waiting == true) {
+				return;
+			}
+			waiting = true;
+		}
+		do {
+			first = waitingPlanners.get(workerIndex);
+			nextWaiting = first;
+		} while (waitingPlanners.compareAndSet(workerIndex, first, this) == false);
+		LockSupport.unpark(getWorker(workerIndex));
+	}
+
+	// Return the last plan finished, or null if there isn't one yet
+	public PlannedPath getPlan() {
+		return publishedPlan;
+	}
+
+	private static synchronized Thread getWorker(int index) {
+		if (workers[index] == null) {
+			workers[index] = new Thread(() -> planWaitingRequests(index), "GrandFinale planner " + (index + 1));
+			workers[index].setDaemon(true);
+			workers[index].start();
+		}
+		return workers[index];
+	}
+
+	// A worker's loop: take every planner waiting for it and plan its newest request, then sleep until another request comes
+	private static void planWaitingRequests(int index) {
+		BackgroundPlanner planner, next;
+
+		while (true) {
+			planner = waitingPlanners.getAndSet(index, null);
+			if (planner == null) {
+				LockSupport.park();
+			}
+			for (; planner != null; planner = next) {
+				next = planner.nextWaiting;
+				planner.nextWaiting = null;
+				planner.planRequest();
+			}
+		}
+	}
+
+	// Runs on the worker thread
+	private void planRequest() {
+		int[] walls;
+		int count, sourceSquare, targetSquare, mazeX, mazeY;
+		boolean mazeIsLoopy;
+
+		synchronized (this) {
+			walls = requestedLog;
+			count = requestedWalls;
+			sourceSquare = requestedSource;
+			targetSquare = requestedTarget;
+			mazeIsLoopy = requestedLoopy;
+			mazeX = requestedMazeX;
+			mazeY = requestedMazeY;
+			// A request made from here on links the planner in again
+			waiting = false;
+		}
+		plan(walls, count, sourceSquare, targetSquare, mazeIsLoopy, mazeX, mazeY);
+	}
+
+	// Runs on the worker thread
+	private void plan(int[] walls, int count, int sourceSquare, int targetSquare, boolean mazeIsLoopy, int mazeX, int mazeY) {
+		TreeDistanceOracle treeOracle = null;
+		HeadingPath path = null;
+		int openSquares = 0;
+		int currentSquare, heading;
+
+		// The controller may be using the frame of the last plan, so add the new walls to a copy of it
+		if (gridFrame == null) {
+			gridFrame = new int[gridSize][gridSize];
+		}
+		else if (frameIsPublished == true && appliedWalls < count) {
+			gridFrame = gridFrame.clone();
+			for (int i = 0; i < gridSize; i++) {
+				gridFrame[i] = gridFrame[i].clone();
+			}
+			frameIsPublished = false;
+		}
+		while (appliedWalls < count) {
+			gridFrame[walls[appliedWalls] / gridSize][walls[appliedWalls] % gridSize] = -1;
+			appliedWalls++;
+		}
+
+		for (int i = 1; i <= mazeX; i++) {
+			for (int j = 1; j <= mazeY; j++) {
+				if (gridFrame[i][j] != -1) {
+					openSquares++;
+				}
+			}
+		}
+
+		/* A maze without loops gets its tree distance oracle, and the path is read from it. An open maze is searched with Jump Point
+		   Search, and any other maze is left to the controller's junction graph
+		 */
+		if (mazeIsLoopy == false) {
+			treeOracle = new TreeDistanceOracle(gridSize);
+			if (treeOracle.build(gridFrame, sourceSquare / gridSize, sourceSquare % gridSize, targetSquare / gridSize, targetSquare % gridSize) == false) {
+				treeOracle = null;
+			}
+		}
+		if (treeOracle != null) {
+			path = new HeadingPath();
+			currentSquare = sourceSquare;
+			while (currentSquare != targetSquare) {
+				heading = treeOracle.nextHeading(currentSquare, targetSquare);
+				path.append(heading);
+				currentSquare += Headings.x(heading) * gridSize + Headings.y(heading);
+			}
+		}
+		else if (openSquares >= GrandFinale.OPEN_MAZE_RATIO * mazeX * mazeY) {
+			if (jumpPointSearch == null) {
+				jumpPointSearch = new JumpPointSearch(gridSize);
+			}
+			path = new HeadingPath();
+			if (jumpPointSearch.findPath(gridFrame, sourceSquare, targetSquare, path) == -1) {
+				return;
+			}
+		}
+		frameIsPublished = true;
+		publishedPlan = new PlannedPath(count, sourceSquare, targetSquare, mazeIsLoopy, mazeX, mazeY, gridFrame, treeOracle, openSquares, path);
+	}
+}
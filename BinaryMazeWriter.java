@@ -0,0 +1,51 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.awt.Point;
+
+/* Writes a binary maze file row by row, so a maze from StreamingMazeGenerator goes to disk without ever being held whole. The
+   file is a 40 byte header (magic, version, width, height, start, finish, flags), then one bit per square, set for walls, in
+   row order (bit i of the section is square (i % width, i / width)), padded to a multiple of 4 bytes. The optional distance
+   section that may follow is added by MappedMaze.addDistances
+ */
+class BinaryMazeWriter implements MazeRowSink, Closeable {
+	private OutputStream output;
+	private int width;
+	private long bitsWritten; // Squares written so far
+	private int pendingByte; // Bits of the byte not yet written
+	private long bitBytes; // Length of the wall section, padding included
+
+	public BinaryMazeWriter(File file, int width, int height, Point start, Point finish) throws IOException {
+		output = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		this.width = width;
+		bitBytes = MappedMaze.wallSectionLength(width, height);
+		output.write(ByteBuffer.allocate(MappedMaze.HEADER_LENGTH).putInt(MappedMaze.FILE_MAGIC).putInt(MappedMaze.VERSION).putInt(width).putInt(height)
+			.putInt(start.x).putInt(start.y).putInt(finish.x).putInt(finish.y).putInt(0).putInt(0).array());
+	}
+
+	// Rows must come in order, from y = 0
+	public void acceptRow(int y, int[] cellTypes) throws IOException {
+		for (int x = 0; x < width; x++) {
+			if (cellTypes[x] == Maze.WALL) {
+				pendingByte |= 1 << (bitsWritten & 7);
+			}
+			bitsWritten++;
+			if ((bitsWritten & 7) == 0) {
+				output.write(pendingByte);
+				pendingByte = 0;
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		long bytesWritten = (bitsWritten + 7) / 8;
+
+		if ((bitsWritten & 7) != 0) {
+			output.write(pendingByte);
+		}
+		for (; bytesWritten < bitBytes; bytesWritten++) {
+			output.write(0);
+		}
+		output.close();
+	}
+}
@@ -0,0 +1,214 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+
+/* Distances from the target's square in the chase games, kept from one poll to the next so that neither side's move needs a new
+   search. Squares are settled as in A* towards the robot's square, and the open set is kept for the next poll. A robot that
+   steps onto a settled square costs nothing, and one that steps past them makes the search carry on from where it stopped. The
+   robot's steps make the estimates in the open set stale, so, as in D* Lite, every key is raised by the distance the robot
+   has gone since it was given, which keeps each key a lower bound, and a square whose key was too low goes back in with the
+   right one when it comes out first. A target that takes a step towards the robot keeps every square whose path runs through
+   its new square, one step closer now, and drops the rest; the squares it dropped that border the kept ones go back into the
+   open set. Squares are indexed x * gridSize + y
+ */
+class ChaseField {
+	private static final int KEY_LIMIT = 1 << 20; // Start again before the keys, times 1024, could overflow
+
+	private int gridSize; // Width and height of the grid the squares are indexed in
+	private int[][] grid; // -1 for walls
+	private int width, height;
+	private int rootSquare; // The target's square
+	private int robotSquare; // The robot's square in the last poll, or -1 before the first one
+	private int keyModifier; // Distance the robot has gone since the search started
+	private int[] storedDistance; // Steps from the target's square to each settled or open square, plus the steps the target took since the search started
+	private int[] parent; // The square each settled or open square is reached from, or -1 for the target's square
+	private int[] settled; // search for the squares settled in the current search, anything else for the rest
+	private int search; // Number of the current search, even; a dropped square is set to the odd number below it
+	private int[] firstChild, nextSibling; // The settled squares reached from each settled square, as linked lists
+	private IndexedSquareHeap openSquares; // Squares next to settled ones, by their key
+	private int[] stack; // Squares still to drop when the target moves
+	private int[] dropped; // Squares dropped or taken out of the open set, which may have to go back into it
+	private int[] droppedRound; // dropRound for the squares already in dropped
+	private int dropRound; // Number of the target's last move
+
+	public ChaseField(int gridSize) {
+		this.gridSize = gridSize;
+		storedDistance = new int[gridSize * gridSize];
+		parent = new int[gridSize * gridSize];
+		settled = new int[gridSize * gridSize];
+		firstChild = new int[gridSize * gridSize];
+		nextSibling = new int[gridSize * gridSize];
+		openSquares = new IndexedSquareHeap(gridSize * gridSize);
+		stack = new int[gridSize * gridSize];
+		dropped = new int[gridSize * gridSize];
+		droppedRound = new int[gridSize * gridSize];
+	}
+
+	// Start again from the target's square over the non-wall squares of the grid that lie within the given width and height
+	public void start(int[][] grid, int width, int height, int targetSquare) {
+		this.grid = grid;
+		this.width = width;
+		this.height = height;
+		robotSquare = -1;
+		restart(targetSquare);
+	}
+
+	/* Return the heading of the target's first step on a shortest path to the robot's square, or -1 if the target is on it or
+	   can't reach it. The search only goes on if the robot's square isn't settled yet; the heading is then found by following
+	   the settled squares back from the robot's square
+	 */
+	public int headingTowards(int robotSquare) {
+		int square = robotSquare;
+
+		if (this.robotSquare != -1) {
+			keyModifier += manhattanDistance(this.robotSquare, robotSquare);
+		}
+		this.robotSquare = robotSquare;
+		if (keyModifier + storedDistance[rootSquare] > KEY_LIMIT) {
+			restart(rootSquare);
+		}
+
+		if (robotSquare == rootSquare || settle(robotSquare) == false) {
+			return -1;
+		}
+		while (parent[square] != rootSquare) {
+			square = parent[square];
+		}
+		return Headings.between(rootSquare, square, gridSize);
+	}
+
+	/* Make the target's new square the root. A step towards the robot is always onto a settled square reached from the old one:
+	   the squares reached through it keep their paths, and the others are dropped. Any other square starts the search again
+	 */
+	public void moveTarget(int targetSquare) {
+		int square, child;
+		int droppedCount = 0;
+
+		if (targetSquare == rootSquare) {
+			return;
+		}
+		if (settled[targetSquare] != search || parent[targetSquare] != rootSquare) {
+			restart(targetSquare);
+			return;
+		}
+
+		// Drop the old root and every square reached from it other than through the new one
+		dropRound++;
+		stack[0] = rootSquare;
+		for (int stackSize = 1; stackSize > 0; ) {
+			square = stack[--stackSize];
+			settled[square] = search - 1;
+			droppedRound[square] = dropRound;
+			dropped[droppedCount++] = square;
+			for (child = firstChild[square]; child != -1; child = nextSibling[child]) {
+				if (child != targetSquare) {
+					stack[stackSize++] = child;
+				}
+			}
+		}
+		parent[targetSquare] = -1;
+		rootSquare = targetSquare;
+
+		// Open squares reached from a dropped square have the wrong distance now, so they are taken out too
+		for (int i = 0; i < droppedCount; i++) {
+			square = dropped[i];
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				child = neighbour(square, heading);
+				if (child != -1 && openSquares.contains(child) == true && settled[parent[child]] != search) {
+					openSquares.remove(child);
+					if (droppedRound[child] != dropRound) {
+						droppedRound[child] = dropRound;
+						dropped[droppedCount++] = child;
+					}
+				}
+			}
+		}
+		// Every square taken out that borders a kept square goes back into the open set from the nearest one
+		for (int i = 0; i < droppedCount; i++) {
+			square = dropped[i];
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				child = neighbour(square, heading);
+				if (child != -1 && settled[child] == search) {
+					open(square, child);
+				}
+			}
+		}
+	}
+
+	// Settle squares until the given one is settled; returns false if it can't be reached
+	private boolean settle(int targetSquare) {
+		int square, next;
+		int firstKey;
+
+		while (settled[targetSquare] != search) {
+			if (openSquares.isEmpty() == true) {
+				return false;
+			}
+			firstKey = openSquares.firstPriority();
+			square = openSquares.removeFirst();
+			// A key given before the robot moved may be too low; the square then has to wait for its turn
+			if (key(square) > firstKey) {
+				openSquares.addOrDecrease(square, key(square));
+				continue;
+			}
+			settled[square] = search;
+			firstChild[square] = -1;
+			nextSibling[square] = firstChild[parent[square]];
+			firstChild[parent[square]] = square;
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				next = neighbour(square, heading);
+				if (next != -1 && settled[next] != search) {
+					open(next, square);
+				}
+			}
+		}
+		return true;
+	}
+
+	// Put a square into the open set as reached from a settled neighbour, unless it is already there with a path as short
+	private void open(int square, int from) {
+		if (openSquares.contains(square) == true && storedDistance[square] <= storedDistance[from] + 1) {
+			return;
+		}
+		storedDistance[square] = storedDistance[from] + 1;
+		parent[square] = from;
+		// A square already in the open set keeps its key if that is lower, which is still a lower bound
+		openSquares.addOrDecrease(square, key(square));
+	}
+
+	// Among squares with the same estimate, the one closest to the robot comes first, or an open area is settled square by square
+	private int key(int square) {
+		int distance = robotSquare == -1 ? 0 : manhattanDistance(square, robotSquare);
+
+		return (storedDistance[square] + distance + keyModifier) * 1024 + distance;
+	}
+
+	private void restart(int targetSquare) {
+		search += 2;
+		keyModifier = 0;
+		openSquares.clear();
+		rootSquare = targetSquare;
+		storedDistance[targetSquare] = 0;
+		parent[targetSquare] = -1;
+		settled[targetSquare] = search;
+		firstChild[targetSquare] = -1;
+		for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+			if (neighbour(targetSquare, heading) != -1) {
+				open(neighbour(targetSquare, heading), targetSquare);
+			}
+		}
+	}
+
+	private int manhattanDistance(int square, int otherSquare) {
+		return Math.abs(square / gridSize - otherSquare / gridSize) + Math.abs(square % gridSize - otherSquare % gridSize);
+	}
+
+	// Return the square next to the given one in a heading, or -1 if it is a wall or off the grid
+	private int neighbour(int square, int heading) {
+		int testX = square / gridSize + Headings.x(heading);
+		int testY = square % gridSize + Headings.y(heading);
+
+		if (testX < 0 || testX >= width || testY < 0 || testY >= height || grid[testX][testY] == -1) {
+			return -1;
+		}
+		return testX * gridSize + testY;
+	}
+}
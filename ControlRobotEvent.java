@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR event for one poll of the controller; its duration is the time spent in controlRobot
+@Name("grandfinale.ControlRobot")
+@Label("Control Robot")
+@Category("Maze Solver")
+@Description("One poll of the maze solver")
+@StackTrace(false)
+class ControlRobotEvent extends jdk.jfr.Event {
+	@Label("Search Mode")
+	@Description("0 Explore, 1 Backtrack, 2 Shortest Path, 3 Prim game, 4 Loopy game, 5 Tetris")
+	int searchMode;
+
+	@Label("Run")
+	int run;
+
+	@Label("Robot Calls")
+	int robotCalls;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocatedBytes;
+}
@@ -0,0 +1,147 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The -robots option of the headless runner: explore every maze with each number of robots sharing one map
+class CooperativeExplorationCheck {
+	// Outcome of several robots exploring a maze together
+	private static class CooperativeResult {
+		public int movesToMap; // Moves each robot made before the shared map held the whole maze
+		public long[] laterRunSteps; // Steps of the first robot's runs after the first
+		public volatile String failure; // Why a robot did not finish, or null if they all did
+	}
+
+	/* Explore every maze with each number of robots in turn and print the moves it took them to map the whole maze, against the
+	   first count given; returns false if a robot failed or a later run missed the shortest path
+	 */
+	public static boolean run(String[] generatorNames, int size, int mazes, int runs, int[] robotCounts) throws Exception {
+		Map<String, long[]> movesToMap = new LinkedHashMap<String, long[]>(); // Total moves to map the mazes of each generator, by robot count
+		Map<String, Integer> mazeCounts = new LinkedHashMap<String, Integer>();
+		long laterRuns = 0, optimalRuns = 0;
+		long startTime = System.nanoTime();
+		boolean allOptimal = true;
+		CooperativeResult result;
+		Maze maze;
+		int optimalSteps;
+
+		for (String generatorName : generatorNames) {
+			movesToMap.put(generatorName, new long[robotCounts.length]);
+			mazeCounts.put(generatorName, 0);
+		}
+		for (int i = 0; i < mazes; i++) {
+			String generatorName = generatorNames[i % generatorNames.length];
+
+			maze = HeadlessRunner.createGenerator(generatorName, size).generateMaze();
+			optimalSteps = HeadlessRunner.shortestPathLength(maze);
+			if (optimalSteps < 0) {
+				continue;
+			}
+			mazeCounts.put(generatorName, mazeCounts.get(generatorName) + 1);
+			for (int j = 0; j < robotCounts.length; j++) {
+				result = exploreTogether(maze, robotCounts[j], runs);
+				if (result.failure != null) {
+					System.out.println(generatorName + " with " + robotCounts[j] + " robots: " + result.failure);
+					allOptimal = false;
+					continue;
+				}
+				movesToMap.get(generatorName)[j] += result.movesToMap;
+				for (long steps : result.laterRunSteps) {
+					laterRuns++;
+					if (steps == optimalSteps) {
+						optimalRuns++;
+					}
+				}
+			}
+		}
+
+		System.out.printf("%-10s %7s", "Generator", "Mazes");
+		for (int robotCount : robotCounts) {
+			System.out.printf(" %18s", robotCount + (robotCount == 1 ? " robot" : " robots"));
+		}
+		System.out.println();
+		for (String generatorName : generatorNames) {
+			long[] totals = movesToMap.get(generatorName);
+
+			System.out.printf("%-10s %7d", generatorName, mazeCounts.get(generatorName));
+			for (int j = 0; j < robotCounts.length; j++) {
+				System.out.printf(" %10.1f %6.2fx", (double)totals[j] / Math.max(1, mazeCounts.get(generatorName)), (double)totals[0] / Math.max(1, totals[j]));
+			}
+			System.out.println();
+		}
+		System.out.printf("Moves until the robots had mapped the whole maze, and the speed-up over %d robot%s; %d of %d later runs optimal, in %.2f s%n",
+			robotCounts[0], robotCounts[0] == 1 ? "" : "s", optimalRuns, laterRuns, (System.nanoTime() - startTime) / 1e9);
+		return allOptimal == true && optimalRuns == laterRuns;
+	}
+
+	/* Explore a maze with several robots at once, each with its own controller on its own thread, all sharing one map. The robots
+	   move in lock step, as robots moving at the same speed would, until the map holds the whole maze; then each one heads for the
+	   target on its own, and the first robot's controller carries on with the later runs
+	 */
+	private static CooperativeResult exploreTogether(Maze maze, int robotCount, int runs) throws Exception {
+		SharedMazeMap sharedMap = new SharedMazeMap(HeadlessRunner.GRID_SIZE);
+		CooperativeResult result = new CooperativeResult();
+		AtomicInteger movesToMap = new AtomicInteger();
+		long maxPolls = (long)HeadlessRunner.POLLS_PER_SQUARE * maze.getWidth() * maze.getHeight();
+		Thread[] threads = new Thread[robotCount];
+		// The last robot to finish a move checks the map, while no robot is moving
+		Phaser moves = new Phaser(robotCount) {
+			protected boolean onAdvance(int phase, int registeredParties) {
+				if (sharedMap.isExplored() == true) {
+					movesToMap.set(phase + 1);
+					return true;
+				}
+				return registeredParties == 0;
+			}
+		};
+
+		result.laterRunSteps = new long[runs - 1];
+		for (int i = 0; i < robotCount; i++) {
+			final boolean firstRobot = i == 0;
+			GrandFinale controller = new GrandFinale();
+			HeadlessRobot robot = new HeadlessRobot(maze);
+
+			controller.joinExploration(sharedMap);
+			threads[i] = new Thread(() -> {
+				try {
+					for (int run = 0; run < (firstRobot == true ? runs : 1); run++) {
+						for (long polls = 0; robot.isAtTarget() == false; polls++) {
+							if (polls == maxPolls) {
+								throw new IllegalStateException("run " + run + " did not reach the target");
+							}
+							controller.controlRobot(robot);
+							robot.advance();
+							if (moves.isTerminated() == false) {
+								moves.arriveAndAwaitAdvance();
+							}
+						}
+						if (run > 0) {
+							result.laterRunSteps[run - 1] = robot.getSteps();
+						}
+						controller.reset();
+						robot.reset();
+					}
+				}
+				catch (RuntimeException e) {
+					result.failure = e.toString();
+				}
+				finally {
+					if (moves.isTerminated() == false) {
+						moves.arriveAndDeregister();
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		result.movesToMap = movesToMap.get();
+		if (result.failure == null && result.movesToMap == 0) {
+			result.failure = "the robots never mapped the whole maze";
+		}
+		return result;
+	}
+}
@@ -0,0 +1,63 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.awt.Point;
+
+// Robot that passes every call on to another robot and counts them; used to measure the robot calls made in a poll
+class CountingRobot implements IRobot {
+	private IRobot robot;
+	private int calls;
+
+	// Start counting the calls made to a robot from zero
+	public void wrap(IRobot robot) {
+		this.robot = robot;
+		calls = 0;
+	}
+
+	public int getCalls() {
+		return calls;
+	}
+
+	public int getRuns() {
+		calls++;
+		return robot.getRuns();
+	}
+
+	public int look(int direction) {
+		calls++;
+		return robot.look(direction);
+	}
+
+	public void face(int direction) {
+		calls++;
+		robot.face(direction);
+	}
+
+	public void setHeading(int heading) {
+		calls++;
+		robot.setHeading(heading);
+	}
+
+	public int getHeading() {
+		calls++;
+		return robot.getHeading();
+	}
+
+	public Point getLocation() {
+		calls++;
+		return robot.getLocation();
+	}
+
+	public Point getTargetLocation() {
+		calls++;
+		return robot.getTargetLocation();
+	}
+
+	public Maze getMaze() {
+		calls++;
+		return robot.getMaze();
+	}
+
+	public void sleep(int milliseconds) {
+		calls++;
+		robot.sleep(milliseconds);
+	}
+}
@@ -0,0 +1,49 @@
+import java.util.*;
+
+/* Grid of ints which can be put back to a base grid, or to all zeros, in constant time. Every cell remembers the epoch it was
+   last written in, and a cell not written in the current epoch reads as the base grid's value; starting a new epoch forgets
+   all the writes at once, instead of copying or clearing the whole grid
+ */
+class EpochGrid {
+	private int size; // Width and height of the grid; cells are indexed x * size + y
+	private int[] values; // Value written to each cell
+	private int[] stamps; // Epoch each cell was last written in
+	private int epoch = 1; // Cells stamped with anything else read as the base grid
+	private int[][] baseGrid; // What unwritten cells read as, or null for zeros
+
+	public EpochGrid(int size) {
+		this.size = size;
+		values = new int[size * size];
+		stamps = new int[size * size];
+	}
+
+	public int get(int x, int y) {
+		int cell = x * size + y;
+
+		if (stamps[cell] == epoch) {
+			return values[cell];
+		}
+		return baseGrid == null ? 0 : baseGrid[x][y];
+	}
+
+	public void set(int x, int y, int value) {
+		values[x * size + y] = value;
+		stamps[x * size + y] = epoch;
+	}
+
+	// Forget every write, so that all the cells read as zeros
+	public void clear() {
+		restore(null);
+	}
+
+	// Forget every write, so that all the cells read as the base grid; the base grid is read from, never copied
+	public void restore(int[][] baseGrid) {
+		this.baseGrid = baseGrid;
+		// Only once in four billion epochs do the stamps have to be cleared for real
+		if (epoch == Integer.MAX_VALUE) {
+			Arrays.fill(stamps, 0);
+			epoch = 0;
+		}
+		epoch++;
+	}
+}
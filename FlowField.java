@@ -0,0 +1,65 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+
+/* Headings that lead every square towards one source square, found by a breadth-first search out from the source. Built once,
+   it tells any number of pursuers their next step to the source with one look-up each. Squares are indexed x * gridSize + y
+ */
+class FlowField {
+	private int gridSize; // Width and height of the grid the squares are indexed in
+	private EpochGrid distance; // Steps from each square to the source plus one, or 0 if the square wasn't reached in the last build
+	private ParentHeadings towardSource; // Heading each reached square takes for its first step to the source
+	private int[] queue; // Squares in the order the search reached them
+	private int reachedCount; // Number of squares reached in the last build
+
+	public FlowField(int gridSize) {
+		this.gridSize = gridSize;
+		distance = new EpochGrid(gridSize);
+		towardSource = new ParentHeadings(gridSize * gridSize);
+		queue = new int[gridSize * gridSize];
+	}
+
+	// Search out from the source square over the non-wall squares of the grid that lie within the given width and height
+	public void build(int[][] grid, int width, int height, int sourceSquare) {
+		int squareX, squareY, steps;
+		int testX, testY;
+
+		distance.clear();
+		distance.set(sourceSquare / gridSize, sourceSquare % gridSize, 1);
+		queue[0] = sourceSquare;
+		reachedCount = 1;
+		for (int head = 0; head < reachedCount; head++) {
+			squareX = queue[head] / gridSize;
+			squareY = queue[head] % gridSize;
+			steps = distance.get(squareX, squareY) + 1;
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				testX = squareX + Headings.x(heading);
+				testY = squareY + Headings.y(heading);
+				if (testX < 0 || testX >= width || testY < 0 || testY >= height || grid[testX][testY] == -1 || distance.get(testX, testY) != 0) {
+					continue;
+				}
+				distance.set(testX, testY, steps);
+				// The new square gets one step closer to the source by going back the way the search came
+				towardSource.set(testX * gridSize + testY, (heading - IRobot.NORTH + 2) % 4 + IRobot.NORTH);
+				queue[reachedCount++] = testX * gridSize + testY;
+			}
+		}
+	}
+
+	// Return the number of steps from a square to the source, or -1 if the source can't be reached from it
+	public int getDistance(int square) {
+		return distance.get(square / gridSize, square % gridSize) - 1;
+	}
+
+	// Return the heading of the first step from a reached square, other than the source, towards the source
+	public int nextHeading(int square) {
+		return towardSource.get(square);
+	}
+
+	public int getReachedCount() {
+		return reachedCount;
+	}
+
+	// Return the square the search reached in the given position; squares further along are never closer to the source
+	public int getReachedSquare(int position) {
+		return queue[position];
+	}
+}
@@ -1,113 +1,48 @@
 import uk.ac.warwick.dcs.maze.logic.*;
 import java.util.*;
+import java.io.*;
 import java.awt.event.*;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Point;
 import javax.swing.*;
 
-// Custom comparator for the A* priority queue; will order according to Manhattan distance to target
-class ManhattanDistanceComparator implements Comparator<SquareData> {
-    @Override
-    public int compare(SquareData a, SquareData b) {
-        if (a.getPriority() < b.getPriority()) {
-            return -1;
-        }
-        if (a.getPriority() > b.getPriority()) {
-            return 1;
-        }
-        return 0;
-    }
-}
-
-// Class for storing a square's coordinates and the square's priority
-class SquareData {
-	private Point location;
-	private int priority;
-
-	public SquareData(Point location, int priority) {
-		this.location = location;
-		this.priority = priority;
-	}
-
-	public Point getLocation() {
-		return location;
-	}
-
-	public int getPriority() {
-		return priority;
-	}
-
-	// Print the square data in a readable format; useful for debugging
-	public void printData() {
-		System.out.println("X = " + location.x + ", Y = " + location.y + ", Priority = " + priority);
-	}
-}
-
-// Store data about a single junction - its coordinates and the direction the robot arrived from
-class JunctionRecorder {
-	private Point junctionSquare;
-	private int arrived;
-
-	public JunctionRecorder(Point junctionSquare, int arrived) {
-		this.junctionSquare = junctionSquare;
-		this.arrived = arrived;
-	}
-
-	public Point getJunctionSquare() {
-		return junctionSquare;
-	}
-
-	public int getArrived() {
-		return arrived;
-	}
-
-	// Print the junction in a readable format; useful for debugging
-	public void printJunction() {
-		String direction;
-
-		switch (arrived) {
-			case (IRobot.NORTH):
-				direction = "NORTH";
-				break;
-			case (IRobot.EAST):
-				direction = "EAST";
-				break;
-			case (IRobot.SOUTH):
-				direction = "SOUTH";
-				break;
-			default:
-				direction = "WEST";
-				break;
-		}
-
-		System.out.println("Junction at (x=" + junctionSquare.x + ",y=" + junctionSquare.y + "), heading from " + direction);
-	}
-}
-
 // Use DFS to explore the entire maze and store this information into an array, then use A* to find the shortest path
 public class GrandFinale {
+	private static final String[] POLL_METRICS = {"controlRobot.explore.nanos", "controlRobot.backtrack.nanos", "controlRobot.shortestPath.nanos",
+												  "controlRobot.primGame.nanos", "controlRobot.loopyGame.nanos", "controlRobot.tetris.nanos",
+												  "controlRobot.join.nanos"}; // Poll latency metric of each search mode
+	private static final String[] PLANNER_NAMES = {"treeOracle", "jumpPointSearch", "junctionGraph", "hierarchical", "aStar"}; // Planners findShortestPath can pick, for the metrics
+	private static final String[] SEARCH_METRICS = {"pathSearch.treeOracle.nanos", "pathSearch.jumpPointSearch.nanos", "pathSearch.junctionGraph.nanos",
+													"pathSearch.hierarchical.nanos", "pathSearch.aStar.nanos"};
+	private static final int A_STAR = 4; // Index of A* in PLANNER_NAMES
+
 	private final int MAX_MAZE_SIZE = 405; // Constant for maximum maze size
+	static final double OPEN_MAZE_RATIO = 0.75; // Fraction of passage squares above which a maze is searched with Jump Point Search
+	private final int CLUSTER_SIZE = 16; // Width and height of the clusters of the hierarchical planner
+	private final int HIERARCHICAL_MIN_AREA = 150 * 150; // Explored area from which a grid frame searched again and again gets the hierarchical planner
+	private final int HIERARCHICAL_SEARCHES = 8; // A* searches of one grid frame after which the hierarchical planner is built for it
 
 	private int pollRun; // Incremented after each pass
-	private int stepCounter; // Store the index of the step in the shortestPath sequence that the robot needs to follow
-	private int[] shortestPath; // Store the sequence of headings the robot has to use to get to the target on the shortest path
-	private int[][] mazeGrid; /* Store information about the grid. -1 will always represent a wall.
-								 In the first run, a cell will be 1 if its corresponding square is a visited junction,
-								 or 0 otherwise; in subsequent runs, non-negative numbers will represent the
-								 minimum number of steps required to get to that square */
+	private HeadingPath shortestPath = new HeadingPath(); // Store the sequence of headings the robot has to use to get to the target on the shortest path; it is read one heading per move
+	private ParentHeadings parentHeadings = new ParentHeadings(MAX_MAZE_SIZE * MAX_MAZE_SIZE); // The heading each square was reached with in the last A* search
+	private EpochGrid mazeGrid = new EpochGrid(MAX_MAZE_SIZE); /* Store information about the grid. -1 will always represent a wall.
+																 In the first run, a cell will be 1 if its corresponding square is a visited junction,
+																 or 0 otherwise; in subsequent runs, non-negative numbers will represent the
+																 minimum number of steps required to get to that square */
 	private byte robotSearchMode; /* Store the robot's search mode:
 									 -> 0 for Explore Mode;
 									 -> 1 for Backtrack Mode;
 									 -> 2 for Shortest Path Mode;
 									 -> 3 for Prim Maze Game Mode;
 									 -> 4 for Loopy Maze Game Mode;
-									 -> 5 for Blank Maze Game Mode; */
-	private Point startingSquare; // Store the coordinates for the starting square
-	private Stack<JunctionRecorder> junctionStack; // Store only the junctions the robot has been through and to which it can currently backtrack to
-	private PriorityQueue<SquareData> searchSquares; /* Store the coordinates of the point from which the A* algorithm will expand its search
-										        		and their priority based on the Manhattan distance to the target
-										     		 */
+									 -> 5 for Blank Maze Game Mode;
+									 -> 6 for Join Mode (cooperative exploration: heading for a passage claimed from the shared map, or waiting for one); */
+	private int startingSquare; // Index of the starting square (x * MAX_MAZE_SIZE + y)
+	private JunctionDeque junctionStack = new JunctionDeque(); // Store only the junctions the robot has been through and to which it can currently backtrack to
+	private IndexedSquareHeap searchSquares = new IndexedSquareHeap(MAX_MAZE_SIZE * MAX_MAZE_SIZE); /* Store the indices (x * MAX_MAZE_SIZE + y) of the squares from which the A* algorithm
+																									   will expand its search and their priority based on the Manhattan distance to the target
+																									 */
 	// Game stuff
 	private int mazeX, mazeY; // Size of the current maze
 	private int tetriminoIndex; // The current tetrimino's index in the list -- Blank Maze Game Mode
@@ -116,30 +51,85 @@ public class GrandFinale {
 	private int squaresLeft; // Squares left to visit -- Loopy Maze Game Mode
 	private int[][] mazeGridFrame; // Store only -1 for walls and 0 otherwise; useful for reintialising the maze grid
 	private boolean mazeIsLoopy; // True if the maze is loopy, false otherwise; needed to determine which kind of maze the robot is running on
+	private boolean mazeIsOpen; // True if most of the maze's squares are passages (blank and hill mazes), false otherwise
 	private boolean needTetrimino; // True if a new tetrimino must be generated, false otherwise -- Blank Maze Game Mode
 	private boolean tetriminoLanded; // True if the current tetrimino just landed, false otherwise -- Blank Maze Game Mode
-	private boolean[][] seenSquare; // True if the square has been visited, false otherwise -- Loopy Maze Game Mode
+	private EpochGrid seenSquare = new EpochGrid(MAX_MAZE_SIZE); // 1 if the square has been visited, 0 otherwise -- Loopy Maze Game Mode
 	private Point originalStartingSquare; // The original starting square for this maze -- Prim & Loopy Maze Game Mode
 	private Point originalTargetSquare; // The original target square for this maze -- Prim & Loopy Maze Game Mode
 	private Point currentRobotSquare; // The current robot square -- Prim & Loopy Maze Game Mode
 	private Point currentTargetSquare; // The current target square -- Prim & Loopy Maze Game Mode
+	private ChaseField chaseDistances; // Distances from the target kept between moves, null if they have to be started again -- Prim & Loopy Maze Game Mode
+	private ChaseField chaseDistancesStore; // The storage reused by chaseDistances between games -- Prim & Loopy Maze Game Mode
+	private int targetCount = Integer.getInteger("grandfinale.targets", 1); // Number of targets chasing the robot -- Prim & Loopy Maze Game Mode
+	private int[] targetSquares; // Squares of the targets when there are several, null until they are placed for the run -- Prim & Loopy Maze Game Mode
+	private FlowField chaseField; // Headings towards the robot, shared by all the targets when there are several -- Prim & Loopy Maze Game Mode
+	private PursuerSearch pursuerSearch; // Looks ahead at the robot's replies to choose the target's moves, or null for the shortest path; set with -Dgrandfinale.pursuer=minimax -- Prim & Loopy Maze Game Mode
+	private PursuerSearch pursuerSearchStore; // The storage reused by pursuerSearch from one game to the next
+	private long pursuerBudgetNanos = Long.getLong("grandfinale.pursuer.budgetMicros", 2000) * 1000; // Time pursuerSearch may take to choose each move -- Prim & Loopy Maze Game Mode
+	private BackgroundPlanner backgroundPlanner; // Plans the path to the target while the robot backtracks, or null if the path is planned when exploring ends
+	private EpochGrid squareStates = new EpochGrid(MAX_MAZE_SIZE); // 1 for squares seen to be passages but not entered yet, 2 for squares entered; only kept up for the background planner
+	private int unexploredSquares; // Squares seen to be passages but not entered yet
+	private boolean junctionGraphPending; // True if the target still has to be joined to the junction graph; left for reset() after taking a background plan
+	private boolean rememberPending; // True if the maze still has to be stored in the knowledge cache; left for reset() after taking a background plan
+	private JunctionGraph junctionGraph; // Junctions, dead ends and the corridors between them, recorded while exploring
+	private JunctionGraph junctionGraphStore; // The storage reused by junctionGraph from one maze to the next
+	private JumpPointSearch jumpPointSearch; // Planner used on open mazes, created the first time it is needed
+	private HierarchicalPlanner hierarchicalPlanner; // Planner used on large grid frames searched many times, e.g. when chasing in a remembered loopy maze
+	private int[][] frameSearched; // The grid frame the last A* searches were on
+	private int frameSearches; // Number of A* searches on frameSearched
+	private TreeDistanceOracle treeOracle; // Shortest paths between any two squares of a maze without loops, null for loopy mazes
+	private boolean directedExploration; // True to explore towards the target and stop once the known path is the shortest; set with -Dgrandfinale.exploration=directed
+	private boolean mapIsPartial; // True if exploring stopped early, so only part of the maze is known and there are no games
+	private boolean startPathPending; // True if the path from the starting square must be found before the next run
+	private ShortestPathProof shortestPathProof; // Tells when exploring can stop, created the first time it is needed -- directed exploration
+	private SharedMazeMap sharedMap; // The map shared with the other robots exploring the same maze, or null when exploring alone -- cooperative exploration
+	private int robotId; // This robot's number in the shared map -- cooperative exploration
+	private EpochGrid branchSquares; // 1 for the squares entered since the robot last started exploring from a new square -- cooperative exploration
+	private int frontierSquare = -1; // The passage claimed from the shared map that the robot is heading for, or -1 -- Join Mode
+	private HeadingPath frontierPath = new HeadingPath(); // The way to frontierSquare over the squares known to the shared map -- Join Mode
+	private EpochGrid frontierSteps; // Steps plus one of the squares reached by the last search for a frontier square -- Join Mode
+	private ParentHeadings frontierHeadings; // The heading each of those squares was reached with -- Join Mode
+	private int[] frontierQueue; // Squares in the order that search reached them -- Join Mode
+	private String mazeFingerprint; // Key of the current maze in the maze knowledge cache
 	private Point[] tetrimino; // Hold the coordinates of each tetrimino square -- Blank Maze Game Mode
 	private Point[][] tetriminoList; // Hold the list of all possible tetriminos -- Blank Maze Game Mode
-	private InputPanel userInputPanel = new InputPanel(); // Input panel that will appear when in game mode to read user input
+	private TetrisBitboard tetrisBoard; // The landed squares and the falling tetrimino, synced to the maze after each change -- Blank Maze Game Mode
+	private TetrisAutoplayer tetrisAutoplayer; // Places the tetriminos when -Dgrandfinale.tetris=autoplay, or null if the player does -- Blank Maze Game Mode
+	private MazeRepaintBatcher repaintBatcher = new MazeRepaintBatcher(Integer.getInteger("grandfinale.maxFps", 60)); // Sends the games' changes to the GUI, at most once per frame
+	private int[] adjacentSquareTypes = new int[4]; /* What the robot sees in each direction this poll, indexed by heading - IRobot.NORTH;
+													   0 for the target square, so that it never counts as a wall or passage */
+	private int polledHeading; // The robot's heading when this poll started
+	private int polledX, polledY; // The robot's square this poll
+	private int polledSquare; // Its index, polledX * MAX_MAZE_SIZE + polledY
+	private int polledTargetX, polledTargetY; // The target's square this poll
+	private int polledTarget; // Its index
+	private int[] headingSet = new int[4]; // The headings exploreControl chooses from, reused every poll
+	private InputPanel userInputPanel; // Input panel that will appear when in game mode to read user input; created when the first game starts so the solver can run headless
 	private Maze theMaze; // The maze object; useful when calling the reset method
+	// Instrumentation
+	private CountingRobot countingRobot = new CountingRobot(); // Counts the robot calls of a poll while polls are measured
+	private byte polledSearchMode; // The search mode the last poll ran in
+	private int plannerUsed; // Index in PLANNER_NAMES of the planner the last path search used
+	private int squaresExpanded; // Squares the last A* search took from the open set
+	private int openSetPeak; // Largest size of the open set in the last A* search
+	private SolverRandom random = new SolverRandom(); // Every random choice, started again from a seed on each new maze
+	private StepTraceWriter stepTrace; // Records the heading of every poll when -Dgrandfinale.trace=<file> is set, or null
+	private boolean replayingTrace; // True once replayTrace was called; mazes are then explored and planned as when traced
+	private boolean traceDirected; // Whether the replayed trace explored towards the target
 
 	/*
 		Utility methods
 	*/
 
-	// Randomly choose a heading which doesn't lead into a wall from a set of given headings
-	private int randomHeading(IRobot robot, int[] headingSet) {
+	// Randomly choose a heading which doesn't lead into a wall from the first headingCount headings of a set
+	private int randomHeading(int[] headingSet, int headingCount) {
 		int randomNumber;
 
-		// While the selected heading leads into a wall, pick another one randomly
+		// While the selected heading leads into a wall or the target, pick another one randomly
 		do {
-			randomNumber = (int)(Math.random() * headingSet.length);
-		} while (headingTowardsSquareType(robot, headingSet[randomNumber], IRobot.WALL) == true || testCoordinates(robot.getLocation(), headingSet[randomNumber]).equals(robot.getTargetLocation()) == true);
+			randomNumber = random.nextInt(headingCount);
+		} while (adjacentSquareTypes[headingSet[randomNumber] - IRobot.NORTH] == IRobot.WALL || adjacentSquareTypes[headingSet[randomNumber] - IRobot.NORTH] == 0);
 
 		return headingSet[randomNumber];
 	}
@@ -158,29 +148,47 @@ public class GrandFinale {
 		}
 	}
 
-	// Test if the selected heading leads to a squareType square
-	private boolean headingTowardsSquareType(IRobot robot, int heading, int squareType) {
-		robot.setHeading(heading);
-
-		if (robot.look(IRobot.AHEAD) == squareType && testCoordinates(robot.getLocation(), heading).equals(robot.getTargetLocation()) == false) {
-			return true;
+	/* Look around the robot once at the start of a poll. Facing NORTH, the relative directions AHEAD, RIGHT, BEHIND and LEFT are
+	   NORTH, EAST, SOUTH and WEST, so four looks see every adjacent square; the decision methods then read this snapshot instead
+	   of turning the robot to look again
+	 */
+	private void senseSurroundings(IRobot robot) {
+		Point location = robot.getLocation();
+		Point targetLocation = robot.getTargetLocation();
+
+		// Only the coordinates are kept, so the points the robot hands out don't outlive this method
+		polledHeading = robot.getHeading();
+		polledX = location.x;
+		polledY = location.y;
+		polledSquare = polledX * MAX_MAZE_SIZE + polledY;
+		polledTargetX = targetLocation.x;
+		polledTargetY = targetLocation.y;
+		polledTarget = polledTargetX * MAX_MAZE_SIZE + polledTargetY;
+		robot.setHeading(IRobot.NORTH);
+		for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+			if (polledSquare + Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading) == polledTarget) {
+				adjacentSquareTypes[heading - IRobot.NORTH] = 0;
+			}
+			else {
+				adjacentSquareTypes[heading - IRobot.NORTH] = robot.look(IRobot.AHEAD + heading - IRobot.NORTH);
+			}
 		}
-		return false;
+	}
+
+	// Test if the selected heading leads to a squareType square
+	private boolean headingTowardsSquareType(int heading, int squareType) {
+		return adjacentSquareTypes[heading - IRobot.NORTH] == squareType;
 	}
 
 	// Return the number of squareType squares adjacent to the square currently occupied by the robot
-	private int countAdjacentSquares(IRobot robot, int squareType) {
+	private int countAdjacentSquares(int squareType) {
 		int squareTypePaths = 0;
-		int initialHeading = robot.getHeading();
 
-		// Look around the robot and count the PASSAGE squares
 		for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
-			robot.setHeading(heading);
-			if (robot.look(IRobot.AHEAD) == squareType && testCoordinates(robot.getLocation(), heading).equals(robot.getTargetLocation()) == false) {
+			if (adjacentSquareTypes[heading - IRobot.NORTH] == squareType) {
 				squareTypePaths++;
 			}
 		}
-		robot.setHeading(initialHeading);
 
 		return squareTypePaths;
 	}
@@ -190,31 +198,95 @@ public class GrandFinale {
 		return (heading + 2) % 4 + IRobot.NORTH;
 	}
 
+	// Return the index of a square in the search arrays
+	private int squareIndex(Point square) {
+		return square.x * MAX_MAZE_SIZE + square.y;
+	}
+
 	// Return the Manhattan distance between two squares
 	private int manhattanDistance(Point startSquare, Point targetSquare) {
 		return Math.abs(startSquare.x - targetSquare.x) + Math.abs(startSquare.y - targetSquare.y);
 	}
 
-	// Copies the information from the source array to the destination array
-	private void copyArray(int[][] sourceArray, int[][] destinationArray) {
-		for (int i = 0; i < MAX_MAZE_SIZE; i++) {
-			for (int j = 0; j < MAX_MAZE_SIZE; j++) {
-				destinationArray[i][j] = sourceArray[i][j];
+	// Join the target to the junction graph, and drop the graph if it doesn't cover every square the robot could reach
+	private void finishJunctionGraph(int targetSquare) {
+		junctionGraph.connectSquare(targetSquare);
+		if (junctionGraph.coversArea(mazeGridFrame, mazeX, mazeY) == false) {
+			junctionGraph = null;
+		}
+	}
+
+	// Mark the robot's square as entered and the passages around it as seen, keeping count of the passages seen but not entered
+	private void countUnexploredSquares() {
+		int testX, testY;
+
+		if (squareStates.get(polledX, polledY) == 1) {
+			unexploredSquares--;
+		}
+		squareStates.set(polledX, polledY, 2);
+		for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+			testX = polledX + Headings.x(heading);
+			testY = polledY + Headings.y(heading);
+			if (headingTowardsSquareType(heading, IRobot.PASSAGE) == true && squareStates.get(testX, testY) == 0) {
+				squareStates.set(testX, testY, 1);
+				unexploredSquares++;
 			}
 		}
 	}
 
+	/* Take over the grid frame, tree oracle and shortest path of the background planner's last plan, if it was made for the map as
+	   it is now and leads from the robot's square; return false, having changed nothing, if there is no such plan. A plan for a maze
+	   with loops has no path, as only the controller has the junction graph, so the path is found here on the plan's grid frame
+	 */
+	private boolean adoptPlan() {
+		PlannedPath plan;
+
+		if (backgroundPlanner == null) {
+			return false;
+		}
+		plan = backgroundPlanner.getPlan();
+		if (plan == null || plan.isFor(backgroundPlanner.getWallCount(), polledSquare, polledTarget, mazeIsLoopy, mazeX, mazeY) == false) {
+			return false;
+		}
+		mazeGridFrame = plan.getGridFrame();
+		treeOracle = plan.getTreeOracle();
+		mazeIsOpen = treeOracle == null && plan.getOpenSquares() >= OPEN_MAZE_RATIO * mazeX * mazeY;
+		if (plan.getPath() == null) {
+			finishJunctionGraph(polledTarget);
+			findShortestPath(new Point(polledX, polledY), new Point(polledTargetX, polledTargetY));
+		}
+		else {
+			shortestPath.copyFrom(plan.getPath());
+			junctionGraphPending = true;
+		}
+		return true;
+	}
+
+	// Copy the walls found while exploring into a new grid frame; only the maze's own squares can hold any
+	private int[][] frameMazeGrid() {
+		int[][] gridFrame = new int[MAX_MAZE_SIZE][MAX_MAZE_SIZE];
+
+		for (int i = 0; i < theMaze.getWidth(); i++) {
+			for (int j = 0; j < theMaze.getHeight(); j++) {
+				if (mazeGrid.get(i, j) == -1) {
+					gridFrame[i][j] = -1;
+				}
+			}
+		}
+		return gridFrame;
+	}
+
 	/*
 		Movement decision methods
 	*/
 
 	// Decide what to do when the robot is at a dead end
-	private int deadEndMove(IRobot robot) {
+	private int deadEndMove() {
 		int heading;
 
 		// Look for the only non-WALL exit
 		for (heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
-			if (headingTowardsSquareType(robot, heading, IRobot.WALL) == false) {
+			if (headingTowardsSquareType(heading, IRobot.WALL) == false) {
 				break;
 			}
 		}
@@ -222,16 +294,16 @@ public class GrandFinale {
 	}
 
 	// Decide what to do when the robot is travelling down a corridor
-	private int corridorMove(IRobot robot) {
+	private int corridorMove() {
 		int heading;
-		int oppositeHeading = reverseHeading(robot.getHeading());
+		int oppositeHeading = reverseHeading(polledHeading);
 
 		// Look for a non-WALL exit which is not the same as the one the robot got here from (oppositeHeading)
 		for (heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
 			if (heading == oppositeHeading) {
 				continue;
 			}
-			if (headingTowardsSquareType(robot, heading, IRobot.WALL) == false) {
+			if (headingTowardsSquareType(heading, IRobot.WALL) == false) {
 				break;
 			}
 		}
@@ -246,12 +318,9 @@ public class GrandFinale {
 	private int exploreControl(IRobot robot) {
 		int heading;
 		int passagePaths;
-		int initialHeading;
 		int headingCounter;
-		int[] headingSet;
 
-		passagePaths = countAdjacentSquares(robot, IRobot.PASSAGE);
-		initialHeading = robot.getHeading();
+		passagePaths = countAdjacentSquares(IRobot.PASSAGE);
 
 		// If there are no PASSAGE exits around the robot, switch to backtrack mode
 		if (passagePaths == 0) {
@@ -260,66 +329,387 @@ public class GrandFinale {
 		}
 		// Otherwise, pick a random PASSAGE exit for the robot to head to
 		else {
-			headingSet = new int[passagePaths];
 			headingCounter = -1;
 			for (heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
-				if (headingTowardsSquareType(robot, heading, IRobot.PASSAGE) == true) {
+				if (headingTowardsSquareType(heading, IRobot.PASSAGE) == true) {
 					headingSet[++headingCounter] = heading;
 				}
 			}
-			heading = randomHeading(robot, headingSet);
+			if (directedExploration == true) {
+				heading = closestHeading(headingSet, passagePaths);
+			}
+			else {
+				heading = randomHeading(headingSet, passagePaths);
+			}
+			// Another robot may have claimed the passage since this one looked; take it for a wall and choose again
+			if (sharedMap != null && sharedMap.claim(polledSquare + Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading), robotId) == false) {
+				adjacentSquareTypes[heading - IRobot.NORTH] = IRobot.WALL;
+				heading = exploreControl(robot);
+			}
 		}
 
 		return heading;
 	}
 
+	// Choose the heading which leads closest to the target from the first headingCount headings of a set, breaking ties randomly
+	private int closestHeading(int[] headingSet, int headingCount) {
+		int bestHeading = headingSet[0];
+		int bestDistance = Integer.MAX_VALUE;
+		int tiedHeadings = 0;
+		int distance;
+		int heading;
+
+		for (int i = 0; i < headingCount; i++) {
+			heading = headingSet[i];
+			distance = Math.abs(polledX + Headings.x(heading) - polledTargetX) + Math.abs(polledY + Headings.y(heading) - polledTargetY);
+			if (distance < bestDistance) {
+				bestDistance = distance;
+				bestHeading = heading;
+				tiedHeadings = 1;
+			}
+			// Keep each of the tied headings with equal chance
+			else if (distance == bestDistance && random.nextInt(++tiedHeadings) == 0) {
+				bestHeading = heading;
+			}
+		}
+
+		return bestHeading;
+	}
+
+	// Stop exploring and head for the target over the known passages; the unknown squares are taken for walls from now on
+	private int finishExploring() {
+		mazeGridFrame = new int[MAX_MAZE_SIZE][MAX_MAZE_SIZE];
+		for (int i = 0; i < MAX_MAZE_SIZE; i++) {
+			for (int j = 0; j < MAX_MAZE_SIZE; j++) {
+				if (shortestPathProof.isPassage(i * MAX_MAZE_SIZE + j) == false) {
+					mazeGridFrame[i][j] = -1;
+				}
+			}
+		}
+		robotSearchMode = 2;
+		mapIsPartial = true;
+		startPathPending = true;
+		treeOracle = null;
+		junctionGraph = null;
+		mazeIsOpen = false;
+
+		findShortestPath(new Point(polledX, polledY), new Point(polledTargetX, polledTargetY));
+		return shortestPath.nextHeading();
+	}
+
+	/*
+		State and hooks used by the headless runner's checks
+	*/
+
+	// True if the shortest paths of this maze come from the tree distance oracle
+	boolean usedTreeOracle() {
+		return treeOracle != null;
+	}
+
+	boolean isMapPartial() {
+		return mapIsPartial;
+	}
+
+	int getSearchMode() {
+		return robotSearchMode;
+	}
+
+	// The Tetris autoplayer, once a game with -Dgrandfinale.tetris=autoplay has started; null otherwise
+	TetrisAutoplayer getTetrisAutoplayer() {
+		return tetrisAutoplayer;
+	}
+
+	// Copies of the squares of the falling tetrimino, or null if the next poll brings in a new one
+	Point[] getFallingTetrimino() {
+		Point[] squares;
+
+		if (robotSearchMode != 5 || needTetrimino == true) {
+			return null;
+		}
+		squares = new Point[4];
+		for (int i = 0; i <= 3; i++) {
+			squares[i] = new Point(tetrimino[i]);
+		}
+		return squares;
+	}
+
+	int getTetriminoIndex() {
+		return tetriminoIndex;
+	}
+
+	TetrisBitboard getTetrisBoard() {
+		return tetrisBoard;
+	}
+
+	// Turn the falling tetrimino as the W key does
+	void turnTetrimino(IRobot robot) {
+		rotateTetrimino(robot);
+	}
+
+	// Replay a step trace: every maze starts from the trace's seed and is explored the way the traced controller explored it
+	void replayTrace(long seed, boolean directedExploration) {
+		random.fixSeed(seed);
+		replayingTrace = true;
+		traceDirected = directedExploration;
+	}
+
+	long getRandomState() {
+		return random.getState();
+	}
+
+	/*
+		Cooperative exploration methods
+	*/
+
+	// Explore the next maze together with the other robots that joined the same shared map; call before the first poll on the maze
+	public void joinExploration(SharedMazeMap sharedMap) {
+		if (sharedMap.getGridSize() != MAX_MAZE_SIZE) {
+			throw new IllegalArgumentException("A shared map must be " + MAX_MAZE_SIZE + " squares wide, like the controller's grid");
+		}
+		this.sharedMap = sharedMap;
+		robotId = sharedMap.join();
+		if (frontierSteps == null) {
+			branchSquares = new EpochGrid(MAX_MAZE_SIZE);
+			frontierSteps = new EpochGrid(MAX_MAZE_SIZE);
+			frontierHeadings = new ParentHeadings(MAX_MAZE_SIZE * MAX_MAZE_SIZE);
+			frontierQueue = new int[MAX_MAZE_SIZE * MAX_MAZE_SIZE];
+		}
+	}
+
+	/* Publish the walls and passages around the robot and the square it stands on to the shared map. Passages other robots have
+	   claimed or entered are then hidden from the decision methods as walls, so that this robot leaves their branches to them; so
+	   are the squares this robot went through before it started on its current branch, which backtracking must not wander into
+	 */
+	private void shareSurroundings() {
+		int square;
+		int testX, testY;
+
+		for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+			square = polledSquare + Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading);
+			if (headingTowardsSquareType(heading, IRobot.WALL) == true) {
+				sharedMap.addWall(square);
+			}
+			// No robot stands on the target while exploring, so whoever sees it enters it in the map
+			else if (headingTowardsSquareType(heading, 0) == true) {
+				sharedMap.enter(square, robotId);
+			}
+			else {
+				sharedMap.addPassage(square);
+				testX = polledX + Headings.x(heading);
+				testY = polledY + Headings.y(heading);
+				if ((headingTowardsSquareType(heading, IRobot.PASSAGE) == true && sharedMap.isTakenByOther(square, robotId) == true) ||
+					(headingTowardsSquareType(heading, IRobot.BEENBEFORE) == true && branchSquares.get(testX, testY) == 0)) {
+					adjacentSquareTypes[heading - IRobot.NORTH] = IRobot.WALL;
+				}
+			}
+		}
+		sharedMap.enter(polledSquare, robotId);
+		if (robotSearchMode < 2) {
+			branchSquares.set(polledX, polledY, 1);
+		}
+	}
+
+	// Head for the passage claimed from the shared map, or claim one; with none left to claim, wait for the other robots to finish
+	private int joinControl() {
+		int heading;
+
+		if (frontierSquare != -1 || claimNearestFrontier() == true) {
+			return frontierPath.nextHeading();
+		}
+		// Stay put by facing a wall; in the open, step back and forth, but never onto the target
+		for (heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+			if (headingTowardsSquareType(heading, IRobot.WALL) == true) {
+				return heading;
+			}
+		}
+		heading = reverseHeading(polledHeading);
+		if (headingTowardsSquareType(heading, 0) == true) {
+			heading = polledHeading;
+		}
+		return heading;
+	}
+
+	/* Claim the unclaimed passage closest to the robot, searching breadth-first over the passages in the shared map, and store the
+	   way to it in frontierPath; return false if every passage seen is already claimed. The target is never on the way
+	 */
+	private boolean claimNearestFrontier() {
+		int square, testSquare;
+		int heading;
+		int reachedCount = 1;
+
+		frontierSteps.clear();
+		frontierSteps.set(polledX, polledY, 1);
+		frontierQueue[0] = polledSquare;
+		for (int head = 0; head < reachedCount; head++) {
+			square = frontierQueue[head];
+			if (sharedMap.claim(square, robotId) == true) {
+				frontierSquare = square;
+				frontierPath.clear();
+				while (square != polledSquare) {
+					heading = frontierHeadings.get(square);
+					frontierPath.append(heading);
+					square -= Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading);
+				}
+				frontierPath.reverse();
+				return true;
+			}
+			for (heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				testSquare = square + Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading);
+				if (testSquare == polledTarget || sharedMap.isPassage(testSquare) == false ||
+					frontierSteps.get(testSquare / MAX_MAZE_SIZE, testSquare % MAX_MAZE_SIZE) != 0) {
+					continue;
+				}
+				frontierSteps.set(testSquare / MAX_MAZE_SIZE, testSquare % MAX_MAZE_SIZE, 1);
+				frontierHeadings.set(testSquare, heading);
+				frontierQueue[reachedCount++] = testSquare;
+			}
+		}
+		return false;
+	}
+
+	/* Take the map the robots finished between them for this robot's own and head for the target from wherever the robot is; the
+	   path from the starting square is found when the run ends, as after directed exploration
+	 */
+	private void finishSharedExploring() {
+		int square;
+
+		mazeGridFrame = new int[MAX_MAZE_SIZE][MAX_MAZE_SIZE];
+		mazeX = 1;
+		mazeY = 1;
+		for (int i = 0; i < theMaze.getWidth(); i++) {
+			for (int j = 0; j < theMaze.getHeight(); j++) {
+				square = i * MAX_MAZE_SIZE + j;
+				if (sharedMap.isWall(square) == true) {
+					mazeGridFrame[i][j] = -1;
+				}
+				else if (sharedMap.isPassage(square) == true) {
+					mazeX = Math.max(mazeX, i);
+					mazeY = Math.max(mazeY, j);
+				}
+			}
+		}
+		// No robot saw the whole maze, so find out whether it has loops from the map itself
+		treeOracle = new TreeDistanceOracle(MAX_MAZE_SIZE);
+		mazeIsLoopy = treeOracle.build(mazeGridFrame, originalStartingSquare.x, originalStartingSquare.y, polledTargetX, polledTargetY) == false;
+		if (mazeIsLoopy == true) {
+			treeOracle = null;
+		}
+		mazeIsOpen = treeOracle == null && isOpenMaze() == true;
+		junctionGraph = null;
+		robotSearchMode = 2;
+		frontierSquare = -1;
+		startPathPending = polledSquare != squareIndex(originalStartingSquare);
+
+		findShortestPath(new Point(polledX, polledY), new Point(polledTargetX, polledTargetY));
+		if (startPathPending == false) {
+			rememberMaze();
+		}
+	}
+
+	// Store what was learnt about the maze, with the path just found from the starting square, in the maze knowledge cache
+	private void rememberMaze() {
+		MazeKnowledgeCache.put(mazeFingerprint, new MazeKnowledge(mazeGridFrame, theMaze.getWidth(), theMaze.getHeight(), mazeX, mazeY, mazeIsLoopy, mapIsPartial, shortestPath));
+	}
+
+	// Take over what the cache knows about the maze and follow the stored path from the first move; does nothing for a maze not seen before
+	private void recallMaze(MazeKnowledge knowledge) {
+		if (knowledge == null) {
+			return;
+		}
+		mazeGridFrame = new int[MAX_MAZE_SIZE][MAX_MAZE_SIZE];
+		knowledge.fillGridFrame(mazeGridFrame);
+		mazeX = knowledge.getMazeX();
+		mazeY = knowledge.getMazeY();
+		mazeIsLoopy = knowledge.isLoopy();
+		mapIsPartial = knowledge.isPartial();
+		junctionGraph = null;
+		treeOracle = null;
+		if (mazeIsLoopy == false && mapIsPartial == false) {
+			treeOracle = new TreeDistanceOracle(MAX_MAZE_SIZE);
+			if (treeOracle.build(mazeGridFrame, startingSquare / MAX_MAZE_SIZE, startingSquare % MAX_MAZE_SIZE, theMaze.getFinish().x, theMaze.getFinish().y) == false) {
+				treeOracle = null;
+			}
+		}
+		mazeIsOpen = mapIsPartial == false && treeOracle == null && isOpenMaze() == true;
+		knowledge.fillShortestPath(shortestPath);
+		robotSearchMode = 2;
+	}
+
 	// Backtrack to a previously encountered junction
 	private int backtrackControl(IRobot robot) {
 		int nonWallExits;
 		int heading;
 
-		nonWallExits = 4 - countAdjacentSquares(robot, IRobot.WALL);
+		nonWallExits = 4 - countAdjacentSquares(IRobot.WALL);
 		// Treat the starting square as a junction
-		if (robot.getLocation().equals(startingSquare)) {
+		if (polledSquare == startingSquare) {
+			nonWallExits = 3;
+		}
+		// Passages of a junction can be taken by other robots while this one explores, so it may not look like a junction any more
+		if (sharedMap != null && mazeGrid.get(polledX, polledY) == 1) {
 			nonWallExits = 3;
 		}
 
 		switch (nonWallExits) {
 			case 1:
-				heading = deadEndMove(robot);
+				heading = deadEndMove();
 				break;
 			case 2:
-				heading = corridorMove(robot);
+				heading = corridorMove();
 				break;
 			default:
 				// If the robot got back into an explored junction that isn't the last explored junction, turn back
-				if (junctionStack.empty() == false && mazeGrid[robot.getLocation().x][robot.getLocation().y] == 1 &&
-					robot.getLocation().equals(junctionStack.peek().getJunctionSquare()) == false) {
-					heading = reverseHeading(robot.getHeading());
+				if (junctionStack.isEmpty() == false && mazeGrid.get(polledX, polledY) == 1 &&
+					(polledX != junctionStack.peekX() || polledY != junctionStack.peekY())) {
+					heading = reverseHeading(polledHeading);
 					mazeIsLoopy = true;
 				}
 				// If there are unexplored exits, enter in explorer mode and randomly choose one
-				else if (countAdjacentSquares(robot, IRobot.PASSAGE) > 0) {
+				else if (countAdjacentSquares(IRobot.PASSAGE) > 0) {
 					robotSearchMode = 0;
 					heading = exploreControl(robot);
 				}
 				// Otherwise, go back to a previous junction if the stack isn't empty
 				else {
 					// Reverse heading
-					heading = junctionStack.peek().getArrived();
+					heading = junctionStack.peekArrived();
 					heading = reverseHeading(heading);
 					junctionStack.pop();
+					// If the stack just emptied while other robots are still exploring, go and help them
+					if (junctionStack.isEmpty() == true && sharedMap != null) {
+						robotSearchMode = 6;
+						frontierSquare = -1;
+						heading = joinControl();
+					}
 					// If the stack just emptied, then it means the robot got back to the starting area, so it will switch to Shortest Path Mode
-					if (junctionStack.empty() == true) {
+					else if (junctionStack.isEmpty() == true) {
 						robotSearchMode = 2;
-						prepareMazeGrid(startingSquare);
-						mazeGridFrame = new int[MAX_MAZE_SIZE][MAX_MAZE_SIZE]; // This will be used in Game mode
-						copyArray(mazeGrid, mazeGridFrame);
-						// Use the A* algorithm to find the shortest path to the target and store it
-						aStarAlgorithm(robot.getLocation(), robot.getTargetLocation());
-						retracePath(robot.getLocation(), robot.getTargetLocation());
-						heading = shortestPath[1];
-						stepCounter = 2;
+						/* Take the plan made while backtracking if it is for the map as it is now; the rest of the work of
+						   finishing exploring isn't needed before the next run, so it is left for reset()
+						 */
+						if (adoptPlan() == true) {
+							rememberPending = polledSquare == squareIndex(originalStartingSquare);
+						}
+						// Otherwise, do it all here
+						else {
+							mazeGridFrame = frameMazeGrid(); // This will be used in Game mode
+							// A maze without loops is a tree, so build the tree distance oracle and read the shortest path from it
+							treeOracle = null;
+							if (mazeIsLoopy == false) {
+								treeOracle = new TreeDistanceOracle(MAX_MAZE_SIZE);
+								if (treeOracle.build(mazeGridFrame, startingSquare / MAX_MAZE_SIZE, startingSquare % MAX_MAZE_SIZE, theMaze.getFinish().x, theMaze.getFinish().y) == false) {
+									treeOracle = null;
+								}
+							}
+							mazeIsOpen = treeOracle == null && isOpenMaze() == true;
+							finishJunctionGraph(polledTarget);
+							// Find the shortest path to the target and store it
+							findShortestPath(new Point(polledX, polledY), new Point(polledTargetX, polledTargetY));
+							if (polledSquare == squareIndex(originalStartingSquare)) {
+								rememberMaze();
+							}
+						}
+						heading = shortestPath.nextHeading();
 					}
 				}
 				break;
@@ -332,48 +722,53 @@ public class GrandFinale {
 		Shortest Path methods
 	*/
 
-	// Erase all the 1's from the grid and set the starting square to 1
+	// Put the grid back to the walls of the grid frame and set the starting square to 1
 	private void prepareMazeGrid(Point startSquare) {
-		for (int i = 0; i < mazeGrid.length; i++) {
-			for (int j = 0; j < mazeGrid[i].length; j++) {
-				if (mazeGrid[i][j] > 0) {
-					mazeGrid[i][j] = 0;
-				}
-			}
-		}
-
-		mazeGrid[startSquare.x][startSquare.y] = 1;
+		mazeGrid.restore(mazeGridFrame);
+		mazeGrid.set(startSquare.x, startSquare.y, 1);
 	}
 
 	// Use the A* Algorithm to find the shortest path between two points
 	private void aStarAlgorithm(Point startSquare, Point targetSquare) {
-		SquareData currentSquare;
+		int currentSquare;
+		int currentX, currentY;
+		int testX, testY;
+		int steps, testSteps;
 		int priority;
-		Point testSquare;
-
-		Comparator<SquareData> comparator = new ManhattanDistanceComparator();
-		searchSquares = new PriorityQueue<SquareData>(4 * MAX_MAZE_SIZE, comparator);
-		searchSquares.add(new SquareData(startSquare, 0)); // Add the starting location to the priority queue.
-
-		// While the priority queue isn't empty, take an square from it and expand on the surrounding squares
-		while (searchSquares.peek() != null) {
-			currentSquare = searchSquares.remove();
-			if (currentSquare.getLocation().equals(targetSquare)) {
+		int targetIndex = targetSquare.x * MAX_MAZE_SIZE + targetSquare.y;
+
+		searchSquares.clear();
+		searchSquares.addOrDecrease(startSquare.x * MAX_MAZE_SIZE + startSquare.y, 0); // Add the starting location to the open set
+		squaresExpanded = 0;
+		openSetPeak = 1;
+
+		// While the open set isn't empty, take the square with the lowest priority from it and expand on the surrounding squares
+		while (searchSquares.isEmpty() == false) {
+			currentSquare = searchSquares.removeFirst();
+			squaresExpanded++;
+			if (currentSquare == targetIndex) {
 				break;
 			}
+			currentX = currentSquare / MAX_MAZE_SIZE;
+			currentY = currentSquare % MAX_MAZE_SIZE;
+			steps = mazeGrid.get(currentX, currentY) + 1;
 
 			// Look for unvisited squares around the current square
 			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
-				testSquare = testCoordinates(currentSquare.getLocation(), heading);
+				testX = currentX + Headings.x(heading);
+				testY = currentY + Headings.y(heading);
 				// If the test square is out of bounds or a wall, skip it
-				if (testSquare.x < 0 || testSquare.x > 400 || testSquare.y < 0 || testSquare.y > 400 || mazeGrid[testSquare.x][testSquare.y] == -1) {
+				testSteps = testX < 0 || testX > 400 || testY < 0 || testY > 400 ? -1 : mazeGrid.get(testX, testY);
+				if (testSteps == -1) {
 					continue;
 				}
 				// If the selected square is an unvisited square or the number of steps stored in that square isn't minimum, update it
-				if (mazeGrid[testSquare.x][testSquare.y] == 0 || mazeGrid[testSquare.x][testSquare.y] > mazeGrid[currentSquare.getLocation().x][currentSquare.getLocation().y] + 1) {
-					mazeGrid[testSquare.x][testSquare.y] = mazeGrid[currentSquare.getLocation().x][currentSquare.getLocation().y] + 1;
-					priority = mazeGrid[testSquare.x][testSquare.y] + manhattanDistance(testSquare, targetSquare);
-					searchSquares.add(new SquareData(testSquare, priority));
+				if (testSteps == 0 || testSteps > steps) {
+					mazeGrid.set(testX, testY, steps);
+					parentHeadings.set(testX * MAX_MAZE_SIZE + testY, heading);
+					priority = steps + Math.abs(testX - targetSquare.x) + Math.abs(testY - targetSquare.y);
+					searchSquares.addOrDecrease(testX * MAX_MAZE_SIZE + testY, priority);
+					openSetPeak = Math.max(openSetPeak, searchSquares.size());
 				}
 			}
 		}
@@ -381,29 +776,141 @@ public class GrandFinale {
 
 	// Get the sequence of steps required to to reach the target using the shortest path
 	private void retracePath(Point startSquare, Point targetSquare) {
-		Point currentPoint;
-		Point testSquare;
-
-		shortestPath = new int[MAX_MAZE_SIZE * MAX_MAZE_SIZE];
-		currentPoint = targetSquare;
-		stepCounter = mazeGrid[currentPoint.x][currentPoint.y] - 1;
+		int currentSquare = squareIndex(targetSquare);
+		int startIndex = squareIndex(startSquare);
+		int heading;
 
-		/* Start from the target square and look for squares that have been reached with one less step than the number of steps needed to reach the current
-		   square (this means the robot got to the current square from that square). Repeat until the starting square is reached.
+		/* Start from the target square and step back along the heading each square was reached with in the A* search, until the
+		   starting square is reached; the headings come out from the target backwards, so the path is reversed at the end
 		 */
-		while (currentPoint.equals(startSquare) == false) {
-			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
-				testSquare = testCoordinates(currentPoint, heading);
-				if (testSquare.x < 1 || testSquare.x > 400 || testSquare.y < 1 || testSquare.y > 400) {
-					continue;
-				}
-				if (mazeGrid[testSquare.x][testSquare.y] == mazeGrid[currentPoint.x][currentPoint.y] - 1) {
-					shortestPath[stepCounter--] = reverseHeading(heading);
-					currentPoint = testSquare;
-					break;
+		shortestPath.clear();
+		while (currentSquare != startIndex) {
+			heading = parentHeadings.get(currentSquare);
+			shortestPath.append(heading);
+			currentSquare -= Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading);
+		}
+		shortestPath.reverse();
+	}
+
+	// Fill shortestPath with the headings of a shortest path between two squares, using the planner that suits this maze best, and return its length;
+	// shortestPath is left ready to be read from its first heading
+	private int findShortestPath(Point startSquare, Point targetSquare) {
+		PathSearchEvent searchEvent;
+		long searchStart;
+		int pathLength;
+
+		if (SolverMetrics.isRecordingSearches() == false) {
+			return planShortestPath(startSquare, targetSquare);
+		}
+		searchEvent = new PathSearchEvent();
+		searchEvent.begin();
+		searchStart = System.nanoTime();
+		pathLength = planShortestPath(startSquare, targetSquare);
+		searchEvent.end();
+
+		SolverMetrics.record(SEARCH_METRICS[plannerUsed], System.nanoTime() - searchStart);
+		SolverMetrics.record("pathSearch.pathLength", pathLength);
+		if (plannerUsed == A_STAR) {
+			SolverMetrics.record("aStar.squaresExpanded", squaresExpanded);
+			SolverMetrics.record("aStar.openSetPeak", openSetPeak);
+		}
+		searchEvent.planner = PLANNER_NAMES[plannerUsed];
+		searchEvent.pathLength = pathLength;
+		if (plannerUsed == A_STAR) {
+			searchEvent.squaresExpanded = squaresExpanded;
+			searchEvent.openSetPeak = openSetPeak;
+		}
+		searchEvent.commit();
+		return pathLength;
+	}
+
+	// Do the work of findShortestPath and remember which planner was used
+	private int planShortestPath(Point startSquare, Point targetSquare) {
+		int pathLength;
+
+		if (treeOracle != null) {
+			plannerUsed = 0;
+			oraclePath(startSquare, targetSquare);
+			return shortestPath.length();
+		}
+		// Open mazes have lots of equally short paths, which Jump Point Search skips over
+		if (mazeIsOpen == true) {
+			plannerUsed = 1;
+			if (jumpPointSearch == null) {
+				jumpPointSearch = new JumpPointSearch(MAX_MAZE_SIZE);
+			}
+			return jumpPointSearch.findPath(mazeGridFrame, squareIndex(startSquare), squareIndex(targetSquare), shortestPath);
+		}
+		// Loopy mazes are searched corridor by corridor on the junction graph
+		if (junctionGraph != null) {
+			plannerUsed = 2;
+			pathLength = junctionGraph.findPath(squareIndex(startSquare), squareIndex(targetSquare), shortestPath);
+			if (pathLength != -1) {
+				return pathLength;
+			}
+		}
+		// A large grid frame searched many times is worth cutting into clusters, so that each search only looks at the cluster entrances
+		if (useHierarchicalPlanner() == true) {
+			plannerUsed = 3;
+			pathLength = hierarchicalPlanner.findPath(squareIndex(startSquare), squareIndex(targetSquare), shortestPath);
+			if (pathLength != -1) {
+				return pathLength;
+			}
+		}
+		// Otherwise, use the A* algorithm
+		plannerUsed = A_STAR;
+		prepareMazeGrid(startSquare);
+		aStarAlgorithm(startSquare, targetSquare);
+		retracePath(startSquare, targetSquare);
+		return shortestPath.length();
+	}
+
+	// Count the searches on the current grid frame, and build the hierarchical planner for it once they are enough to pay for it
+	private boolean useHierarchicalPlanner() {
+		if (hierarchicalPlanner != null && hierarchicalPlanner.isBuiltFor(mazeGridFrame, mazeX + 2, mazeY + 2) == true) {
+			return true;
+		}
+		if (frameSearched != mazeGridFrame) {
+			frameSearched = mazeGridFrame;
+			frameSearches = 0;
+		}
+		frameSearches++;
+		if (frameSearches < HIERARCHICAL_SEARCHES || mazeX * mazeY < HIERARCHICAL_MIN_AREA) {
+			return false;
+		}
+		if (hierarchicalPlanner == null) {
+			hierarchicalPlanner = new HierarchicalPlanner(MAX_MAZE_SIZE, CLUSTER_SIZE);
+		}
+		hierarchicalPlanner.build(mazeGridFrame, mazeX + 2, mazeY + 2);
+		return true;
+	}
+
+	// Check whether most of the squares inside the explored area are passages, like in blank and hill mazes
+	private boolean isOpenMaze() {
+		int openSquares = 0;
+
+		for (int i = 1; i <= mazeX; i++) {
+			for (int j = 1; j <= mazeY; j++) {
+				if (mazeGridFrame[i][j] != -1) {
+					openSquares++;
 				}
 			}
 		}
+		return openSquares >= OPEN_MAZE_RATIO * mazeX * mazeY;
+	}
+
+	// Get the sequence of steps required to reach the target from the tree distance oracle
+	private void oraclePath(Point startSquare, Point targetSquare) {
+		int currentSquare = squareIndex(startSquare);
+		int target = squareIndex(targetSquare);
+		int heading;
+
+		shortestPath.clear();
+		while (currentSquare != target) {
+			heading = treeOracle.nextHeading(currentSquare, target);
+			shortestPath.append(heading);
+			currentSquare += Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading);
+		}
 	}
 
 	/*
@@ -413,34 +920,131 @@ public class GrandFinale {
 	// Simple game where the target chases you on Prim mazes
 	private int primMazeGame(IRobot robot, int broadcastSignal) {
 		int robotHeading;
+		boolean targetCanMove;
 
-		// Reinitialise the maze grid and update the robot's square
-		copyArray(mazeGridFrame, mazeGrid);
+		if (targetCount > 1) {
+			return multiTargetGame(robot, broadcastSignal);
+		}
 		currentRobotSquare = robot.getLocation();
-		// Compute the shortest path from the target to the robot
-		prepareMazeGrid(currentTargetSquare);
-		aStarAlgorithm(currentTargetSquare, currentRobotSquare);
-		retracePath(currentTargetSquare, currentRobotSquare);
-		// Set the headings for the target and the robot
-		targetHeading = shortestPath[1];
+		// The minimax pursuer looks ahead at how the robot can get away, and never takes longer than its budget
+		if (pursuerSearch != null) {
+			targetHeading = pursuerSearch.chooseHeading(squareIndex(currentRobotSquare), squareIndex(currentTargetSquare), System.nanoTime() + pursuerBudgetNanos);
+			targetCanMove = targetHeading != -1;
+		}
+		// On a maze without loops the tree distance oracle gives the target's heading directly
+		else if (treeOracle != null) {
+			targetCanMove = currentTargetSquare.equals(currentRobotSquare) == false;
+			if (targetCanMove == true) {
+				targetHeading = treeOracle.nextHeading(squareIndex(currentTargetSquare), squareIndex(currentRobotSquare));
+			}
+		}
+		// Otherwise, follow the distances from the target, which only search on from where they stopped as the robot moves
+		else {
+			if (chaseDistances == null) {
+				if (chaseDistancesStore == null) {
+					chaseDistancesStore = new ChaseField(MAX_MAZE_SIZE);
+				}
+				chaseDistances = chaseDistancesStore;
+				chaseDistances.start(mazeGridFrame, theMaze.getWidth(), theMaze.getHeight(), squareIndex(currentTargetSquare));
+			}
+			targetHeading = chaseDistances.headingTowards(squareIndex(currentRobotSquare));
+			targetCanMove = targetHeading != -1;
+		}
 		robotHeading = userInputPanel.getInputHeading();
 		// If the robot is about to bump into the target, the target will not move
-		if (testCoordinates(currentRobotSquare, robotHeading).equals(currentTargetSquare) == false) {
+		if (targetCanMove == true && testCoordinates(currentRobotSquare, robotHeading).equals(currentTargetSquare) == false) {
 			currentTargetSquare = testCoordinates(currentTargetSquare, targetHeading);
+			if (pursuerSearch == null && treeOracle == null) {
+				chaseDistances.moveTarget(squareIndex(currentTargetSquare));
+			}
 		}
 		// Set the new locations and update the maze;
 		robot.getMaze().setFinish(currentTargetSquare.x, currentTargetSquare.y);
 		robot.getMaze().setStart(currentRobotSquare.x, currentRobotSquare.y);
-		EventBus.broadcast(new Event(broadcastSignal, robot.getMaze()));
+		repaintBatcher.request(broadcastSignal);
+
+		return robotHeading;
+	}
+
+	/* Chase game with several targets. One breadth-first search from the robot's square gives every square its heading towards
+	   the robot, so moving a target is a single look-up and a move costs about the same for one target as for a hundred. The maze
+	   can only show one target, so it shows the one closest to the robot; the robot is caught when that one reaches it
+	 */
+	private int multiTargetGame(IRobot robot, int broadcastSignal) {
+		int robotHeading;
+		int robotSquare, nextRobotSquare;
+		int heading;
+		int closestTarget = 0;
+
+		currentRobotSquare = robot.getLocation();
+		robotSquare = squareIndex(currentRobotSquare);
+		if (chaseField == null) {
+			chaseField = new FlowField(MAX_MAZE_SIZE);
+		}
+		chaseField.build(mazeGridFrame, theMaze.getWidth(), theMaze.getHeight(), robotSquare);
+		if (targetSquares == null) {
+			placeTargets();
+		}
+
+		robotHeading = userInputPanel.getInputHeading();
+		nextRobotSquare = squareIndex(testCoordinates(currentRobotSquare, robotHeading));
+		for (int i = 0; i < targetSquares.length; i++) {
+			// A target which has caught the robot, can't reach it, or would bump into it stays where it is
+			if (chaseField.getDistance(targetSquares[i]) > 0 && targetSquares[i] != nextRobotSquare) {
+				heading = chaseField.nextHeading(targetSquares[i]);
+				targetSquares[i] += Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading);
+			}
+			if (chaseField.getDistance(targetSquares[i]) != -1 &&
+				(chaseField.getDistance(targetSquares[closestTarget]) == -1 || chaseField.getDistance(targetSquares[i]) < chaseField.getDistance(targetSquares[closestTarget]))) {
+				closestTarget = i;
+			}
+		}
+
+		// Set the new locations and update the maze
+		currentTargetSquare = new Point(targetSquares[closestTarget] / MAX_MAZE_SIZE, targetSquares[closestTarget] % MAX_MAZE_SIZE);
+		robot.getMaze().setFinish(currentTargetSquare.x, currentTargetSquare.y);
+		robot.getMaze().setStart(currentRobotSquare.x, currentRobotSquare.y);
+		repaintBatcher.request(broadcastSignal);
 
 		return robotHeading;
 	}
 
+	/* Put the first target on the target square and spread the others over the half of the maze furthest from the robot. The
+	   chase field must already lead to the robot's square, which lists the squares in order of their distance from the robot
+	 */
+	private void placeTargets() {
+		int farHalf = chaseField.getReachedCount() / 2;
+
+		targetSquares = new int[targetCount];
+		targetSquares[0] = squareIndex(currentTargetSquare);
+		for (int i = 1; i < targetCount; i++) {
+			targetSquares[i] = chaseField.getReachedSquare(chaseField.getReachedCount() - 1 - (i - 1) * farHalf / (targetCount - 1));
+		}
+	}
+
+	/* The robot never looks at the squares around the target, so they stay 0 in the grid frame even if they are walls. The targets
+	   can go anywhere the robot can, so copy the walls the robot didn't see from the maze itself before the game starts
+	 */
+	private void revealMazeFrame() {
+		// The walls are added to the grid frame in place, so clusters found in it before are out of date
+		frameSearched = null;
+		if (hierarchicalPlanner != null) {
+			hierarchicalPlanner.invalidate();
+		}
+		for (int i = 0; i < theMaze.getWidth(); i++) {
+			for (int j = 0; j < theMaze.getHeight(); j++) {
+				if (mazeGridFrame[i][j] == 0 && theMaze.getCellType(i, j) == Maze.WALL) {
+					mazeGridFrame[i][j] = -1;
+				}
+			}
+		}
+	}
+
 	// Simple Pac-Man-like game where you have to visit all squares in loopy mazes before the target catches you
 	private int loopyMazeGame(IRobot robot) {
 		// If the robot is on a previously unseen square, decrement the number of squares left to visit
-		if (seenSquare[robot.getLocation().x][robot.getLocation().y] == false) {
-			seenSquare[robot.getLocation().x][robot.getLocation().y] = true;
+		if (seenSquare.get(robot.getLocation().x, robot.getLocation().y) == 0) {
+			seenSquare.set(robot.getLocation().x, robot.getLocation().y, 1);
 			squaresLeft--;
 		}
 		// Check if the player won
@@ -449,7 +1053,7 @@ public class GrandFinale {
 		}
 
 		// The rest is the same as in the Prim Maze Game Mode, except for the broadcast signal, so call that method
-		return primMazeGame(robot, 102);
+		return primMazeGame(robot, MazeRepaintBatcher.REPAINT);
 	}
 
 	// Tetris game for blank mazes
@@ -459,19 +1063,32 @@ public class GrandFinale {
 			needTetrimino = false;
 			tetriminoLanded = false;
 			selectNewTetrimino(robot);
-			for (int i = 0; i <= 3; i++) {
-				robot.getMaze().setCellType(tetrimino[i].x, tetrimino[i].y, 2);
+			if (tetrisAutoplayer != null) {
+				tetrisAutoplayer.plan(tetrimino, tetriminoIndex);
 			}
+			tetrisBoard.setPiece(tetrimino);
+			syncTetrisBoard(robot.getMaze());
 		}
 		// Otherwise, move the piece
 		else {
-			playerMoveTetrimino(robot);
+			if (tetrisAutoplayer != null) {
+				autoplayMoveTetrimino(robot);
+			}
+			else {
+				playerMoveTetrimino(robot);
+			}
 			moveTetrimino(robot, 0, 1);
 			// If it landed, check if there are any lines to erase and if the game is over
 			if (tetriminoLanded(robot) == true) {
+				tetrisBoard.lockPiece();
 				eraseLines(robot);
 				if (gameOver(robot) == true) {
-					JOptionPane.showMessageDialog(null, "Game over.");
+					if (tetrisAutoplayer != null) {
+						tetrisAutoplayer.recordGameLost();
+					}
+					else {
+						JOptionPane.showMessageDialog(null, "Game over.");
+					}
 					resetMaze(robot);
 				}
 				else {
@@ -481,11 +1098,18 @@ public class GrandFinale {
 		}
 	}
 
+	// Show the board's changes in the maze, and have the maze repainted if any square changed
+	private void syncTetrisBoard(Maze maze) {
+		if (tetrisBoard.sync(maze) > 0) {
+			repaintBatcher.request(MazeRepaintBatcher.REPAINT);
+		}
+	}
+
 	// Choose a new tetrimino at random
 	private void selectNewTetrimino(IRobot robot) {
 		int randomNumber;
 
-		randomNumber = (int)(Math.random() * 28);
+		randomNumber = random.nextInt(28);
 
 		for (int i = 0; i <= 3; i++) {
 			tetrimino[i].x = tetriminoList[randomNumber][i].x;
@@ -496,30 +1120,13 @@ public class GrandFinale {
 
 	// Move the tetrimino in the specified direction
 	private void moveTetrimino(IRobot robot, int moveX, int moveY) {
-		boolean keepGoing = true;
-
-		// First check if it can go in the specified direction
-		for (int i = 0; i <= 3; i++) {
-			if (robot.getMaze().getCellType(tetrimino[i].x + moveX, tetrimino[i].y + moveY) == 2
-				&& partOfTetrimino(robot, new Point(tetrimino[i].x + moveX, tetrimino[i].y + moveY)) == false) {
-				keepGoing = false;
-				break;
-			}
-		}
-
 		// If it can go, move it in that direction
-		if (keepGoing == true) {
-			// Clear the previous location
-			for (int i = 0; i <= 3; i++) {
-				robot.getMaze().setCellType(tetrimino[i].x, tetrimino[i].y, 1);
-			}
-
-			// Fill the new location
+		if (tetrisBoard.canPlace(tetrimino, moveX, moveY) == true) {
 			for (int i = 0; i <= 3; i++) {
 				tetrimino[i].x += moveX;
 				tetrimino[i].y += moveY;
-				robot.getMaze().setCellType(tetrimino[i].x, tetrimino[i].y, 2);
 			}
+			syncTetrisBoard(robot.getMaze());
 		}
 	}
 
@@ -543,10 +1150,24 @@ public class GrandFinale {
 		}
 	}
 
+	// Turn the tetrimino and move it to where the autoplayer planned, then drop it straight down; a move that is blocked is left out
+	private void autoplayMoveTetrimino(IRobot robot) {
+		int shift = tetrisAutoplayer.getPlannedShift();
+
+		for (int turns = 0; turns < 3 && tetriminoIndex != tetrisAutoplayer.getPlannedIndex(); turns++) {
+			rotateTetrimino(robot);
+		}
+		for (; shift != 0 && tetrisBoard.canPlace(tetrimino, Integer.signum(shift), 0) == true; shift -= Integer.signum(shift)) {
+			moveTetrimino(robot, Integer.signum(shift), 0);
+		}
+		while (tetriminoLanded(robot) == false) {
+			moveTetrimino(robot, 0, 1);
+		}
+	}
+
 	// Rotate a tetrimino
 	private void rotateTetrimino(IRobot robot) {
 		Point[] newTetrimino = new Point[4];
-		boolean keepGoing = true;
 
 		// Get the next rotation of the current tetrimino
 		for (int i = 0; i <= 3; i++) {
@@ -554,75 +1175,35 @@ public class GrandFinale {
 										tetrimino[i].y + tetriminoList[tetriminoIndex / 4 * 4 + (tetriminoIndex + 1) % 4][i].y - tetriminoList[tetriminoIndex][i].y);
 		}
 
-		for (int i = 0; i <= 3; i++) {
-			if (robot.getMaze().getCellType(newTetrimino[i].x, newTetrimino[i].y) == 2
-				&& partOfTetrimino(robot, new Point(newTetrimino[i].x, newTetrimino[i].y)) == false) {
-				keepGoing = false;
-				break;
-			}
-		}
-
 		// If it can go, move it in that direction
-		if (keepGoing == true) {
-			// Clear the previous location
-			for (int i = 0; i <= 3; i++) {
-				robot.getMaze().setCellType(tetrimino[i].x, tetrimino[i].y, 1);
-			}
-
-			// Fill the new location
+		if (tetrisBoard.canPlace(newTetrimino, 0, 0) == true) {
 			for (int i = 0; i <= 3; i++) {
 				tetrimino[i].x = newTetrimino[i].x;
 				tetrimino[i].y = newTetrimino[i].y;
-				robot.getMaze().setCellType(tetrimino[i].x, tetrimino[i].y, 2);
 			}
+			// Only a tetrimino that turned takes the next rotation's index, or its squares would no longer match it
+			tetriminoIndex = tetriminoIndex / 4 * 4 + (tetriminoIndex + 1) % 4;
+			syncTetrisBoard(robot.getMaze());
 		}
-		tetriminoIndex = tetriminoIndex / 4 * 4 + (tetriminoIndex + 1) % 4;
 	}
 
 	// Check whether the tetrimino has landed
 	private boolean tetriminoLanded(IRobot robot) {
-		for (int i = 0; i <= 3; i++) {
-			if (robot.getMaze().getCellType(tetrimino[i].x, tetrimino[i].y + 1) == 2
-				&& partOfTetrimino(robot, new Point(tetrimino[i].x, tetrimino[i].y + 1)) == false) {
-				return true;
-			}
-		}
-		return false;
+		return tetrisBoard.canPlace(tetrimino, 0, 1) == false;
 	}
 
-	// Check if there are any complete lines and erase theme
+	// Check if there are any complete lines and erase them
 	private void eraseLines(IRobot robot) {
-		boolean erase;
+		int lines = tetrisBoard.clearFullLines();
 
-		for (int i = 0; i <= 3; i++) {
-			erase = true;
-			for (int j = 1; j < mazeX - 1; j++) {
-				if (robot.getMaze().getCellType(j, tetrimino[i].y) == 1) {
-					erase = false;
-					break;
-				}
-			}
-			if (erase == true) {
-				for (int y = tetrimino[i].y; y >= 2; y--) {
-					for (int x = 1; x < mazeX - 1; x++) {
-						robot.getMaze().setCellType(x, y, robot.getMaze().getCellType(x, y - 1));
-					}
-				}
+		if (lines > 0) {
+			syncTetrisBoard(robot.getMaze());
+			if (tetrisAutoplayer != null) {
+				tetrisAutoplayer.recordLines(lines);
 			}
 		}
 	}
 
-	// Check if this square is part of the tetrimino that is currently falling
-	private boolean partOfTetrimino(IRobot robot, Point square) {
-		for (int i = 0; i <= 3; i++) {
-			if (tetrimino[i].x == square.x && tetrimino[i].y == square.y) {
-				return true;
-			}
-		}
-
-		return false;
-	}
-
 	// Check if the Tetris game is over
 	private boolean gameOver(IRobot robot) {
 		for (int i = 0; i <= 3; i++) {
@@ -633,13 +1214,11 @@ public class GrandFinale {
 		return false;
 	}
 
-	// Reset the maze for another game;
+	// Reset the maze for another game; the last tetrimino carries on falling from the top
 	private void resetMaze(IRobot robot) {
-		for (int i = 1; i < mazeX - 1; i++) {
-			for (int j = 1; j < mazeY - 1; j++) {
-				robot.getMaze().setCellType(i, j, 1);
-			}
-		}
+		tetrisBoard.clear();
+		tetrisBoard.setPiece(tetrimino);
+		syncTetrisBoard(robot.getMaze());
 	}
 
 	// Manually create all the possible tetriminos
@@ -824,67 +1403,242 @@ public class GrandFinale {
 
 	public void reset() {
 		pollRun = 0;
-		stepCounter = 1;
+		shortestPath.rewind();
 		// Reset the array
-		for (int i = 0; i < mazeGrid.length; i++) {
-			for (int j = 0; j < mazeGrid.length; j++) {
-				mazeGrid[i][j] = 0;
-			}
-		}
+		mazeGrid.clear();
 		// Reset the original starting square and target square (after the games alter them)
 		theMaze.setStart(originalStartingSquare.x, originalStartingSquare.y);
 		theMaze.setFinish(originalTargetSquare.x, originalTargetSquare.y);
 		currentRobotSquare = originalStartingSquare;
 		currentTargetSquare = originalTargetSquare;
+		chaseDistances = null;
+		targetSquares = null;
 
-		// Reset the maze of seen squares used in the Loopy Maze Game Mode
-		for (int i = 1; i < mazeX; i++) {
-			for (int j = 1; j < mazeY; j++) {
-				seenSquare[i][j] = false;
-			}
+		// Finish what the poll that took the background plan left for the end of the run
+		if (junctionGraphPending == true) {
+			finishJunctionGraph(squareIndex(originalTargetSquare));
+			junctionGraphPending = false;
 		}
+		if (rememberPending == true) {
+			rememberMaze();
+			rememberPending = false;
+		}
+
+		// If exploring stopped early, the first run didn't end at the starting square, so find the path from there now
+		if (startPathPending == true) {
+			findShortestPath(originalStartingSquare, originalTargetSquare);
+			rememberMaze();
+			startPathPending = false;
+		}
+
+		// Reset the maze of seen squares used in the Loopy Maze Game Mode
+		seenSquare.clear();
 		squaresLeft = passageCounter;
 
 		// If the maze is in Blank Maze Game Mode, clear the maze of the remaining tetrimino squares
 		if (robotSearchMode == 5) {
-			for (int i = 1; i < mazeX - 1; i++) {
-				for (int j = 1; j < mazeY - 1; j++) {
-					theMaze.setCellType(i, j, 1);
-				}
+			tetrisBoard.clear();
+			syncTetrisBoard(theMaze);
+		}
+		// The run is over, so a change still waiting for its frame won't be sent by a later poll
+		repaintBatcher.flushNow(theMaze);
+
+		// Dump the metrics gathered so far, if a metrics file was asked for
+		SolverMetrics.writeCsv();
+		if (stepTrace != null) {
+			try {
+				stepTrace.endRun();
+			}
+			catch (IOException e) {
+				stopStepTrace(e);
 			}
 		}
 	}
 
 	public void controlRobot(IRobot robot) {
+		Point location;
+
+		// A new maze starts the random choices from their seed again, and a new step trace if one was asked for
+		if (robot.getRuns() == 0 && pollRun == 0) {
+			random.restart();
+			startStepTrace(robot.getMaze());
+		}
+		if (stepTrace != null && stepTrace.needsCheckpoint() == true) {
+			location = robot.getLocation();
+			stepTrace.checkpoint(robot.getRuns(), location.x, location.y, robot.getHeading(), robotSearchMode, random.getState());
+		}
+		measurePoll(robot);
+		if (stepTrace != null) {
+			try {
+				stepTrace.record(robot.getHeading());
+			}
+			catch (IOException e) {
+				stopStepTrace(e);
+			}
+		}
+	}
+
+	// Open the step trace file for a new maze, in place of any trace of the last one
+	private void startStepTrace(Maze maze) {
+		String traceFile = System.getProperty("grandfinale.trace");
+
+		if (stepTrace != null) {
+			try {
+				stepTrace.close();
+			}
+			catch (IOException e) {
+				System.err.println("Could not write the step trace: " + e.getMessage());
+			}
+			stepTrace = null;
+		}
+		if (traceFile != null) {
+			try {
+				stepTrace = new StepTraceWriter(new File(traceFile), random.getSeed(), wantsDirectedExploration(), maze);
+			}
+			catch (IOException e) {
+				System.err.println("Could not write the step trace: " + e.getMessage());
+			}
+		}
+	}
+
+	// True if the maze is being traced or replayed from a trace, so it has to be solved the same way every time
+	private boolean isTraced() {
+		return stepTrace != null || replayingTrace == true;
+	}
+
+	// Explore towards the target rather than the whole maze, as -Dgrandfinale.exploration=directed or the replayed trace asks
+	private boolean wantsDirectedExploration() {
+		if (replayingTrace == true) {
+			return sharedMap == null && traceDirected == true;
+		}
+		return sharedMap == null && "directed".equals(System.getProperty("grandfinale.exploration"));
+	}
+
+	// Give up on a trace that can't be written; the solver carries on without it
+	private void stopStepTrace(IOException e) {
+		System.err.println("Could not write the step trace: " + e.getMessage());
+		stepTrace = null;
+	}
+
+	// Run the poll, measuring it if a metrics file or a flight recording asked for it
+	private void measurePoll(IRobot robot) {
+		ControlRobotEvent pollEvent;
+		long pollStart;
+		long pollNanos;
+		long allocatedBefore;
+		long allocated;
+
+		// Without a flight recording or a metrics file, polls aren't measured at all
+		if (SolverMetrics.isRecording() == false) {
+			pollRobot(robot);
+			return;
+		}
+		pollEvent = new ControlRobotEvent();
+		pollEvent.begin();
+		allocatedBefore = SolverMetrics.allocatedBytes();
+		pollStart = System.nanoTime();
+		countingRobot.wrap(robot);
+		pollRobot(countingRobot);
+		pollNanos = System.nanoTime() - pollStart;
+		allocated = SolverMetrics.allocatedBytes() - allocatedBefore;
+		pollEvent.end();
+
+		SolverMetrics.record(POLL_METRICS[polledSearchMode], pollNanos);
+		SolverMetrics.record("controlRobot.robotCalls", countingRobot.getCalls());
+		SolverMetrics.record("controlRobot.allocatedBytes", allocated);
+		pollEvent.searchMode = polledSearchMode;
+		pollEvent.run = robot.getRuns();
+		pollEvent.robotCalls = countingRobot.getCalls();
+		pollEvent.allocatedBytes = allocated;
+		pollEvent.commit();
+	}
+
+	// Decide the robot's next heading; controlRobot measures this when instrumentation is on
+	private void pollRobot(IRobot robot) {
 		int initialHeading = robot.getHeading();
 		int robotHeading;
+		int wallCapacity;
+		MazeKnowledge knowledge;
+
+		// Explore, Backtrack and Join Mode (and the first poll on a new maze) decide from a single look around the robot
+		if ((robot.getRuns() == 0 && pollRun == 0) || robotSearchMode < 2 || robotSearchMode == 6) {
+			senseSurroundings(robot);
+		}
 
 		// Reset the data store on the first move of the first run of a new maze
 		if (robot.getRuns() == 0 && pollRun == 0) {
 			pollRun = 0;
-			mazeGrid = new int[MAX_MAZE_SIZE][MAX_MAZE_SIZE];
-			seenSquare = new boolean[MAX_MAZE_SIZE][MAX_MAZE_SIZE];
-			junctionStack = new Stack<JunctionRecorder>();
-			startingSquare = robot.getLocation();
+			mazeGrid.clear();
+			seenSquare.clear();
+			junctionStack.clear();
+			treeOracle = null;
+			if (junctionGraphStore == null) {
+				junctionGraphStore = new JunctionGraph(MAX_MAZE_SIZE);
+			}
+			junctionGraphStore.clear();
+			junctionGraph = junctionGraphStore;
+			// A robot exploring with others only records part of the maze, so it plans over the shared map instead
+			if (sharedMap != null) {
+				junctionGraph = null;
+				frontierSquare = -1;
+				branchSquares.clear();
+			}
+			startingSquare = polledSquare;
 			robotSearchMode = 0;
 			// If the starting square is not a junction, add it to the stack anyway (to ensure that after exploring the maze, the robot gets back to the starting square)
-			if (countAdjacentSquares(robot, IRobot.WALL) > 1) {
-				mazeGrid[robot.getLocation().x][robot.getLocation().y] = 1;
-				junctionStack.push(new JunctionRecorder(robot.getLocation(), IRobot.SOUTH));
+			if (countAdjacentSquares(IRobot.WALL) > 1) {
+				mazeGrid.set(polledX, polledY, 1);
+				junctionStack.push(polledX, polledY, IRobot.SOUTH);
 			}
 			// Game stuff
 			originalStartingSquare = robot.getLocation();
 			originalTargetSquare = robot.getTargetLocation();
-			userInputPanel.setVisible(false);
+			if (userInputPanel != null) {
+				userInputPanel.setVisible(false);
+			}
 			theMaze = robot.getMaze();
 			mazeIsLoopy = false;
+			mazeIsOpen = false;
+			mapIsPartial = false;
+			startPathPending = false;
+			directedExploration = wantsDirectedExploration();
+			/* Plan the path to the target in the background while backtracking, unless told to plan it in the poll that needs it.
+			   Which poll picks a background plan up depends on the worker's timing, so a traced maze is always planned inline
+			 */
+			wallCapacity = backgroundPlanner != null ? backgroundPlanner.getWallCapacity() : 0;
+			backgroundPlanner = null;
+			if (directedExploration == false && sharedMap == null && isTraced() == false && "inline".equals(System.getProperty("grandfinale.planner")) == false) {
+				backgroundPlanner = new BackgroundPlanner(MAX_MAZE_SIZE, wallCapacity);
+				squareStates.clear();
+				unexploredSquares = 0;
+			}
+			junctionGraphPending = false;
+			rememberPending = false;
+			if (directedExploration == true) {
+				if (shortestPathProof == null) {
+					shortestPathProof = new ShortestPathProof(MAX_MAZE_SIZE);
+				}
+				shortestPathProof.start(startingSquare, squareIndex(robot.getTargetLocation()), theMaze.getWidth(), theMaze.getHeight());
+			}
 			mazeX = 1;
 			mazeY = 1;
 			passageCounter = 0;
+			/* A maze solved before, or given in a layout file, goes straight to Shortest Path Mode. A traced maze is always explored,
+			   since the replay can't know what this controller remembered
+			 */
+			mazeFingerprint = MazeKnowledgeCache.fingerprint(theMaze);
+			knowledge = null;
+			if (isTraced() == false) {
+				knowledge = MazeKnowledgeCache.get(mazeFingerprint);
+				if (knowledge == null) {
+					knowledge = MazeKnowledgeCache.getFromLayout(mazeFingerprint, theMaze);
+				}
+			}
+			recallMaze(knowledge);
 		}
 
-		// After a few runs, switch to Game mode
-		if (robot.getRuns() == 4 && pollRun == 0) {
+		// After a few runs, switch to Game mode; the games need the whole maze, so not if exploring stopped early
+		if (robot.getRuns() == 4 && pollRun == 0 && mapIsPartial == false) {
 			for (int i = 1; i <= mazeX; i++) {
 				for (int j = 1; j <= mazeY; j++) {
 					if (mazeGridFrame[i][j] != -1) {
@@ -895,11 +1649,14 @@ public class GrandFinale {
 			// Check if it's a blank maze
 			if (passageCounter == mazeX * mazeY) {
 				robotSearchMode = 5;
-				JOptionPane.showMessageDialog(null, "Let's play Tetris! Use W, A, S, D to move the pieces.");
+				tetrisAutoplayer = null;
+				if ("autoplay".equals(System.getProperty("grandfinale.tetris")) == false) {
+					JOptionPane.showMessageDialog(null, "Let's play Tetris! Use W, A, S, D to move the pieces.");
+				}
 				robot.getMaze().setStart(0, 0);
 				robot.getMaze().setFinish(0, 1);
 				robot.setHeading(IRobot.EAST);
-				EventBus.broadcast(new Event(107, robot.getMaze()));
+				repaintBatcher.request(MazeRepaintBatcher.RELOAD);
 				needTetrimino = true;
 				mazeX = robot.getMaze().getWidth();
 				mazeY = robot.getMaze().getHeight();
@@ -909,6 +1666,11 @@ public class GrandFinale {
 				}
 				tetriminoLanded = false;
 				createTetriminoList();
+				tetrisBoard = new TetrisBitboard(mazeX, mazeY);
+				tetrisBoard.loadFrom(robot.getMaze());
+				if ("autoplay".equals(System.getProperty("grandfinale.tetris")) == true) {
+					tetrisAutoplayer = new TetrisAutoplayer(tetrisBoard, tetriminoList, mazeX, mazeY);
+				}
 			}
 			// Check if it's a Prim maze
 			else if (mazeIsLoopy == false) {
@@ -923,53 +1685,136 @@ public class GrandFinale {
 
 			}
 			currentTargetSquare = robot.getTargetLocation();
-			userInputPanel.setVisible(true);
+			currentRobotSquare = robot.getLocation();
+			chaseDistances = null;
+			pursuerSearch = null;
+			if (targetCount > 1 && robotSearchMode != 5) {
+				revealMazeFrame();
+			}
+			// A single target can search for its moves instead of taking the shortest path, within a time budget for each move
+			else if (robotSearchMode != 5 && "minimax".equals(System.getProperty("grandfinale.pursuer"))) {
+				revealMazeFrame();
+				// The oracle stops at the target's square, but once the target moves the robot can get past it, so take it in too
+				if (treeOracle != null && treeOracle.build(mazeGridFrame, originalStartingSquare.x, originalStartingSquare.y, -1, -1) == false) {
+					treeOracle = null;
+				}
+				if (pursuerSearchStore == null) {
+					pursuerSearchStore = new PursuerSearch(MAX_MAZE_SIZE);
+				}
+				pursuerSearch = pursuerSearchStore;
+				pursuerSearch.start(mazeGridFrame, theMaze.getWidth(), theMaze.getHeight(), treeOracle, squareIndex(currentTargetSquare));
+			}
+			// Nobody has to type when the autoplayer plays Tetris
+			if (robotSearchMode != 5 || tetrisAutoplayer == null) {
+				if (userInputPanel == null) {
+					userInputPanel = new InputPanel();
+				}
+				userInputPanel.setVisible(true);
+			}
 		}
 
 		if (robot.getRuns() > 4 && pollRun == 0 && robotSearchMode == 5) {
 			robot.getMaze().setStart(0, 0);
 			robot.getMaze().setFinish(0, 1);
 			robot.setHeading(IRobot.EAST);
-			EventBus.broadcast(new Event(107, robot.getMaze()));
+			repaintBatcher.request(MazeRepaintBatcher.RELOAD);
 		}
 
 		pollRun++;
 
+		// While exploring, record the robot's square in the junction graph; junctions, dead ends and the starting square are its nodes
+		if (robotSearchMode < 2) {
+			if (junctionGraph != null) {
+				junctionGraph.visitSquare(polledSquare);
+				if (countAdjacentSquares(IRobot.WALL) != 2 || polledSquare == startingSquare) {
+					junctionGraph.reachNode(polledSquare);
+				}
+			}
+			if (backgroundPlanner != null) {
+				countUnexploredSquares();
+			}
+		}
+
+		// Exploring with other robots, share what this one sees, and stop as soon as they have seen the whole maze between them
+		if (sharedMap != null && (robotSearchMode < 2 || robotSearchMode == 6)) {
+			// Once the robot stands on the passage it claimed, it explores from there as from a new starting square
+			if (robotSearchMode == 6 && polledSquare == frontierSquare) {
+				frontierSquare = -1;
+				startingSquare = polledSquare;
+				junctionStack.clear();
+				branchSquares.clear();
+				robotSearchMode = 0;
+			}
+			shareSurroundings();
+			if (sharedMap.isExplored() == true) {
+				finishSharedExploring();
+			}
+		}
+
+		polledSearchMode = robotSearchMode;
 		// Explore Mode
 		if (robotSearchMode == 0) {
-			// Record surrounding walls in mazeGrid for later use
+			// Record surrounding walls in mazeGrid for later use, and log the new ones for the background planner
 			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
-				if (headingTowardsSquareType(robot, heading, IRobot.WALL) == true) {
-					Point testSquare = testCoordinates(robot.getLocation(), heading);
-					mazeGrid[testSquare.x][testSquare.y] = -1;
+				if (headingTowardsSquareType(heading, IRobot.WALL) == true && mazeGrid.get(polledX + Headings.x(heading), polledY + Headings.y(heading)) != -1) {
+					mazeGrid.set(polledX + Headings.x(heading), polledY + Headings.y(heading), -1);
+					if (backgroundPlanner != null) {
+						backgroundPlanner.addWall(polledSquare + Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading));
+					}
+				}
+			}
+			/* If the robot is in a new junction, push it into the junctionStack; exploring with other robots, the square a branch
+			   starts from is pushed whatever it looks like, as their passages may have turned it into a dead end */
+			if ((countAdjacentSquares(IRobot.WALL) <= 1 || (sharedMap != null && junctionStack.isEmpty() == true)) && mazeGrid.get(polledX, polledY) == 0) {
+				mazeGrid.set(polledX, polledY, 1);
+				junctionStack.push(polledX, polledY, initialHeading);
+			}
+			// Directed exploration stops as soon as the rest of the maze can't hold a shorter path
+			if (directedExploration == true) {
+				for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+					if (headingTowardsSquareType(heading, IRobot.WALL) == true) {
+						shortestPathProof.addWall(polledSquare + Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading));
+					}
+					else {
+						shortestPathProof.addPassage(polledSquare + Headings.x(heading) * MAX_MAZE_SIZE + Headings.y(heading));
+					}
 				}
 			}
-			// If the robot is in a new junction, push it into the junctionStack;
-			if (countAdjacentSquares(robot, IRobot.WALL) <= 1 && mazeGrid[robot.getLocation().x][robot.getLocation().y] == 0) {
-				mazeGrid[robot.getLocation().x][robot.getLocation().y] = 1;
-				junctionStack.push(new JunctionRecorder(robot.getLocation(), initialHeading));
+			if (directedExploration == true && shortestPathProof.isProven() == true) {
+				robotHeading = finishExploring();
+			}
+			else {
+				robotHeading = exploreControl(robot);
 			}
-			robotHeading = exploreControl(robot);
 
-			if (testCoordinates(robot.getLocation(), robotHeading).x > mazeX) {
-				mazeX = testCoordinates(robot.getLocation(), robotHeading).x;
+			if (polledX + Headings.x(robotHeading) > mazeX) {
+				mazeX = polledX + Headings.x(robotHeading);
 			}
 
-			if (testCoordinates(robot.getLocation(), robotHeading).y > mazeY) {
-				mazeY = testCoordinates(robot.getLocation(), robotHeading).y;
+			if (polledY + Headings.y(robotHeading) > mazeY) {
+				mazeY = polledY + Headings.y(robotHeading);
 			}
 		}
-		// Backtrack Mode
+		/* Backtrack Mode. Once every passage seen has been entered, no more walls can turn up, and the robot is on its way back to
+		   the bottom of the stack; start planning the path to the target from there
+		 */
 		else if (robotSearchMode == 1) {
+			if (backgroundPlanner != null && unexploredSquares == 0 && junctionStack.isEmpty() == false) {
+				backgroundPlanner.request(junctionStack.firstX() * MAX_MAZE_SIZE + junctionStack.firstY(), polledTarget, mazeIsLoopy, mazeX, mazeY);
+			}
 			robotHeading = backtrackControl(robot);
 		}
 		// Shortest Path Mode
 		else if (robotSearchMode == 2) {
-			robotHeading = shortestPath[stepCounter++];
+			robotHeading = shortestPath.nextHeading();
+		}
+		// Join Mode
+		else if (robotSearchMode == 6) {
+			robotHeading = joinControl();
 		}
 		// Prim Maze Game Mode
 		else if (robotSearchMode == 3) {
-			robotHeading = primMazeGame(robot, 107);
+			robotHeading = primMazeGame(robot, MazeRepaintBatcher.RELOAD);
 		}
 		// Loopy Maze Game Mode
 		else if (robotSearchMode == 4) {
@@ -978,7 +1823,7 @@ public class GrandFinale {
 			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
 				if (testCoordinates(currentRobotSquare, heading).equals(currentTargetSquare) == true) {
 					robotHeading = heading;
-					EventBus.broadcast(new Event(107, robot.getMaze()));
+					repaintBatcher.request(MazeRepaintBatcher.RELOAD);
 					break;
 				}
 			}
@@ -990,15 +1835,24 @@ public class GrandFinale {
 				blankMazeGame(robot);
 			}
 			else {
-				JOptionPane.showMessageDialog(null, "Game over. Start again?");
+				if (tetrisAutoplayer != null) {
+					tetrisAutoplayer.recordGameLost();
+				}
+				else {
+					JOptionPane.showMessageDialog(null, "Game over. Start again?");
+				}
 				resetMaze(robot);
-				EventBus.broadcast(new Event(107, robot.getMaze()));
+				repaintBatcher.request(MazeRepaintBatcher.RELOAD);
 			}
 		}
 		// If the robot is still exploring the maze and is facing the target, turn back
-		if (robotSearchMode < 2 && testCoordinates(robot.getLocation(), robotHeading).equals(robot.getTargetLocation()) == true) {
+		if (robotSearchMode < 2 && polledSquare + Headings.x(robotHeading) * MAX_MAZE_SIZE + Headings.y(robotHeading) == polledTarget) {
+			if (junctionGraph != null) {
+				junctionGraph.turnBackFrom(robotHeading);
+			}
 			robotHeading = reverseHeading(initialHeading);
 		}
+		repaintBatcher.flush(robot.getMaze());
 		robot.setHeading(robotHeading);
 	}
 }
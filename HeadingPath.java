@@ -0,0 +1,94 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+
+// Sequence of headings stored as runs of equal headings, so a path takes memory in proportion to its number of turns;
+// it is read back one heading at a time, from the start, like a stream
+class HeadingPath {
+	private int[] runs; // Each run is (number of steps << 2) | (heading - IRobot.NORTH)
+	private int runCount; // Number of runs in use
+	private int length; // Total number of steps
+	private int readRun; // Run holding the next heading to read
+	private int readSteps; // Steps of that run already read
+
+	public HeadingPath() {
+		runs = new int[16];
+	}
+
+	public void clear() {
+		runCount = 0;
+		length = 0;
+		rewind();
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public void append(int heading) {
+		append(heading, 1);
+	}
+
+	// Add a number of steps along the same heading
+	public void append(int heading, int steps) {
+		if (steps <= 0) {
+			return;
+		}
+		if (runCount > 0 && (runs[runCount - 1] & 3) == heading - IRobot.NORTH) {
+			runs[runCount - 1] += steps << 2;
+		}
+		else {
+			if (runCount == runs.length) {
+				runs = Arrays.copyOf(runs, runs.length * 2);
+			}
+			runs[runCount++] = (steps << 2) | (heading - IRobot.NORTH);
+		}
+		length += steps;
+	}
+
+	// Reverse the order of the runs; the headings are kept, so a path written from its end backwards reads forwards again
+	public void reverse() {
+		int run;
+
+		for (int i = 0, j = runCount - 1; i < j; i++, j--) {
+			run = runs[i];
+			runs[i] = runs[j];
+			runs[j] = run;
+		}
+	}
+
+	public void copyFrom(HeadingPath path) {
+		clear();
+		for (int i = 0; i < path.runCount; i++) {
+			append(path.getRunHeading(i), path.getRunSteps(i));
+		}
+	}
+
+	public int runCount() {
+		return runCount;
+	}
+
+	public int getRunHeading(int run) {
+		return (runs[run] & 3) + IRobot.NORTH;
+	}
+
+	public int getRunSteps(int run) {
+		return runs[run] >>> 2;
+	}
+
+	// Go back to reading the first heading
+	public void rewind() {
+		readRun = 0;
+		readSteps = 0;
+	}
+
+	// Return the next heading of the path and move past it
+	public int nextHeading() {
+		int heading = getRunHeading(readRun);
+
+		if (++readSteps == getRunSteps(readRun)) {
+			readRun++;
+			readSteps = 0;
+		}
+		return heading;
+	}
+}
@@ -0,0 +1,31 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+
+// Movement along the four absolute headings, shared by the controller and the search classes
+class Headings {
+	private static final int[] X = {0, 1, 0, -1}; // Change in x for each heading, indexed by heading - IRobot.NORTH
+	private static final int[] Y = {-1, 0, 1, 0}; // Change in y for each heading, indexed by heading - IRobot.NORTH
+
+	public static int x(int heading) {
+		return X[heading - IRobot.NORTH];
+	}
+
+	public static int y(int heading) {
+		return Y[heading - IRobot.NORTH];
+	}
+
+	// Return the heading that leads from one square to an adjacent one, given their indices (x * gridSize + y)
+	public static int between(int fromSquare, int toSquare, int gridSize) {
+		int difference = toSquare - fromSquare;
+
+		if (difference == -1) {
+			return IRobot.NORTH;
+		}
+		if (difference == gridSize) {
+			return IRobot.EAST;
+		}
+		if (difference == 1) {
+			return IRobot.SOUTH;
+		}
+		return IRobot.WEST;
+	}
+}
@@ -0,0 +1,138 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+import java.awt.Point;
+
+// In-memory robot which senses and moves like the environment's robot, so that a controller can be run without the GUI
+class HeadlessRobot implements IRobot {
+	private static final int[] X = {0, 1, 0, -1}; // Change in x for each heading, indexed by heading - IRobot.NORTH
+	private static final int[] Y = {-1, 0, 1, 0}; // Change in y for each heading, indexed by heading - IRobot.NORTH
+
+	private Maze maze;
+	private Point target;
+	private boolean[][] trackerGrid; // True if the robot has been on the square during the current run
+	private int locationX, locationY;
+	private int heading = IRobot.EAST;
+	private int runs;
+	private long steps;
+	private long collisions;
+
+	public HeadlessRobot(Maze maze) {
+		this.maze = maze;
+		target = new Point(maze.getFinish());
+		trackerGrid = new boolean[maze.getWidth()][maze.getHeight()];
+		moveToStart();
+	}
+
+	public static int stepX(int heading) {
+		return X[heading - IRobot.NORTH];
+	}
+
+	public static int stepY(int heading) {
+		return Y[heading - IRobot.NORTH];
+	}
+
+	public int getRuns() {
+		return runs;
+	}
+
+	public int look(int direction) throws RuntimeException {
+		int lookHeading;
+		int lookX, lookY;
+
+		if (direction < IRobot.AHEAD || direction > IRobot.LEFT) {
+			throw new RuntimeException("The robot can only look AHEAD, BEHIND, LEFT and RIGHT.");
+		}
+		lookHeading = IRobot.NORTH + (heading + direction) % 4;
+		lookX = locationX + stepX(lookHeading);
+		lookY = locationY + stepY(lookHeading);
+		if (maze.getCellType(lookX, lookY) == Maze.WALL) {
+			return IRobot.WALL;
+		}
+		if (trackerGrid[lookX][lookY] == true) {
+			return IRobot.BEENBEFORE;
+		}
+		return IRobot.PASSAGE;
+	}
+
+	public void face(int direction) throws RuntimeException {
+		if (direction < IRobot.AHEAD || direction > IRobot.LEFT) {
+			throw new RuntimeException("The robot can only face AHEAD, BEHIND, LEFT and RIGHT.");
+		}
+		heading = IRobot.NORTH + (heading + direction) % 4;
+	}
+
+	public void setHeading(int heading) throws RuntimeException {
+		if (heading < IRobot.NORTH || heading > IRobot.WEST) {
+			throw new RuntimeException("The robot can only head NORTH, EAST, SOUTH and WEST.");
+		}
+		this.heading = heading;
+	}
+
+	public int getHeading() {
+		return heading;
+	}
+
+	public Point getLocation() {
+		return new Point(locationX, locationY);
+	}
+
+	public Point getTargetLocation() {
+		return new Point(target);
+	}
+
+	public Maze getMaze() {
+		return maze;
+	}
+
+	// The environment sleeps the controller thread; there is nothing to wait for here
+	public void sleep(int milliseconds) {
+	}
+
+	// Move one square along the current heading, or count a collision if there is a wall in the way
+	public void advance() {
+		int nextX = locationX + stepX(heading);
+		int nextY = locationY + stepY(heading);
+
+		if (nextX < 0 || nextY < 0 || nextX >= maze.getWidth() || nextY >= maze.getHeight()) {
+			throw new RuntimeException("Robot cannot advance off the edge of the maze!");
+		}
+		if (maze.getCellType(nextX, nextY) == Maze.PASSAGE) {
+			locationX = nextX;
+			locationY = nextY;
+			trackerGrid[locationX][locationY] = true;
+			steps++;
+		}
+		else {
+			collisions++;
+		}
+	}
+
+	public boolean isAtTarget() {
+		return locationX == target.x && locationY == target.y;
+	}
+
+	// Start the next run from the maze's starting square, as the environment does once the target is reached
+	public void reset() {
+		for (int i = 0; i < trackerGrid.length; i++) {
+			Arrays.fill(trackerGrid[i], false);
+		}
+		moveToStart();
+		steps = 0;
+		collisions = 0;
+		runs++;
+	}
+
+	public long getSteps() {
+		return steps;
+	}
+
+	public long getCollisions() {
+		return collisions;
+	}
+
+	private void moveToStart() {
+		locationX = maze.getStart().x;
+		locationY = maze.getStart().y;
+		trackerGrid[locationX][locationY] = true;
+	}
+}
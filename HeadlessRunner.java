@@ -0,0 +1,400 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import uk.ac.warwick.dcs.maze.generators.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.awt.Point;
+import java.lang.reflect.Field;
+
+// Outcome of running the controller on a single maze
+class MazeRunResult {
+	private String generatorName;
+	private int optimalSteps; // Length of the shortest path from start to target, or -1 if the target cannot be reached
+	private long[] runSteps; // Steps taken in each run, pass after pass
+	private long nanoseconds; // Time spent in the controller and robot, excluding maze generation
+	private String failure; // Why the controller did not finish, or null if it did
+
+	public MazeRunResult(String generatorName, int optimalSteps, long[] runSteps, long nanoseconds, String failure) {
+		this.generatorName = generatorName;
+		this.optimalSteps = optimalSteps;
+		this.runSteps = runSteps;
+		this.nanoseconds = nanoseconds;
+		this.failure = failure;
+	}
+
+	public String getGeneratorName() {
+		return generatorName;
+	}
+
+	public int getOptimalSteps() {
+		return optimalSteps;
+	}
+
+	public long[] getRunSteps() {
+		return runSteps;
+	}
+
+	public long getNanoseconds() {
+		return nanoseconds;
+	}
+
+	public String getFailure() {
+		return failure;
+	}
+}
+
+// Totals for all the mazes built by one generator
+class GeneratorSummary {
+	public int mazes;
+	public int unreachable; // Mazes skipped because the generator walled the target off
+	public int failed;
+	public long firstRunSteps;
+	public long laterRunSteps;
+	public int laterRuns;
+	public int optimalRuns; // Runs after the first one which took the shortest path
+	public long repeatFirstRunSteps; // Steps of the first run of every pass after the first
+	public int repeatFirstRuns;
+	public double stepRatio; // Sum over mazes of first run steps divided by the shortest path length
+	public long nanoseconds;
+}
+
+/* Run GrandFinale on many generated mazes at once, without the maze environment's GUI. Each maze gets its own generator,
+   robot and controller, so the mazes are solved independently on a fork-join pool. With -passes, each maze is solved again by
+   new controllers, which should find it in the maze knowledge cache. Usage:
+   java -Djava.awt.headless=true -cp maze-environment.jar:. HeadlessRunner [-mazes N] [-size N] [-runs N] [-passes N] [-cache on|off] [-metrics file.csv] [-threads N] [-generators Prim,Loopy,Blank,Hill] [-exploration full|directed]
+   [-allocations check] [-robots 1,2,4,8] [-pursuer check] [-tetris autoplay] [-placements N] [-seed N] [-record trace.bin]
+   [-replay trace.bin] [-latencies file.csv]
+ */
+public class HeadlessRunner {
+	static final int MAX_RUNS = 4; // The fifth run starts a game, which needs a player
+	static final int POLLS_PER_SQUARE = 100; // A run is abandoned after this many polls per square of the maze
+	static final int GRID_SIZE = 405; // Size of GrandFinale's grid, which a shared map must match
+
+	public static void main(String[] args) throws Exception {
+		int mazes = 1000;
+		int size = 31;
+		int runs = MAX_RUNS;
+		int passes = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String[] generatorNames = {"Prim", "Loopy", "Blank", "Hill"};
+		List<Callable<MazeRunResult>> tasks = new ArrayList<Callable<MazeRunResult>>();
+		Map<String, GeneratorSummary> summaries = new LinkedHashMap<String, GeneratorSummary>();
+		ForkJoinPool pool;
+		List<Future<MazeRunResult>> results;
+		long startTime, elapsedTime;
+		boolean allOptimal = true;
+		boolean checkAllocations = false;
+		boolean checkPursuer = false;
+		boolean autoplayTetris = false;
+		int placements = 10000;
+		String recordFile = null, replayFile = null, latencyFile = null;
+		int[] robotCounts = null;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "-mazes":
+					mazes = Integer.parseInt(args[i + 1]);
+					break;
+				case "-size":
+					size = Integer.parseInt(args[i + 1]);
+					break;
+				case "-runs":
+					runs = Math.max(1, Math.min(MAX_RUNS, Integer.parseInt(args[i + 1])));
+					break;
+				case "-passes":
+					passes = Math.max(1, Integer.parseInt(args[i + 1]));
+					break;
+				case "-cache":
+					// Without the cache, mazes which come out the same every time (blank ones) are explored every time
+					if ("off".equals(args[i + 1])) {
+						System.setProperty("grandfinale.cache.entries", "0");
+						System.clearProperty("grandfinale.cache.dir");
+					}
+					break;
+				case "-metrics":
+					System.setProperty("grandfinale.metrics", args[i + 1]);
+					break;
+				case "-threads":
+					threads = Integer.parseInt(args[i + 1]);
+					break;
+				case "-generators":
+					generatorNames = args[i + 1].split(",");
+					break;
+				case "-exploration":
+					System.setProperty("grandfinale.exploration", args[i + 1]);
+					break;
+				case "-allocations":
+					checkAllocations = "check".equals(args[i + 1]);
+					break;
+				case "-pursuer":
+					checkPursuer = "check".equals(args[i + 1]);
+					break;
+				case "-tetris":
+					autoplayTetris = "autoplay".equals(args[i + 1]);
+					break;
+				case "-placements":
+					placements = Integer.parseInt(args[i + 1]);
+					break;
+				case "-seed":
+					System.setProperty("grandfinale.seed", args[i + 1]);
+					break;
+				case "-record":
+					recordFile = args[i + 1];
+					break;
+				case "-replay":
+					replayFile = args[i + 1];
+					break;
+				case "-latencies":
+					latencyFile = args[i + 1];
+					break;
+				case "-robots":
+					robotCounts = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		if (checkAllocations == true) {
+			// A maze found in the cache isn't explored, so every maze has to be new to the controller
+			System.setProperty("grandfinale.cache.entries", "0");
+			System.clearProperty("grandfinale.cache.dir");
+			if (AllocationCheck.run(generatorNames, size, mazes) == false) {
+				System.exit(1);
+			}
+			return;
+		}
+
+		if (checkPursuer == true) {
+			if (PursuerCheck.run(generatorNames, size, mazes) == false) {
+				System.exit(1);
+			}
+			return;
+		}
+
+		// A traced or replayed controller plans inline and explores every maze by itself, so no settings are needed for a trace
+		if (recordFile != null || replayFile != null) {
+			if (recordFile != null) {
+				TraceReplayCheck.record(generatorNames[0], size, runs, recordFile);
+			}
+			if (replayFile != null && TraceReplayCheck.replay(replayFile, latencyFile) == false) {
+				System.exit(1);
+			}
+			return;
+		}
+
+		if (autoplayTetris == true) {
+			// Read when the autoplayer's pool is made, so it has to be set before the first game
+			System.setProperty("grandfinale.tetris", "autoplay");
+			System.setProperty("grandfinale.tetris.threads", Integer.toString(threads));
+			if (TetrisAutoplayCheck.run(size, placements, threads) == false) {
+				System.exit(1);
+			}
+			return;
+		}
+
+		if (robotCounts != null) {
+			// Every robot count has to explore each maze from scratch
+			System.setProperty("grandfinale.cache.entries", "0");
+			System.clearProperty("grandfinale.cache.dir");
+			if (CooperativeExplorationCheck.run(generatorNames, size, mazes, runs, robotCounts) == false) {
+				System.exit(1);
+			}
+			return;
+		}
+
+		// Spread the mazes evenly over the generators
+		for (String generatorName : generatorNames) {
+			summaries.put(generatorName, new GeneratorSummary());
+		}
+		for (int i = 0; i < mazes; i++) {
+			final String generatorName = generatorNames[i % generatorNames.length];
+			final int mazeSize = size;
+			final int runCount = runs;
+			final int passCount = passes;
+			tasks.add(() -> runMaze(generatorName, mazeSize, runCount, passCount));
+		}
+
+		pool = new ForkJoinPool(threads);
+		startTime = System.nanoTime();
+		results = pool.invokeAll(tasks);
+		elapsedTime = System.nanoTime() - startTime;
+		pool.shutdown();
+
+		for (Future<MazeRunResult> future : results) {
+			MazeRunResult result = future.get();
+			GeneratorSummary summary = summaries.get(result.getGeneratorName());
+			long[] runSteps = result.getRunSteps();
+
+			summary.mazes++;
+			summary.nanoseconds += result.getNanoseconds();
+			if (result.getOptimalSteps() < 0) {
+				summary.unreachable++;
+			}
+			else if (result.getFailure() != null) {
+				summary.failed++;
+				System.out.println(result.getGeneratorName() + ": " + result.getFailure());
+			}
+			else {
+				summary.firstRunSteps += runSteps[0];
+				summary.stepRatio += (double)runSteps[0] / result.getOptimalSteps();
+				for (int run = 1; run < runSteps.length; run++) {
+					// A new controller explores again unless it finds the maze in the cache, so these runs are only counted apart
+					if (run % runs == 0) {
+						summary.repeatFirstRuns++;
+						summary.repeatFirstRunSteps += runSteps[run];
+						continue;
+					}
+					summary.laterRuns++;
+					summary.laterRunSteps += runSteps[run];
+					if (runSteps[run] == result.getOptimalSteps()) {
+						summary.optimalRuns++;
+					}
+				}
+			}
+		}
+
+		System.out.printf("%-10s %7s %7s %12s %12s %10s %14s %10s", "Generator", "Mazes", "Failed", "Run 1 steps", "Later steps", "Optimal", "Run 1/optimum", "ms/maze");
+		System.out.printf(passes > 1 ? " %14s%n" : "%n", "Pass 2+ run 1");
+		for (Map.Entry<String, GeneratorSummary> entry : summaries.entrySet()) {
+			GeneratorSummary summary = entry.getValue();
+			int solved = Math.max(1, summary.mazes - summary.unreachable - summary.failed);
+
+			System.out.printf("%-10s %7d %7d %12.1f %12.1f %9.1f%% %14.2f %10.2f", entry.getKey(), summary.mazes - summary.unreachable, summary.failed,
+				(double)summary.firstRunSteps / solved, (double)summary.laterRunSteps / Math.max(1, summary.laterRuns),
+				100.0 * summary.optimalRuns / Math.max(1, summary.laterRuns), summary.stepRatio / solved, summary.nanoseconds / 1e6 / Math.max(1, summary.mazes));
+			System.out.printf(passes > 1 ? " %14.1f%n" : "%n", (double)summary.repeatFirstRunSteps / Math.max(1, summary.repeatFirstRuns));
+			if (summary.failed > 0 || summary.optimalRuns != summary.laterRuns) {
+				allOptimal = false;
+			}
+		}
+		System.out.printf("%d mazes of size %d in %.2f s on %d threads: %.1f mazes/sec%n", mazes, size, elapsedTime / 1e9, threads, mazes / (elapsedTime / 1e9));
+
+		// A non-zero exit status lets scripts catch a solver that stopped finding shortest paths
+		if (allOptimal == false) {
+			System.exit(1);
+		}
+	}
+
+	/* Generate a maze and let a fresh controller run on it, as the environment would when Begin is pressed; every pass after the
+	   first does it again with a new controller and robot, as if the maze had been loaded again
+	 */
+	private static MazeRunResult runMaze(String generatorName, int size, int runs, int passes) throws Exception {
+		Maze maze = createGenerator(generatorName, size).generateMaze();
+		int optimalSteps = shortestPathLength(maze);
+		boolean tree = TreeOracleCheck.isTree(maze);
+		long[] runSteps = new long[runs * passes];
+		long maxPolls = (long)POLLS_PER_SQUARE * maze.getWidth() * maze.getHeight();
+		long startTime;
+		GrandFinale controller;
+		HeadlessRobot robot;
+
+		if (optimalSteps < 0) {
+			return new MazeRunResult(generatorName, optimalSteps, runSteps, 0, null);
+		}
+
+		startTime = System.nanoTime();
+		try {
+			for (int pass = 0; pass < passes; pass++) {
+				controller = new GrandFinale();
+				robot = new HeadlessRobot(maze);
+				for (int run = 0; run < runs; run++) {
+					for (long polls = 0; robot.isAtTarget() == false; polls++) {
+						if (polls == maxPolls) {
+							return new MazeRunResult(generatorName, optimalSteps, runSteps, System.nanoTime() - startTime, "pass " + pass + " run " + run + " did not reach the target");
+						}
+						controller.controlRobot(robot);
+						robot.advance();
+					}
+					runSteps[pass * runs + run] = robot.getSteps();
+					if (run == 0 && tree == true && TreeOracleCheck.fellBack(controller) == true) {
+						return new MazeRunResult(generatorName, optimalSteps, runSteps, System.nanoTime() - startTime, "pass " + pass + " fell back from the tree distance oracle on a maze without loops");
+					}
+					controller.reset();
+					robot.reset();
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			return new MazeRunResult(generatorName, optimalSteps, runSteps, System.nanoTime() - startTime, e.toString());
+		}
+		return new MazeRunResult(generatorName, optimalSteps, runSteps, System.nanoTime() - startTime, null);
+	}
+
+	// The generators only expose their size through a Swing panel, so set the fields it would have set
+	static IMazeGenerator createGenerator(String generatorName, int size) throws Exception {
+		IMazeGenerator generator;
+		Class<?> generatorClass;
+
+		switch (generatorName) {
+			case "Prim":
+				generator = new PrimGenerator();
+				break;
+			case "Loopy":
+				generator = new LoopyGenerator();
+				break;
+			case "Blank":
+				generator = new BlankGenerator();
+				break;
+			case "Hill":
+				generator = new HillGenerator();
+				break;
+			case "Eller":
+				generator = new StreamingMazeGenerator();
+				break;
+			case "EllerLoopy":
+				generator = new StreamingMazeGenerator();
+				((StreamingMazeGenerator)generator).setLoopProbability(0.1);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown generator " + generatorName);
+		}
+
+		// LoopyGenerator inherits its size from PrimGenerator
+		for (generatorClass = generator.getClass(); generatorClass != null; generatorClass = generatorClass.getSuperclass()) {
+			try {
+				Field widthField = generatorClass.getDeclaredField("mazeWidth");
+				Field heightField = generatorClass.getDeclaredField("mazeHeight");
+
+				widthField.setAccessible(true);
+				heightField.setAccessible(true);
+				widthField.setInt(generator, size);
+				heightField.setInt(generator, size);
+				break;
+			}
+			catch (NoSuchFieldException e) {
+				// Keep looking in the superclass
+			}
+		}
+
+		return generator;
+	}
+
+	// Breadth-first search from the start to the target; returns -1 if the target cannot be reached
+	static int shortestPathLength(Maze maze) {
+		int width = maze.getWidth();
+		int height = maze.getHeight();
+		int[] distance = new int[width * height];
+		int[] queue = new int[width * height];
+		int head = 0, tail = 0;
+		int square, nextX, nextY;
+		Point start = maze.getStart();
+		Point finish = maze.getFinish();
+
+		Arrays.fill(distance, -1);
+		distance[start.x * height + start.y] = 0;
+		queue[tail++] = start.x * height + start.y;
+		while (head < tail) {
+			square = queue[head++];
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				nextX = square / height + HeadlessRobot.stepX(heading);
+				nextY = square % height + HeadlessRobot.stepY(heading);
+				if (nextX >= 0 && nextY >= 0 && nextX < width && nextY < height && maze.getCellType(nextX, nextY) == Maze.PASSAGE && distance[nextX * height + nextY] == -1) {
+					distance[nextX * height + nextY] = distance[square] + 1;
+					queue[tail++] = nextX * height + nextY;
+				}
+			}
+		}
+
+		return distance[finish.x * height + finish.y];
+	}
+}
@@ -0,0 +1,316 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+
+/* Hierarchical path search (HPA*) for large mazes. The explored area is cut into square clusters, and every pair of open squares
+   facing each other across a cluster border is an entrance pair, joined by a one step link. When the planner is built, once per
+   grid frame, a breadth-first search inside each cluster from each of its entrances links it to the others with their distance.
+   A query joins the start and the target to the entrances of their own clusters, runs A* over the entrances alone, and then
+   fills in the squares of the route one cluster at a time. Classic HPA* merges the crossings along a border into a few entrances
+   and finds paths that are nearly shortest; keeping every crossing makes them exactly shortest, which the later runs rely on
+ */
+class HierarchicalPlanner {
+	private int gridSize; // Width and height of the grid the squares are indexed in
+	private int clusterSize; // Width and height of a cluster in squares
+	private int[][] grid; // The grid frame the entrances were found in, or null if the planner has to be built again; -1 is a wall
+	private int width, height; // Size of the area searched, from (0, 0)
+	private int clustersDown; // Number of clusters in each column of clusters
+
+	// Entrances, and the links between them
+	private int[] nodeOfSquare; // Entrance number + 1 of each square, or 0 if the square isn't an entrance
+	private int[] squareOfNode; // Square index (x * gridSize + y) of each entrance
+	private int nodeCount;
+	private int[] clusterFirstNode; // The entrances of cluster c are clusterNodes[clusterFirstNode[c]] to clusterNodes[clusterFirstNode[c + 1] - 1]
+	private int[] clusterNodes;
+	private int[] firstLink; // First link leaving each entrance, or -1
+	private int[] nextLink; // Next link leaving the same entrance, or -1
+	private int[] linkEnd; // Entrance each link leads to
+	private int[] linkSteps; // Length of each link
+	private int linkCount;
+
+	// Search inside a single cluster
+	private EpochGrid stepsInCluster; // Steps from the search's source plus one, or 0 for squares not reached
+	private ParentHeadings towardSource; // Heading each reached square takes for its first step back to the source
+	private int[] clusterQueue;
+
+	// Search over the entrances; the start and the target take the two numbers after the last entrance
+	private int[] stepsToNode; // Steps from the start to each entrance reached
+	private int[] parentNode; // The entrance each entrance was reached from
+	private int[] searchStamp; // The search in which each entrance was last reached
+	private int[] targetStamp; // The search in which each entrance's steps to the target were found
+	private int[] stepsToTarget; // Steps from each entrance of the target's cluster to the target
+	private int currentSearch;
+	private IndexedSquareHeap openNodes;
+	private int[] route; // The entrances on the route found, from the target back to the start
+
+	public HierarchicalPlanner(int gridSize, int clusterSize) {
+		this.gridSize = gridSize;
+		this.clusterSize = clusterSize;
+		nodeOfSquare = new int[gridSize * gridSize];
+		squareOfNode = new int[256];
+		firstLink = new int[256];
+		nextLink = new int[1024];
+		linkEnd = new int[1024];
+		linkSteps = new int[1024];
+		stepsInCluster = new EpochGrid(gridSize);
+		towardSource = new ParentHeadings(gridSize * gridSize);
+		clusterQueue = new int[clusterSize * clusterSize];
+	}
+
+	// Check whether the entrances were found in this grid frame, so that the planner doesn't have to be built again
+	public boolean isBuiltFor(int[][] grid, int width, int height) {
+		return this.grid == grid && this.width == width && this.height == height;
+	}
+
+	// Forget the entrances, e.g. after walls were added to the grid frame they were found in
+	public void invalidate() {
+		grid = null;
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	// Find the entrances of the area from (0, 0) to (width - 1, height - 1) of a grid, and the distances between those of each cluster
+	public void build(int[][] grid, int width, int height) {
+		int clusterCount;
+		int cluster, node;
+		int[] nodesPlaced;
+
+		for (node = 0; node < nodeCount; node++) {
+			nodeOfSquare[squareOfNode[node]] = 0;
+		}
+		this.grid = grid;
+		this.width = width;
+		this.height = height;
+		clustersDown = (height + clusterSize - 1) / clusterSize;
+		clusterCount = (width + clusterSize - 1) / clusterSize * clustersDown;
+		nodeCount = 0;
+		linkCount = 0;
+
+		// Every crossing of a border between two clusters is an entrance pair
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (isOpen(x, y) == false) {
+					continue;
+				}
+				if ((x + 1) % clusterSize == 0 && isOpen(x + 1, y) == true) {
+					addLink(nodeFor(x * gridSize + y), nodeFor((x + 1) * gridSize + y), 1);
+					addLink(nodeFor((x + 1) * gridSize + y), nodeFor(x * gridSize + y), 1);
+				}
+				if ((y + 1) % clusterSize == 0 && isOpen(x, y + 1) == true) {
+					addLink(nodeFor(x * gridSize + y), nodeFor(x * gridSize + y + 1), 1);
+					addLink(nodeFor(x * gridSize + y + 1), nodeFor(x * gridSize + y), 1);
+				}
+			}
+		}
+
+		// Sort the entrances by cluster
+		clusterFirstNode = new int[clusterCount + 1];
+		clusterNodes = new int[nodeCount];
+		for (node = 0; node < nodeCount; node++) {
+			clusterFirstNode[clusterOf(squareOfNode[node]) + 1]++;
+		}
+		for (cluster = 0; cluster < clusterCount; cluster++) {
+			clusterFirstNode[cluster + 1] += clusterFirstNode[cluster];
+		}
+		nodesPlaced = Arrays.copyOf(clusterFirstNode, clusterCount);
+		for (node = 0; node < nodeCount; node++) {
+			clusterNodes[nodesPlaced[clusterOf(squareOfNode[node])]++] = node;
+		}
+
+		// Link the entrances of each cluster by the paths inside it
+		for (cluster = 0; cluster < clusterCount; cluster++) {
+			for (int i = clusterFirstNode[cluster]; i < clusterFirstNode[cluster + 1]; i++) {
+				searchCluster(squareOfNode[clusterNodes[i]]);
+				for (int j = clusterFirstNode[cluster]; j < clusterFirstNode[cluster + 1]; j++) {
+					if (j != i && stepsInCluster(squareOfNode[clusterNodes[j]]) != -1) {
+						addLink(clusterNodes[i], clusterNodes[j], stepsInCluster(squareOfNode[clusterNodes[j]]));
+					}
+				}
+			}
+		}
+
+		if (stepsToNode == null || stepsToNode.length < nodeCount + 2) {
+			stepsToNode = new int[nodeCount + 2];
+			parentNode = new int[nodeCount + 2];
+			searchStamp = new int[nodeCount + 2];
+			targetStamp = new int[nodeCount + 2];
+			stepsToTarget = new int[nodeCount + 2];
+			route = new int[nodeCount + 2];
+			openNodes = new IndexedSquareHeap(nodeCount + 2);
+			currentSearch = 0;
+		}
+	}
+
+	/* Find a shortest path between two squares and store its headings in path; return its length, or -1 if one of the squares
+	   is a wall or outside the area, or the target can't be reached. The planner must have been built
+	 */
+	public int findPath(int startSquare, int targetSquare, HeadingPath path) {
+		int startNode = nodeCount;
+		int targetNode = nodeCount + 1;
+		int startCluster = clusterOf(startSquare);
+		int targetCluster = clusterOf(targetSquare);
+		int node, routeLength;
+		int[] clusterBounds = clusterFirstNode;
+
+		if (isOpen(startSquare / gridSize, startSquare % gridSize) == false || isOpen(targetSquare / gridSize, targetSquare % gridSize) == false) {
+			return -1;
+		}
+		currentSearch++;
+		openNodes.clear();
+
+		// Join the target to the entrances of its cluster, and to the start if they share it
+		searchCluster(targetSquare);
+		for (int i = clusterBounds[targetCluster]; i < clusterBounds[targetCluster + 1]; i++) {
+			node = clusterNodes[i];
+			if (stepsInCluster(squareOfNode[node]) != -1) {
+				targetStamp[node] = currentSearch;
+				stepsToTarget[node] = stepsInCluster(squareOfNode[node]);
+			}
+		}
+		searchStamp[startNode] = currentSearch;
+		stepsToNode[startNode] = 0;
+		if (startCluster == targetCluster && stepsInCluster(startSquare) != -1) {
+			reach(targetNode, startNode, stepsInCluster(startSquare), targetSquare);
+		}
+
+		// Join the start to the entrances of its cluster
+		searchCluster(startSquare);
+		for (int i = clusterBounds[startCluster]; i < clusterBounds[startCluster + 1]; i++) {
+			node = clusterNodes[i];
+			if (stepsInCluster(squareOfNode[node]) != -1) {
+				reach(node, startNode, stepsInCluster(squareOfNode[node]), targetSquare);
+			}
+		}
+
+		// A* over the entrances
+		while (openNodes.isEmpty() == false) {
+			node = openNodes.removeFirst();
+			if (node == targetNode) {
+				break;
+			}
+			for (int link = firstLink[node]; link != -1; link = nextLink[link]) {
+				reach(linkEnd[link], node, stepsToNode[node] + linkSteps[link], targetSquare);
+			}
+			if (targetStamp[node] == currentSearch) {
+				reach(targetNode, node, stepsToNode[node] + stepsToTarget[node], targetSquare);
+			}
+		}
+		if (searchStamp[targetNode] != currentSearch) {
+			return -1;
+		}
+
+		// Fill in the squares between each entrance on the route and the next
+		routeLength = 0;
+		for (node = targetNode; node != startNode; node = parentNode[node]) {
+			route[routeLength++] = node;
+		}
+		path.clear();
+		for (int i = routeLength - 1, fromSquare = startSquare; i >= 0; i--) {
+			int toSquare = route[i] == targetNode ? targetSquare : squareOfNode[route[i]];
+
+			if (clusterOf(fromSquare) != clusterOf(toSquare)) {
+				path.append(Headings.between(fromSquare, toSquare, gridSize));
+			}
+			else {
+				walkInCluster(fromSquare, toSquare, path);
+			}
+			fromSquare = toSquare;
+		}
+		return stepsToNode[targetNode];
+	}
+
+	// Reach an entrance (or the start or target) from another one in the given number of steps, if that's fewer than before
+	private void reach(int node, int fromNode, int steps, int targetSquare) {
+		int square;
+
+		if (searchStamp[node] == currentSearch && stepsToNode[node] <= steps) {
+			return;
+		}
+		searchStamp[node] = currentSearch;
+		stepsToNode[node] = steps;
+		parentNode[node] = fromNode;
+		square = node < nodeCount ? squareOfNode[node] : targetSquare;
+		openNodes.addOrDecrease(node, steps + Math.abs(square / gridSize - targetSquare / gridSize) + Math.abs(square % gridSize - targetSquare % gridSize));
+	}
+
+	// Add the headings of a shortest path between two squares of the same cluster, keeping inside the cluster
+	private void walkInCluster(int fromSquare, int toSquare, HeadingPath path) {
+		int heading;
+
+		searchCluster(toSquare);
+		while (fromSquare != toSquare) {
+			heading = towardSource.get(fromSquare);
+			path.append(heading);
+			fromSquare += Headings.x(heading) * gridSize + Headings.y(heading);
+		}
+	}
+
+	// Breadth-first search from a square over the open squares of its cluster
+	private void searchCluster(int sourceSquare) {
+		int cluster = clusterOf(sourceSquare);
+		int minX = cluster / clustersDown * clusterSize;
+		int minY = cluster % clustersDown * clusterSize;
+		int squareX, squareY, testX, testY, steps;
+		int reachedCount = 1;
+
+		stepsInCluster.clear();
+		stepsInCluster.set(sourceSquare / gridSize, sourceSquare % gridSize, 1);
+		clusterQueue[0] = sourceSquare;
+		for (int head = 0; head < reachedCount; head++) {
+			squareX = clusterQueue[head] / gridSize;
+			squareY = clusterQueue[head] % gridSize;
+			steps = stepsInCluster.get(squareX, squareY) + 1;
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				testX = squareX + Headings.x(heading);
+				testY = squareY + Headings.y(heading);
+				if (testX < minX || testX >= minX + clusterSize || testY < minY || testY >= minY + clusterSize || isOpen(testX, testY) == false ||
+					stepsInCluster.get(testX, testY) != 0) {
+					continue;
+				}
+				stepsInCluster.set(testX, testY, steps);
+				towardSource.set(testX * gridSize + testY, (heading - IRobot.NORTH + 2) % 4 + IRobot.NORTH);
+				clusterQueue[reachedCount++] = testX * gridSize + testY;
+			}
+		}
+	}
+
+	// Steps from the source of the last cluster search to a square, or -1 if it wasn't reached
+	private int stepsInCluster(int square) {
+		return stepsInCluster.get(square / gridSize, square % gridSize) - 1;
+	}
+
+	private boolean isOpen(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height && grid[x][y] != -1;
+	}
+
+	private int clusterOf(int square) {
+		return square / gridSize / clusterSize * clustersDown + square % gridSize / clusterSize;
+	}
+
+	// Return the entrance on a square, adding one if needed
+	private int nodeFor(int square) {
+		if (nodeOfSquare[square] == 0) {
+			if (nodeCount == squareOfNode.length) {
+				squareOfNode = Arrays.copyOf(squareOfNode, 2 * nodeCount);
+				firstLink = Arrays.copyOf(firstLink, 2 * nodeCount);
+			}
+			squareOfNode[nodeCount] = square;
+			firstLink[nodeCount] = -1;
+			nodeOfSquare[square] = ++nodeCount;
+		}
+		return nodeOfSquare[square] - 1;
+	}
+
+	private void addLink(int fromNode, int toNode, int steps) {
+		if (linkCount == linkEnd.length) {
+			nextLink = Arrays.copyOf(nextLink, 2 * linkCount);
+			linkEnd = Arrays.copyOf(linkEnd, 2 * linkCount);
+			linkSteps = Arrays.copyOf(linkSteps, 2 * linkCount);
+		}
+		linkEnd[linkCount] = toNode;
+		linkSteps[linkCount] = steps;
+		nextLink[linkCount] = firstLink[fromNode];
+		firstLink[fromNode] = linkCount++;
+	}
+}
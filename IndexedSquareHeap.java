@@ -0,0 +1,126 @@
+import java.util.*;
+
+// Indexed binary min-heap used as the open set of the searches; squares are stored by their index in the grid, so a square is
+// never in the heap twice and its priority can be lowered in place instead of adding a duplicate entry
+class IndexedSquareHeap {
+	private int[] heap; // The square indices, arranged as a binary heap
+	private int[] heapPosition; // The position of each square in the heap, or -1 if the square is not in the heap
+	private int[] priority; // The priority of each square currently in the heap
+	private int size; // Number of squares currently in the heap
+
+	public IndexedSquareHeap(int capacity) {
+		heap = new int[capacity];
+		heapPosition = new int[capacity];
+		priority = new int[capacity];
+		Arrays.fill(heapPosition, -1);
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Return the lowest priority in the heap; only valid if the heap isn't empty
+	public int firstPriority() {
+		return priority[heap[0]];
+	}
+
+	public boolean contains(int square) {
+		return heapPosition[square] != -1;
+	}
+
+	// Remove all the squares from the heap; only touches the squares that are still in it
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			heapPosition[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	// Add a square to the heap, or lower its priority if it is already in the heap with a higher one
+	public void addOrDecrease(int square, int newPriority) {
+		int position = heapPosition[square];
+
+		if (position == -1) {
+			position = size++;
+			heap[position] = square;
+			heapPosition[square] = position;
+		}
+		else if (priority[square] <= newPriority) {
+			return;
+		}
+		priority[square] = newPriority;
+		siftUp(position);
+	}
+
+	// Remove and return the square with the lowest priority
+	public int removeFirst() {
+		int first = heap[0];
+
+		heapPosition[first] = -1;
+		size--;
+		if (size > 0) {
+			heap[0] = heap[size];
+			heapPosition[heap[0]] = 0;
+			siftDown(0);
+		}
+
+		return first;
+	}
+
+	// Take a square out of the heap, wherever it is in it
+	public void remove(int square) {
+		int position = heapPosition[square];
+		int last;
+
+		heapPosition[square] = -1;
+		size--;
+		if (position < size) {
+			last = heap[size];
+			heap[position] = last;
+			heapPosition[last] = position;
+			siftDown(position);
+			siftUp(heapPosition[last]);
+		}
+	}
+
+	private void siftUp(int position) {
+		int square = heap[position];
+		int parent;
+
+		while (position > 0) {
+			parent = (position - 1) / 2;
+			if (priority[heap[parent]] <= priority[square]) {
+				break;
+			}
+			heap[position] = heap[parent];
+			heapPosition[heap[position]] = position;
+			position = parent;
+		}
+		heap[position] = square;
+		heapPosition[square] = position;
+	}
+
+	private void siftDown(int position) {
+		int square = heap[position];
+		int child;
+
+		while ((child = 2 * position + 1) < size) {
+			if (child + 1 < size && priority[heap[child + 1]] < priority[heap[child]]) {
+				child++;
+			}
+			if (priority[square] <= priority[heap[child]]) {
+				break;
+			}
+			heap[position] = heap[child];
+			heapPosition[heap[position]] = position;
+			position = child;
+		}
+		heap[position] = square;
+		heapPosition[square] = position;
+	}
+}
@@ -0,0 +1,156 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+
+// Jump Point Search for 4-connected grids; on open mazes plain A* expands every one of the many equally short paths,
+// while this only expands the squares where a shortest path may have to turn, skipping over straight runs between them
+class JumpPointSearch {
+	private int gridSize; // Width and height of the grid the squares are indexed in
+	private int[][] grid; // The grid being searched; -1 is a wall
+	private int targetSquare; // Index (x * gridSize + y) of the square being searched for
+	private int[] stepsToSquare; // Number of steps from the start to each jump point found in the current search
+	private int[] parentSquare; // The jump point each jump point was reached from
+	private int[] searchStamp; // The search in which each square was last reached; other entries are left over from older searches
+	private int currentSearch; // Number of the current search
+	private int[] jumpPoints; // The jump points on the path found, from the target back to the start
+	private IndexedSquareHeap openSquares; // The jump points left to expand, ordered by steps plus Manhattan distance to the target
+
+	public JumpPointSearch(int gridSize) {
+		this.gridSize = gridSize;
+		stepsToSquare = new int[gridSize * gridSize];
+		parentSquare = new int[gridSize * gridSize];
+		searchStamp = new int[gridSize * gridSize];
+		jumpPoints = new int[gridSize * gridSize];
+		openSquares = new IndexedSquareHeap(gridSize * gridSize);
+		currentSearch = 0;
+	}
+
+	/* Find a shortest path between two squares of the grid and store its headings in path; return its length, or -1 if the
+	   target can't be reached
+	 */
+	public int findPath(int[][] grid, int startSquare, int targetSquare, HeadingPath path) {
+		int currentSquare;
+		int parent;
+		int jumpPointCount;
+		int heading;
+
+		this.grid = grid;
+		this.targetSquare = targetSquare;
+		currentSearch++;
+		openSquares.clear();
+		reach(startSquare, startSquare, 0);
+
+		while (openSquares.isEmpty() == false) {
+			currentSquare = openSquares.removeFirst();
+			if (currentSquare == targetSquare) {
+				break;
+			}
+			parent = parentSquare[currentSquare];
+			for (heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				if (currentSquare == startSquare || isSuccessorHeading(currentSquare, parent, heading) == true) {
+					expand(currentSquare, heading);
+				}
+			}
+		}
+		if (searchStamp[targetSquare] != currentSearch) {
+			return -1;
+		}
+
+		// Collect the jump points from the target back to the start, then write out the straight runs between them
+		jumpPointCount = 0;
+		for (currentSquare = targetSquare; currentSquare != startSquare; currentSquare = parentSquare[currentSquare]) {
+			jumpPoints[jumpPointCount++] = currentSquare;
+		}
+		jumpPoints[jumpPointCount++] = startSquare;
+		path.clear();
+		for (int i = jumpPointCount - 1; i > 0; i--) {
+			path.append(headingTowards(jumpPoints[i], jumpPoints[i - 1]), stepsToSquare[jumpPoints[i - 1]] - stepsToSquare[jumpPoints[i]]);
+		}
+
+		return path.length();
+	}
+
+	/* Decide whether the search should continue from a jump point along a heading, given the jump point it was reached
+	   from. Runs along the x axis only keep going straight, unless a square beside them opens up just past a wall
+	   (a forced neighbour); runs along the y axis keep going straight and also branch into both x directions
+	 */
+	private boolean isSuccessorHeading(int square, int parent, int heading) {
+		int arrived = headingTowards(parent, square);
+		int behind;
+
+		if (heading == (arrived + 2 - IRobot.NORTH) % 4 + IRobot.NORTH) {
+			return false;
+		}
+		if (arrived == IRobot.NORTH || arrived == IRobot.SOUTH || heading == arrived) {
+			return true;
+		}
+		behind = square - Headings.x(arrived) * gridSize;
+		return isOpen(square, heading) == true && isOpen(behind, heading) == false;
+	}
+
+	// Jump from a square along a heading and add the jump point found, if any, to the open set
+	private void expand(int square, int heading) {
+		int jumpPoint;
+
+		if (heading == IRobot.EAST || heading == IRobot.WEST) {
+			jumpPoint = jumpAlongX(square, heading);
+		}
+		else {
+			jumpPoint = jumpAlongY(square, heading);
+		}
+		if (jumpPoint != -1) {
+			reach(jumpPoint, square, stepsToSquare[square] + Math.abs(jumpPoint / gridSize - square / gridSize) + Math.abs(jumpPoint % gridSize - square % gridSize));
+		}
+	}
+
+	// Record a shorter way to a jump point and (re)add it to the open set
+	private void reach(int square, int parent, int steps) {
+		if (searchStamp[square] == currentSearch && stepsToSquare[square] <= steps) {
+			return;
+		}
+		searchStamp[square] = currentSearch;
+		stepsToSquare[square] = steps;
+		parentSquare[square] = parent;
+		openSquares.addOrDecrease(square, steps + Math.abs(square / gridSize - targetSquare / gridSize) + Math.abs(square % gridSize - targetSquare % gridSize));
+	}
+
+	// Move along the x axis until reaching the target or a square with a forced neighbour; return -1 on hitting a wall
+	private int jumpAlongX(int square, int heading) {
+		int step = Headings.x(heading) * gridSize;
+
+		while (isOpen(square, heading) == true) {
+			square += step;
+			if (square == targetSquare
+				|| (isOpen(square, IRobot.NORTH) == true && isOpen(square - step, IRobot.NORTH) == false)
+				|| (isOpen(square, IRobot.SOUTH) == true && isOpen(square - step, IRobot.SOUTH) == false)) {
+				return square;
+			}
+		}
+		return -1;
+	}
+
+	// Move along the y axis until reaching the target or a square from which a run along the x axis finds a jump point
+	private int jumpAlongY(int square, int heading) {
+		while (isOpen(square, heading) == true) {
+			square += Headings.y(heading);
+			if (square == targetSquare || jumpAlongX(square, IRobot.EAST) != -1 || jumpAlongX(square, IRobot.WEST) != -1) {
+				return square;
+			}
+		}
+		return -1;
+	}
+
+	// Check whether the square next to a square along a heading is inside the grid and not a wall
+	private boolean isOpen(int square, int heading) {
+		int testX = square / gridSize + Headings.x(heading);
+		int testY = square % gridSize + Headings.y(heading);
+
+		return testX >= 0 && testX < gridSize && testY >= 0 && testY < gridSize && grid[testX][testY] != -1;
+	}
+
+	// Return the heading of the straight run from one square to another
+	private int headingTowards(int fromSquare, int toSquare) {
+		if (fromSquare / gridSize == toSquare / gridSize) {
+			return toSquare < fromSquare ? IRobot.NORTH : IRobot.SOUTH;
+		}
+		return toSquare < fromSquare ? IRobot.WEST : IRobot.EAST;
+	}
+}
@@ -0,0 +1,55 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+
+/* The junctions the robot can backtrack to, oldest first, each packed into a long as its x, y and the heading the robot arrived
+   with; the array is kept between mazes, so pushing only allocates when the deque outgrows every maze before it
+ */
+class JunctionDeque {
+	private long[] junctions = new long[64];
+	private int size;
+
+	private static long pack(int x, int y, int arrived) {
+		return ((long)x << 32) | ((long)y << 2) | (arrived - IRobot.NORTH);
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void push(int x, int y, int arrived) {
+		if (size == junctions.length) {
+			junctions = Arrays.copyOf(junctions, size * 2);
+		}
+		junctions[size++] = pack(x, y, arrived);
+	}
+
+	public void pop() {
+		size--;
+	}
+
+	// The last junction pushed
+	public int peekX() {
+		return (int)(junctions[size - 1] >>> 32);
+	}
+
+	public int peekY() {
+		return (int)junctions[size - 1] >>> 2;
+	}
+
+	public int peekArrived() {
+		return ((int)junctions[size - 1] & 3) + IRobot.NORTH;
+	}
+
+	// The first junction pushed, where backtracking ends
+	public int firstX() {
+		return (int)(junctions[0] >>> 32);
+	}
+
+	public int firstY() {
+		return (int)junctions[0] >>> 2;
+	}
+}
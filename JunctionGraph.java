@@ -0,0 +1,408 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+
+// Weighted graph of the maze built during exploration: the nodes are junctions, dead ends, the starting square and the
+// target, and the edges are the corridors between them, with their length and the headings needed to walk them.
+// Corridor squares remember which corridor they are on, so paths can start and end anywhere in the maze
+class JunctionGraph {
+	private int gridSize; // Width and height of the grid the squares are indexed in
+	private int[] nodeOfSquare; // Node number + 1 of each square, or 0 if the square isn't a node
+	private int[] corridorOfSquare; // Corridor number + 1 of each square inside a corridor, or 0 otherwise
+	private int[] offsetOfSquare; // Number of steps from the start of its corridor to each square inside a corridor
+	private int[] squareOfNode; // Square index (x * gridSize + y) of each node
+	private int[] firstLink; // First link leaving each node, or -1; link 2 * c walks corridor c forwards, link 2 * c + 1 backwards
+	private int[] nextLink; // Next link leaving the same node as each link, or -1
+	private int[] corridorStart, corridorEnd; // The nodes at both ends of each corridor
+	private int[] corridorLength; // Number of steps along each corridor
+	private int[] corridorHeadings; // Offset of each corridor's headings in the headings array
+	private int[] headings; // The headings of all the corridors, walked from their start to their end
+	private int nodeCount, corridorCount, headingCount;
+
+	// Corridor currently being walked
+	private int walkStartNode; // The node the robot last left
+	private int walkSquare; // The square the robot is on
+	private int[] walkHeadings; // The headings taken since leaving walkStartNode
+	private int walkLength;
+	private boolean walkTurnedBack; // True if the robot turned back inside the corridor being walked, so it doesn't lead to another node
+	private int[] singleStep = new int[1]; // Headings of a one step corridor
+
+	// Search state
+	private int[] stepsToNode; // Steps from the start of the path to each node reached
+	private int[] parentLink; // The link each node was reached through, or -1 for the nodes next to the start of the path
+	private int[] searchStamp; // The search in which each node was last reached
+	private int currentSearch;
+	private int[] linkStack; // The links on the path found, from the end back to the start
+	private IndexedSquareHeap openNodes;
+
+	public JunctionGraph(int gridSize) {
+		this.gridSize = gridSize;
+		nodeOfSquare = new int[gridSize * gridSize];
+		corridorOfSquare = new int[gridSize * gridSize];
+		offsetOfSquare = new int[gridSize * gridSize];
+		squareOfNode = new int[64];
+		firstLink = new int[64];
+		nextLink = new int[128];
+		corridorStart = new int[64];
+		corridorEnd = new int[64];
+		corridorLength = new int[64];
+		corridorHeadings = new int[64];
+		headings = new int[1024];
+		walkHeadings = new int[1024];
+		nodeCount = 0;
+		corridorCount = 0;
+		headingCount = 0;
+		walkStartNode = -1;
+	}
+
+	// Forget every node and corridor so the graph can record another maze; only the squares the graph used are cleared
+	public void clear() {
+		int square;
+
+		for (int corridor = 0; corridor < corridorCount; corridor++) {
+			square = squareOfNode[corridorStart[corridor]];
+			for (int i = 0; i < corridorLength[corridor] - 1; i++) {
+				square += Headings.x(headings[corridorHeadings[corridor] + i]) * gridSize + Headings.y(headings[corridorHeadings[corridor] + i]);
+				corridorOfSquare[square] = 0;
+			}
+		}
+		for (int node = 0; node < nodeCount; node++) {
+			nodeOfSquare[squareOfNode[node]] = 0;
+		}
+		nodeCount = 0;
+		corridorCount = 0;
+		headingCount = 0;
+		walkStartNode = -1;
+		walkLength = 0;
+		walkTurnedBack = false;
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public int getCorridorCount() {
+		return corridorCount;
+	}
+
+	/*
+		Recording methods, called while the robot explores
+	*/
+
+	// Record that the robot is on a square; squares next to the previous one extend the corridor being walked
+	public void visitSquare(int square) {
+		int heading;
+
+		if (walkStartNode != -1 && square != walkSquare && isNextTo(walkSquare, square) == true) {
+			heading = Headings.between(walkSquare, square, gridSize);
+			if (walkLength > 0 && heading == (walkHeadings[walkLength - 1] - IRobot.NORTH + 2) % 4 + IRobot.NORTH) {
+				walkTurnedBack = true;
+			}
+			if (walkLength == walkHeadings.length) {
+				walkHeadings = Arrays.copyOf(walkHeadings, 2 * walkLength);
+			}
+			walkHeadings[walkLength++] = heading;
+		}
+		walkSquare = square;
+	}
+
+	// Record that the square the robot is on is a node, closing the corridor walked to get there
+	public void reachNode(int square) {
+		int node = nodeFor(square);
+
+		if (walkStartNode != -1 && walkLength > 0 && walkTurnedBack == false) {
+			addCorridor(walkStartNode, node, walkHeadings, walkLength);
+		}
+		walkStartNode = node;
+		walkSquare = square;
+		walkLength = 0;
+		walkTurnedBack = false;
+	}
+
+	// Add a square the robot never entered (the target) as a node, joined to the nodes next to it
+	public void connectSquare(int square) {
+		nodeFor(square);
+	}
+
+	/* Check that no non-wall square in the area from (1, 1) to (maxX, maxY) lies next to the graph without being part of it;
+	   if the robot turned back inside a corridor it never walked to the end of, the graph can't be trusted for shortest paths.
+	   Squares walled in on all sides are never seen by the robot, so they are neither walls nor part of the graph
+	 */
+	public boolean coversArea(int[][] grid, int maxX, int maxY) {
+		int square;
+
+		for (int i = 1; i <= maxX; i++) {
+			for (int j = 1; j <= maxY; j++) {
+				square = i * gridSize + j;
+				if (grid[i][j] == -1 || isCovered(square) == true) {
+					continue;
+				}
+				for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+					if (isCovered(square + Headings.x(heading) * gridSize + Headings.y(heading)) == true) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean isCovered(int square) {
+		return nodeOfSquare[square] != 0 || corridorOfSquare[square] != 0;
+	}
+
+	/* Record that the robot turned back in front of a square it mustn't enter (the target): the corridor walked so far
+	   ends at that square, which becomes a node, and a new corridor starts from it back to the robot
+	 */
+	public void turnBackFrom(int heading) {
+		int frontSquare = walkSquare + Headings.x(heading) * gridSize + Headings.y(heading);
+		int backSquare = walkSquare;
+
+		if (walkStartNode == -1) {
+			return;
+		}
+		visitSquare(frontSquare);
+		reachNode(frontSquare);
+		visitSquare(backSquare);
+		if (nodeOfSquare[backSquare] != 0) {
+			reachNode(backSquare);
+		}
+	}
+
+	// Return the node of a square, adding one if needed; nodes next to each other are joined by a one step corridor
+	private int nodeFor(int square) {
+		int node;
+		int testX, testY;
+
+		if (nodeOfSquare[square] == 0) {
+			if (nodeCount == squareOfNode.length) {
+				squareOfNode = Arrays.copyOf(squareOfNode, 2 * nodeCount);
+				firstLink = Arrays.copyOf(firstLink, 2 * nodeCount);
+			}
+			node = nodeCount;
+			squareOfNode[node] = square;
+			firstLink[node] = -1;
+			nodeOfSquare[square] = ++nodeCount;
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				testX = square / gridSize + Headings.x(heading);
+				testY = square % gridSize + Headings.y(heading);
+				if (testX >= 0 && testX < gridSize && testY >= 0 && testY < gridSize && nodeOfSquare[testX * gridSize + testY] != 0) {
+					singleStep[0] = heading;
+					addCorridor(node, nodeOfSquare[testX * gridSize + testY] - 1, singleStep, 1);
+				}
+			}
+		}
+		return nodeOfSquare[square] - 1;
+	}
+
+	// Add a corridor between two nodes, unless the same one was already walked in the other direction
+	private void addCorridor(int fromNode, int toNode, int[] walk, int length) {
+		int square;
+
+		// Every square inside a corridor belongs to that corridor alone, so the corridor is known already if its first square is;
+		// a single step corridor is known if the two nodes are joined already
+		if (length > 1) {
+			if (corridorOfSquare[squareOfNode[fromNode] + Headings.x(walk[0]) * gridSize + Headings.y(walk[0])] != 0) {
+				return;
+			}
+		}
+		else {
+			for (int link = firstLink[toNode]; link != -1; link = nextLink[link]) {
+				if (linkEnd(link) == fromNode && corridorLength[link / 2] == 1) {
+					return;
+				}
+			}
+		}
+
+		if (corridorCount == corridorStart.length) {
+			corridorStart = Arrays.copyOf(corridorStart, 2 * corridorCount);
+			corridorEnd = Arrays.copyOf(corridorEnd, 2 * corridorCount);
+			corridorLength = Arrays.copyOf(corridorLength, 2 * corridorCount);
+			corridorHeadings = Arrays.copyOf(corridorHeadings, 2 * corridorCount);
+			nextLink = Arrays.copyOf(nextLink, 4 * corridorCount);
+		}
+		while (headingCount + length > headings.length) {
+			headings = Arrays.copyOf(headings, 2 * headings.length);
+		}
+		corridorStart[corridorCount] = fromNode;
+		corridorEnd[corridorCount] = toNode;
+		corridorLength[corridorCount] = length;
+		corridorHeadings[corridorCount] = headingCount;
+		System.arraycopy(walk, 0, headings, headingCount, length);
+		headingCount += length;
+
+		// Remember which corridor each square inside it is on
+		square = squareOfNode[fromNode];
+		for (int i = 0; i < length - 1; i++) {
+			square += Headings.x(walk[i]) * gridSize + Headings.y(walk[i]);
+			if (nodeOfSquare[square] == 0 && corridorOfSquare[square] == 0) {
+				corridorOfSquare[square] = corridorCount + 1;
+				offsetOfSquare[square] = i + 1;
+			}
+		}
+
+		nextLink[2 * corridorCount] = firstLink[fromNode];
+		firstLink[fromNode] = 2 * corridorCount;
+		nextLink[2 * corridorCount + 1] = firstLink[toNode];
+		firstLink[toNode] = 2 * corridorCount + 1;
+		corridorCount++;
+	}
+
+	/*
+		Search methods
+	*/
+
+	/* Find a shortest path between two squares and store its headings in path; return its length, or -1 if one of the
+	   squares isn't in the graph or the target can't be reached
+	 */
+	public int findPath(int startSquare, int targetSquare, HeadingPath path) {
+		int node, nextNode;
+		int steps;
+		int bestSteps = Integer.MAX_VALUE;
+		int bestNode = -1;
+		int targetCorridor = nodeOfSquare[targetSquare] != 0 ? -1 : corridorOfSquare[targetSquare] - 1;
+		int startCorridor = nodeOfSquare[startSquare] != 0 ? -1 : corridorOfSquare[startSquare] - 1;
+		int linkCount = 0;
+
+		if ((nodeOfSquare[startSquare] == 0 && startCorridor == -1) || (nodeOfSquare[targetSquare] == 0 && targetCorridor == -1)) {
+			return -1;
+		}
+		if (stepsToNode == null || stepsToNode.length < nodeCount) {
+			stepsToNode = new int[nodeCount];
+			parentLink = new int[nodeCount];
+			searchStamp = new int[nodeCount];
+			linkStack = new int[nodeCount];
+			openNodes = new IndexedSquareHeap(nodeCount);
+			currentSearch = 0;
+		}
+		currentSearch++;
+		openNodes.clear();
+
+		// Both squares inside the same corridor can be joined directly
+		if (startCorridor != -1 && startCorridor == targetCorridor) {
+			bestSteps = Math.abs(offsetOfSquare[targetSquare] - offsetOfSquare[startSquare]);
+		}
+		else if (startSquare == targetSquare) {
+			bestSteps = 0;
+		}
+
+		// The search starts from the start square's node, or from both ends of its corridor
+		if (startCorridor == -1) {
+			reach(nodeOfSquare[startSquare] - 1, -1, 0, targetSquare);
+		}
+		else {
+			reach(corridorStart[startCorridor], -1, offsetOfSquare[startSquare], targetSquare);
+			reach(corridorEnd[startCorridor], -1, corridorLength[startCorridor] - offsetOfSquare[startSquare], targetSquare);
+		}
+
+		// A* over the nodes; the path is finished once no node left in the open set can lead to a shorter one
+		while (openNodes.isEmpty() == false && openNodes.firstPriority() < bestSteps) {
+			node = openNodes.removeFirst();
+			steps = stepsToTarget(node, targetSquare, targetCorridor);
+			if (steps != -1 && stepsToNode[node] + steps < bestSteps) {
+				bestSteps = stepsToNode[node] + steps;
+				bestNode = node;
+			}
+			for (int link = firstLink[node]; link != -1; link = nextLink[link]) {
+				nextNode = linkEnd(link);
+				reach(nextNode, link, stepsToNode[node] + corridorLength[link / 2], targetSquare);
+			}
+		}
+		if (bestSteps == Integer.MAX_VALUE) {
+			return -1;
+		}
+		path.clear();
+
+		// Joined directly inside one corridor
+		if (bestNode == -1) {
+			if (startSquare != targetSquare) {
+				walkCorridor(startCorridor, offsetOfSquare[startSquare], offsetOfSquare[targetSquare], path);
+			}
+			return path.length();
+		}
+
+		// Walk from the start square to the first node, through the links found, then on to the target square
+		for (node = bestNode; parentLink[node] != -1; node = linkStart(parentLink[node])) {
+			linkStack[linkCount++] = parentLink[node];
+		}
+		if (startCorridor != -1) {
+			walkCorridor(startCorridor, offsetOfSquare[startSquare],
+						 node == corridorStart[startCorridor] && stepsToNode[node] == offsetOfSquare[startSquare] ? 0 : corridorLength[startCorridor], path);
+		}
+		while (linkCount > 0) {
+			int link = linkStack[--linkCount];
+			if (link % 2 == 0) {
+				walkCorridor(link / 2, 0, corridorLength[link / 2], path);
+			}
+			else {
+				walkCorridor(link / 2, corridorLength[link / 2], 0, path);
+			}
+		}
+		if (targetCorridor != -1) {
+			walkCorridor(targetCorridor,
+						 bestNode == corridorStart[targetCorridor] && stepsToNode[bestNode] + offsetOfSquare[targetSquare] == bestSteps ? 0 : corridorLength[targetCorridor],
+						 offsetOfSquare[targetSquare], path);
+		}
+
+		return path.length();
+	}
+
+	// Return the number of steps from a node to the target square, or -1 if the node isn't next to it in the graph
+	private int stepsToTarget(int node, int targetSquare, int targetCorridor) {
+		if (squareOfNode[node] == targetSquare) {
+			return 0;
+		}
+		if (targetCorridor == -1) {
+			return -1;
+		}
+		if (corridorStart[targetCorridor] == node && corridorEnd[targetCorridor] == node) {
+			return Math.min(offsetOfSquare[targetSquare], corridorLength[targetCorridor] - offsetOfSquare[targetSquare]);
+		}
+		if (corridorStart[targetCorridor] == node) {
+			return offsetOfSquare[targetSquare];
+		}
+		if (corridorEnd[targetCorridor] == node) {
+			return corridorLength[targetCorridor] - offsetOfSquare[targetSquare];
+		}
+		return -1;
+	}
+
+	private void reach(int node, int link, int steps, int targetSquare) {
+		int square = squareOfNode[node];
+
+		if (searchStamp[node] == currentSearch && stepsToNode[node] <= steps) {
+			return;
+		}
+		searchStamp[node] = currentSearch;
+		stepsToNode[node] = steps;
+		parentLink[node] = link;
+		openNodes.addOrDecrease(node, steps + Math.abs(square / gridSize - targetSquare / gridSize) + Math.abs(square % gridSize - targetSquare % gridSize));
+	}
+
+	// Append the headings that walk a corridor from one offset to another to the path
+	private void walkCorridor(int corridor, int fromOffset, int toOffset, HeadingPath path) {
+		int first = corridorHeadings[corridor];
+
+		if (fromOffset <= toOffset) {
+			for (int i = fromOffset; i < toOffset; i++) {
+				path.append(headings[first + i]);
+			}
+		}
+		else {
+			for (int i = fromOffset - 1; i >= toOffset; i--) {
+				path.append((headings[first + i] - IRobot.NORTH + 2) % 4 + IRobot.NORTH);
+			}
+		}
+	}
+
+	private int linkStart(int link) {
+		return link % 2 == 0 ? corridorStart[link / 2] : corridorEnd[link / 2];
+	}
+
+	private int linkEnd(int link) {
+		return link % 2 == 0 ? corridorEnd[link / 2] : corridorStart[link / 2];
+	}
+
+	private boolean isNextTo(int a, int b) {
+		return Math.abs(a / gridSize - b / gridSize) + Math.abs(a % gridSize - b % gridSize) == 1;
+	}
+}
@@ -0,0 +1,203 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.awt.Point;
+
+/* A binary maze file mapped into memory with FileChannel.map: opening it reads only the header, and every square is read straight
+   from the mapping, so a 10000x10000 maze is loaded at once and costs 12.5 MB of page cache rather than a Java grid. The distance
+   section, if the file has one, holds each square's distance to the finish as an int, -1 for walls and squares which can't reach it
+ */
+public class MappedMaze {
+	static final int FILE_MAGIC = 0x524d5a42; // Marks a binary maze file ("RMZB")
+	static final int VERSION = 1;
+	static final int HEADER_LENGTH = 40;
+	private static final int FLAGS_OFFSET = 32;
+	private static final int HAS_DISTANCES = 1;
+
+	private int width, height;
+	private Point start, finish;
+	private MappedByteBuffer walls; // One bit per square, set for walls
+	private IntBuffer distances; // Distance of each square to the finish, in the same order as the walls; null if the file has none
+
+	private MappedMaze() {
+	}
+
+	// Length of the wall section, padded so the distance section starts on a multiple of 4 bytes
+	static long wallSectionLength(int width, int height) {
+		return ((long)width * height + 31) / 32 * 4;
+	}
+
+	public static MappedMaze open(File file) throws IOException {
+		MappedMaze maze = new MappedMaze();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		long wallBytes;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			while (header.hasRemaining() && channel.read(header) != -1) {
+			}
+			header.flip();
+			if (header.remaining() < HEADER_LENGTH || header.getInt() != FILE_MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Not a binary maze file: " + file);
+			}
+			maze.width = header.getInt();
+			maze.height = header.getInt();
+			maze.start = new Point(header.getInt(), header.getInt());
+			maze.finish = new Point(header.getInt(), header.getInt());
+			wallBytes = wallSectionLength(maze.width, maze.height);
+			if (wallBytes > Integer.MAX_VALUE || channel.size() < HEADER_LENGTH + wallBytes) {
+				throw new IOException("Binary maze file is cut short or too large to map: " + file);
+			}
+			// The mappings stay valid after the channel is closed
+			maze.walls = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH, wallBytes);
+			if ((header.getInt(FLAGS_OFFSET) & HAS_DISTANCES) != 0) {
+				maze.distances = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH + wallBytes, 4L * maze.width * maze.height).asIntBuffer();
+			}
+		}
+		return maze;
+	}
+
+	// Write a maze held in memory; the distance section is added if asked for
+	public static void write(Maze maze, File file, boolean withDistances) throws IOException {
+		int[] row = new int[maze.getWidth()];
+
+		try (BinaryMazeWriter writer = new BinaryMazeWriter(file, maze.getWidth(), maze.getHeight(), maze.getStart(), maze.getFinish())) {
+			for (int y = 0; y < maze.getHeight(); y++) {
+				for (int x = 0; x < maze.getWidth(); x++) {
+					row[x] = maze.getCellType(x, y);
+				}
+				writer.acceptRow(y, row);
+			}
+		}
+		if (withDistances == true) {
+			addDistances(file);
+		}
+	}
+
+	/* Append the distance section to a file which has none: a breadth-first search from the finish, reading the walls from the
+	   mapping and writing the distances straight into the mapped section. Only the search queue, one int per square, is on the heap
+	 */
+	public static void addDistances(File file) throws IOException {
+		MappedMaze maze = open(file);
+		long wallBytes = wallSectionLength(maze.width, maze.height);
+		long distanceBytes = 4L * maze.width * maze.height;
+		int[] queue;
+		int head = 0, tail = 0;
+		int square, x, y, next;
+		IntBuffer distances;
+
+		if (maze.distances != null) {
+			return;
+		}
+		if (distanceBytes > Integer.MAX_VALUE) {
+			throw new IOException("Maze is too large for a distance section: " + file);
+		}
+		queue = new int[maze.width * maze.height];
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			distances = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_LENGTH + wallBytes, distanceBytes).asIntBuffer();
+			for (int i = 0; i < distances.capacity(); i++) {
+				distances.put(i, -1);
+			}
+			if (maze.isWall(maze.finish.x, maze.finish.y) == false) {
+				distances.put(maze.finish.y * maze.width + maze.finish.x, 0);
+				queue[tail++] = maze.finish.y * maze.width + maze.finish.x;
+			}
+			while (head < tail) {
+				square = queue[head++];
+				for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+					x = square % maze.width + Headings.x(heading);
+					y = square / maze.width + Headings.y(heading);
+					next = y * maze.width + x;
+					if (maze.isWall(x, y) == false && distances.get(next) == -1) {
+						distances.put(next, distances.get(square) + 1);
+						queue[tail++] = next;
+					}
+				}
+			}
+			// Only mark the section as there once it is complete
+			channel.write(ByteBuffer.allocate(4).putInt(0, HAS_DISTANCES), FLAGS_OFFSET);
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public Point getStart() {
+		return new Point(start);
+	}
+
+	public Point getFinish() {
+		return new Point(finish);
+	}
+
+	// Squares outside the maze count as walls
+	public boolean isWall(int x, int y) {
+		long square;
+
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return true;
+		}
+		square = (long)y * width + x;
+		return (walls.get((int)(square >>> 3)) & (1 << (square & 7))) != 0;
+	}
+
+	public int getCellType(int x, int y) {
+		return isWall(x, y) == true ? Maze.WALL : Maze.PASSAGE;
+	}
+
+	public boolean hasDistances() {
+		return distances != null;
+	}
+
+	// Distance from the square to the finish, or -1 for a wall or a square which can't reach it; only for files with distances
+	public int getDistance(int x, int y) {
+		return distances.get(y * width + x);
+	}
+
+	// Check whether a maze has the same size, start, finish and squares as this file
+	public boolean matches(Maze maze) {
+		if (maze.getWidth() != width || maze.getHeight() != height || maze.getStart().equals(start) == false || maze.getFinish().equals(finish) == false) {
+			return false;
+		}
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (maze.getCellType(x, y) != getCellType(x, y)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Copy the maze into the environment's own Maze, e.g. to hand it to the GUI or a HeadlessRobot
+	public Maze toMaze() {
+		Maze maze = new Maze(width, height);
+
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				maze.setCellType(x, y, getCellType(x, y));
+			}
+		}
+		maze.setStart(start.x, start.y);
+		maze.setFinish(finish.x, finish.y);
+		return maze;
+	}
+
+	// Convert a file in the environment's format, e.g. java -cp maze-environment.jar:. MappedMaze big.maze big.rmz -distances
+	public static void main(String[] args) throws Exception {
+		long startTime = System.nanoTime();
+		Maze maze = new Maze(new File(args[0]), null);
+
+		write(maze, new File(args[1]), Arrays.asList(args).contains("-distances"));
+		System.out.printf("Converted %s to %s in %.2f s%n", args[0], args[1], (System.nanoTime() - startTime) / 1e9);
+	}
+}
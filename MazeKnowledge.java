@@ -0,0 +1,223 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+import java.io.*;
+import java.awt.Point;
+
+// What the robot learnt about a maze: enough to go straight to Shortest Path Mode when the maze comes up again
+class MazeKnowledge {
+	private static final int FILE_MAGIC = 0x474b4e32; // Marks a knowledge file ("GKN2")
+
+	private int width, height; // Size of the maze
+	private long[] passageBits; // Bit x * height + y is set for every square that isn't a wall in the grid frame
+	private int mazeX, mazeY; // The explored area, from (1, 1) to (mazeX, mazeY)
+	private boolean mazeIsLoopy;
+	private boolean mapIsPartial;
+	private HeadingPath startPath = new HeadingPath(); // The shortest path from the starting square to the target
+
+	public MazeKnowledge(int[][] mazeGridFrame, int width, int height, int mazeX, int mazeY, boolean mazeIsLoopy, boolean mapIsPartial, HeadingPath shortestPath) {
+		this.width = width;
+		this.height = height;
+		this.mazeX = mazeX;
+		this.mazeY = mazeY;
+		this.mazeIsLoopy = mazeIsLoopy;
+		this.mapIsPartial = mapIsPartial;
+		passageBits = new long[(width * height + 63) / 64];
+		for (int i = 0; i < width; i++) {
+			for (int j = 0; j < height; j++) {
+				if (mazeGridFrame[i][j] != -1) {
+					passageBits[(i * height + j) / 64] |= 1L << ((i * height + j) % 64);
+				}
+			}
+		}
+		startPath.copyFrom(shortestPath);
+	}
+
+	private MazeKnowledge() {
+	}
+
+	/* Learn a maze from a binary maze file without exploring it: the squares are read from the mapping, and the path from the
+	   start is read off the file's distance section, or found with a breadth-first search from the finish if it has none.
+	   Returns null if the finish can't be reached from the start, and throws an IOException if the distance section doesn't lead
+	   there
+	 */
+	public static MazeKnowledge fromLayout(MappedMaze layout) throws IOException {
+		MazeKnowledge knowledge = new MazeKnowledge();
+		int width = layout.getWidth();
+		int height = layout.getHeight();
+		int[] distance = null;
+		int[] queue;
+		int head = 0, tail = 0;
+		int square, x, y, nextX, nextY, nextDistance;
+		int[] parent = new int[width * height]; // Union-find over the passages, to find the first link that closes a loop
+		boolean moved;
+		long steps;
+		Point start = layout.getStart();
+		Point finish = layout.getFinish();
+
+		knowledge.width = width;
+		knowledge.height = height;
+		knowledge.mazeX = width - 2;
+		knowledge.mazeY = height - 2;
+		knowledge.passageBits = new long[(width * height + 63) / 64];
+		for (int i = 0; i < parent.length; i++) {
+			parent[i] = i;
+		}
+		/* The maze has a loop if a link joins two passages which other links have already joined. Counting links against passages
+		   would only do for a connected maze; a layout with walled-off pockets can have fewer links than passages and still a loop
+		 */
+		for (int i = 0; i < width; i++) {
+			for (int j = 0; j < height; j++) {
+				if (layout.isWall(i, j) == false) {
+					knowledge.passageBits[(i * height + j) / 64] |= 1L << ((i * height + j) % 64);
+					// Take each link between two passages once, from its west or north end
+					if (layout.isWall(i + 1, j) == false && union(parent, i * height + j, (i + 1) * height + j) == false) {
+						knowledge.mazeIsLoopy = true;
+					}
+					if (layout.isWall(i, j + 1) == false && union(parent, i * height + j, i * height + j + 1) == false) {
+						knowledge.mazeIsLoopy = true;
+					}
+				}
+			}
+		}
+
+		if (layout.hasDistances() == false) {
+			distance = new int[width * height];
+			queue = new int[width * height];
+			Arrays.fill(distance, -1);
+			if (layout.isWall(finish.x, finish.y) == false) {
+				distance[finish.x * height + finish.y] = 0;
+				queue[tail++] = finish.x * height + finish.y;
+			}
+			while (head < tail) {
+				square = queue[head++];
+				for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+					nextX = square / height + Headings.x(heading);
+					nextY = square % height + Headings.y(heading);
+					if (layout.isWall(nextX, nextY) == false && distance[nextX * height + nextY] == -1) {
+						distance[nextX * height + nextY] = distance[square] + 1;
+						queue[tail++] = nextX * height + nextY;
+					}
+				}
+			}
+		}
+
+		// Walk downhill from the start, one square nearer the finish at every step
+		x = start.x;
+		y = start.y;
+		if (layout.isWall(x, y) == true || (distance != null ? distance[x * height + y] : layout.getDistance(x, y)) == -1) {
+			return null;
+		}
+		// A path longer than the number of squares, or a square with no neighbour nearer the finish, means the file is corrupt
+		for (steps = 0; x != finish.x || y != finish.y; steps++) {
+			nextDistance = (distance != null ? distance[x * height + y] : layout.getDistance(x, y)) - 1;
+			moved = false;
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST && moved == false; heading++) {
+				nextX = x + Headings.x(heading);
+				nextY = y + Headings.y(heading);
+				if (layout.isWall(nextX, nextY) == false && (distance != null ? distance[nextX * height + nextY] : layout.getDistance(nextX, nextY)) == nextDistance) {
+					knowledge.startPath.append(heading);
+					x = nextX;
+					y = nextY;
+					moved = true;
+				}
+			}
+			if (moved == false || steps >= (long)width * height) {
+				throw new IOException("The distance section doesn't lead from the start to the finish");
+			}
+		}
+		return knowledge;
+	}
+
+	// Join the sets of two squares; returns false if they were in the same set already
+	private static boolean union(int[] parent, int first, int second) {
+		// Halve the paths on the way to the roots, so the sets stay shallow
+		while (parent[first] != first) {
+			parent[first] = parent[parent[first]];
+			first = parent[first];
+		}
+		while (parent[second] != second) {
+			parent[second] = parent[parent[second]];
+			second = parent[second];
+		}
+		if (first == second) {
+			return false;
+		}
+		parent[second] = first;
+		return true;
+	}
+
+	// Fill a grid frame with -1 for walls and 0 otherwise; squares outside the maze are walls
+	public void fillGridFrame(int[][] mazeGridFrame) {
+		for (int i = 0; i < mazeGridFrame.length; i++) {
+			for (int j = 0; j < mazeGridFrame[i].length; j++) {
+				if (i < width && j < height && (passageBits[(i * height + j) / 64] & (1L << ((i * height + j) % 64))) != 0) {
+					mazeGridFrame[i][j] = 0;
+				}
+				else {
+					mazeGridFrame[i][j] = -1;
+				}
+			}
+		}
+	}
+
+	// Copy the path from the starting square into shortestPath, ready to be read from its first heading
+	public void fillShortestPath(HeadingPath shortestPath) {
+		shortestPath.copyFrom(startPath);
+	}
+
+	public int getMazeX() {
+		return mazeX;
+	}
+
+	public int getMazeY() {
+		return mazeY;
+	}
+
+	public boolean isLoopy() {
+		return mazeIsLoopy;
+	}
+
+	public boolean isPartial() {
+		return mapIsPartial;
+	}
+
+	public void writeTo(DataOutputStream output) throws IOException {
+		output.writeInt(FILE_MAGIC);
+		output.writeInt(width);
+		output.writeInt(height);
+		output.writeInt(mazeX);
+		output.writeInt(mazeY);
+		output.writeBoolean(mazeIsLoopy);
+		output.writeBoolean(mapIsPartial);
+		output.writeInt(startPath.runCount());
+		for (int i = 0; i < startPath.runCount(); i++) {
+			output.writeByte(startPath.getRunHeading(i) - IRobot.NORTH);
+			output.writeInt(startPath.getRunSteps(i));
+		}
+		for (long bits : passageBits) {
+			output.writeLong(bits);
+		}
+	}
+
+	public static MazeKnowledge readFrom(DataInputStream input) throws IOException {
+		MazeKnowledge knowledge = new MazeKnowledge();
+
+		if (input.readInt() != FILE_MAGIC) {
+			throw new IOException("Not a maze knowledge file");
+		}
+		knowledge.width = input.readInt();
+		knowledge.height = input.readInt();
+		knowledge.mazeX = input.readInt();
+		knowledge.mazeY = input.readInt();
+		knowledge.mazeIsLoopy = input.readBoolean();
+		knowledge.mapIsPartial = input.readBoolean();
+		for (int i = input.readInt(); i > 0; i--) {
+			knowledge.startPath.append(input.readByte() + IRobot.NORTH, input.readInt());
+		}
+		knowledge.passageBits = new long[(knowledge.width * knowledge.height + 63) / 64];
+		for (int i = 0; i < knowledge.passageBits.length; i++) {
+			knowledge.passageBits[i] = input.readLong();
+		}
+		return knowledge;
+	}
+}
@@ -0,0 +1,159 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.security.*;
+
+/* Knowledge about the mazes solved so far, keyed by a fingerprint of the layout, start and finish, so that a maze loaded again
+   is not explored again. The most recently used mazes are kept in memory (-Dgrandfinale.cache.entries, 64 by default); with
+   -Dgrandfinale.cache.dir set, every maze is also written to a file there and survives the program. Shared by every controller
+   in the program
+ */
+class MazeKnowledgeCache {
+	private static final int MEMORY_ENTRIES = Integer.getInteger("grandfinale.cache.entries", 64);
+	private static final String DIRECTORY = System.getProperty("grandfinale.cache.dir");
+
+	private static final String LAYOUT_FILE = System.getProperty("grandfinale.layout");
+
+	private static MappedMaze layout; // The layout file, mapped the first time it is needed
+	private static boolean layoutFailed; // True if the layout file couldn't be read, so that it isn't tried again
+
+	private static final Map<String, MazeKnowledge> recentMazes = new LinkedHashMap<String, MazeKnowledge>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, MazeKnowledge> eldest) {
+			return size() > MEMORY_ENTRIES;
+		}
+	};
+
+	// Hash the size, start, finish and every square of the maze
+	public static String fingerprint(Maze maze) {
+		MessageDigest digest;
+		byte[] hash;
+		byte[] row = new byte[maze.getHeight()];
+		StringBuilder text = new StringBuilder();
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(ByteBuffer.allocate(24).putInt(maze.getWidth()).putInt(maze.getHeight()).putInt(maze.getStart().x).putInt(maze.getStart().y)
+			.putInt(maze.getFinish().x).putInt(maze.getFinish().y).array());
+		for (int i = 0; i < maze.getWidth(); i++) {
+			for (int j = 0; j < maze.getHeight(); j++) {
+				row[j] = (byte)maze.getCellType(i, j);
+			}
+			digest.update(row);
+		}
+		hash = digest.digest();
+		for (byte b : hash) {
+			text.append(String.format("%02x", b));
+		}
+		return text.toString();
+	}
+
+	// Return what is known about a maze, or null if it hasn't been seen
+	public static MazeKnowledge get(String fingerprint) {
+		MazeKnowledge knowledge;
+
+		synchronized (recentMazes) {
+			knowledge = recentMazes.get(fingerprint);
+		}
+		if (knowledge == null && DIRECTORY != null) {
+			knowledge = readFile(fingerprint);
+			if (knowledge != null) {
+				synchronized (recentMazes) {
+					recentMazes.put(fingerprint, knowledge);
+				}
+			}
+		}
+		return knowledge;
+	}
+
+	/* Return what the binary layout file given with -Dgrandfinale.layout says about a maze, storing it under the fingerprint, or
+	   null if there is no layout file, it holds another maze or it is corrupt
+	 */
+	public static MazeKnowledge getFromLayout(String fingerprint, Maze maze) {
+		MazeKnowledge knowledge;
+
+		synchronized (MazeKnowledgeCache.class) {
+			if (LAYOUT_FILE == null || layoutFailed == true) {
+				return null;
+			}
+			if (layout == null) {
+				try {
+					layout = MappedMaze.open(new File(LAYOUT_FILE));
+				}
+				catch (IOException e) {
+					System.err.println("Could not read maze layout: " + e.getMessage());
+					layoutFailed = true;
+					return null;
+				}
+			}
+		}
+		if (layout.matches(maze) == false) {
+			return null;
+		}
+		try {
+			knowledge = MazeKnowledge.fromLayout(layout);
+		}
+		catch (IOException e) {
+			System.err.println("Could not read maze layout: " + e.getMessage());
+			synchronized (MazeKnowledgeCache.class) {
+				layoutFailed = true;
+			}
+			return null;
+		}
+		if (knowledge != null) {
+			synchronized (recentMazes) {
+				recentMazes.put(fingerprint, knowledge);
+			}
+		}
+		return knowledge;
+	}
+
+	public static void put(String fingerprint, MazeKnowledge knowledge) {
+		synchronized (recentMazes) {
+			recentMazes.put(fingerprint, knowledge);
+		}
+		if (DIRECTORY != null) {
+			writeFile(fingerprint, knowledge);
+		}
+	}
+
+	// The cache only saves time, so a missing or unreadable file counts as a maze not seen before
+	private static MazeKnowledge readFile(String fingerprint) {
+		Path file = Paths.get(DIRECTORY, fingerprint + ".gkn");
+
+		if (Files.exists(file) == false) {
+			return null;
+		}
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			return MazeKnowledge.readFrom(input);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	// Write to a temporary file first, so that another program reading the cache never sees half a file
+	private static void writeFile(String fingerprint, MazeKnowledge knowledge) {
+		Path directory = Paths.get(DIRECTORY);
+		Path temporaryFile;
+
+		try {
+			Files.createDirectories(directory);
+			temporaryFile = Files.createTempFile(directory, fingerprint, ".tmp");
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+				knowledge.writeTo(output);
+			}
+			Files.move(temporaryFile, directory.resolve(fingerprint + ".gkn"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			System.err.println("Could not write maze knowledge: " + e.getMessage());
+		}
+	}
+}
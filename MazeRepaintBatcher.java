@@ -0,0 +1,83 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import javax.swing.Timer;
+
+/* Changes the games make to the maze, collected over a poll and passed on to the GUI as one event. The maze panel can only
+   repaint or reload the whole maze, so the strongest request of the poll is kept, and it is sent at most once per frame
+   (-Dgrandfinale.maxFps, 60 by default, 0 for no limit). A request that comes too soon waits for a later poll, or for a
+   one-shot timer at the end of the frame if no poll comes, e.g. because the game ended or the environment was paused
+ */
+class MazeRepaintBatcher {
+	public static final int RELOAD = 107; // Event that makes the maze panel load the maze again
+	public static final int REPAINT = 102; // Event that makes the maze panel repaint the maze
+
+	private long frameNanos; // Shortest time between two events
+	private long lastBroadcast; // Time the last event was sent
+	private int pendingSignal; // Event to send at the next flush, or 0 if nothing changed
+	private Maze pendingMaze; // Maze the pending event is for
+	private Timer lateFlush; // Sends a pending event once its frame is over; created the first time an event has to wait
+
+	public MazeRepaintBatcher(int framesPerSecond) {
+		frameNanos = framesPerSecond > 0 ? 1000000000L / framesPerSecond : 0;
+		lastBroadcast = System.nanoTime() - frameNanos;
+	}
+
+	// Ask for the maze to be repainted, or reloaded if the signal is RELOAD; reloading also repaints, so it wins
+	public synchronized void request(int signal) {
+		if (pendingSignal != RELOAD) {
+			pendingSignal = signal;
+		}
+	}
+
+	// Send the pending event if a frame has passed since the last one, and return true if it was sent
+	public synchronized boolean flush(Maze maze) {
+		long now;
+
+		if (pendingSignal == 0) {
+			return false;
+		}
+		now = System.nanoTime();
+		if (now - lastBroadcast < frameNanos) {
+			pendingMaze = maze;
+			startLateFlush((int)((lastBroadcast + frameNanos - now + 999999) / 1000000));
+			return false;
+		}
+		broadcast(maze, now);
+		return true;
+	}
+
+	// Send the pending event straight away, whenever the last one was sent; for the end of a run, when no poll may follow
+	public synchronized void flushNow(Maze maze) {
+		if (pendingSignal != 0) {
+			broadcast(maze, System.nanoTime());
+		}
+	}
+
+	private void broadcast(Maze maze, long now) {
+		EventBus.broadcast(new Event(pendingSignal, maze));
+		pendingSignal = 0;
+		pendingMaze = null;
+		lastBroadcast = now;
+		if (lateFlush != null) {
+			lateFlush.stop();
+		}
+	}
+
+	// Called on the Swing thread by the timer
+	private synchronized void flushLate() {
+		if (pendingMaze != null) {
+			flushNow(pendingMaze);
+		}
+	}
+
+	private void startLateFlush(int delayMillis) {
+		if (lateFlush == null) {
+			lateFlush = new Timer(delayMillis, event -> flushLate());
+			lateFlush.setRepeats(false);
+		}
+		// A timer that is already waiting is left alone; it fires at the end of the same frame
+		if (lateFlush.isRunning() == false) {
+			lateFlush.setInitialDelay(Math.max(1, delayMillis));
+			lateFlush.start();
+		}
+	}
+}
@@ -0,0 +1,6 @@
+import java.io.*;
+
+// Receives the rows of a maze one at a time, top to bottom; the row array is reused, so it must be copied if it is kept
+interface MazeRowSink {
+	void acceptRow(int y, int[] cellTypes) throws IOException;
+}
@@ -0,0 +1,20 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+
+// The heading each square of the grid was last reached with during a search, packed in two bits per square
+class ParentHeadings {
+	private int[] headingBits; // Sixteen squares per int
+
+	public ParentHeadings(int squareCount) {
+		headingBits = new int[(squareCount + 15) / 16];
+	}
+
+	public void set(int square, int heading) {
+		int shift = (square % 16) * 2;
+
+		headingBits[square / 16] = (headingBits[square / 16] & ~(3 << shift)) | ((heading - IRobot.NORTH) << shift);
+	}
+
+	public int get(int square) {
+		return ((headingBits[square / 16] >>> ((square % 16) * 2)) & 3) + IRobot.NORTH;
+	}
+}
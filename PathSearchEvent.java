@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR event for one shortest path search; its duration is the time the planner took
+@Name("grandfinale.PathSearch")
+@Label("Path Search")
+@Category("Maze Solver")
+@StackTrace(false)
+class PathSearchEvent extends jdk.jfr.Event {
+	@Label("Planner")
+	String planner;
+
+	@Label("Squares Expanded")
+	@Description("Squares taken from the open set; only counted by A*")
+	int squaresExpanded;
+
+	@Label("Open Set Peak")
+	@Description("Largest size of the open set; only counted by A*")
+	int openSetPeak;
+
+	@Label("Path Length")
+	int pathLength;
+}
@@ -0,0 +1,47 @@
+// A path planned by the background planner, with what it was planned from. Never changed once it has been published
+class PlannedPath {
+	private int wallCount; // Number of logged walls the plan was made with
+	private int sourceSquare, targetSquare; // Squares the path leads from and to
+	private boolean mazeIsLoopy; // Whether the maze was known to have loops
+	private int mazeX, mazeY; // Size of the explored area
+	private int[][] gridFrame; // The walls, -1, of the grid frame the plan was made on; 0 otherwise
+	private TreeDistanceOracle treeOracle; // Oracle built on the grid frame, or null if the maze has loops
+	private int openSquares; // Non-wall squares in the explored area
+	private HeadingPath path; // Headings from the source square to the target square, or null if the controller has to find them
+
+	public PlannedPath(int wallCount, int sourceSquare, int targetSquare, boolean mazeIsLoopy, int mazeX, int mazeY, int[][] gridFrame,
+		TreeDistanceOracle treeOracle, int openSquares, HeadingPath path) {
+		this.wallCount = wallCount;
+		this.sourceSquare = sourceSquare;
+		this.targetSquare = targetSquare;
+		this.mazeIsLoopy = mazeIsLoopy;
+		this.mazeX = mazeX;
+		this.mazeY = mazeY;
+		this.gridFrame = gridFrame;
+		this.treeOracle = treeOracle;
+		this.openSquares = openSquares;
+		this.path = path;
+	}
+
+	// Check whether the plan was made for this state of the map
+	public boolean isFor(int wallCount, int sourceSquare, int targetSquare, boolean mazeIsLoopy, int mazeX, int mazeY) {
+		return this.wallCount == wallCount && this.sourceSquare == sourceSquare && this.targetSquare == targetSquare &&
+			this.mazeIsLoopy == mazeIsLoopy && this.mazeX == mazeX && this.mazeY == mazeY;
+	}
+
+	public int[][] getGridFrame() {
+		return gridFrame;
+	}
+
+	public TreeDistanceOracle getTreeOracle() {
+		return treeOracle;
+	}
+
+	public int getOpenSquares() {
+		return openSquares;
+	}
+
+	public HeadingPath getPath() {
+		return path;
+	}
+}
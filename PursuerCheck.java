@@ -0,0 +1,139 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+
+// The -pursuer check of the headless runner: play the chase game against the minimax pursuer and the shortest path pursuer, and time the minimax moves
+class PursuerCheck {
+	private static final int CHASE_MOVES = 1000; // A chase game is called off after this many moves if the robot hasn't been caught
+	private static final long CLOCK_SLACK_NANOS = 1000000; // How late the minimax pursuer may be to see its deadline has passed
+	private static final int LATE_MOVES_ALLOWED = 20; // One move in this many may be later than that, as the machine took the CPU away
+
+	/* Play the chase game on every maze, once with the minimax pursuer and once with a target taking the shortest path, against a
+	   robot which runs for the square furthest from the target, and print how long the robot lasted against each. Running for
+	   one square commits the robot to a route, which a pursuer looking ahead can cut off, so the two pursuers don't play alike.
+	   Every minimax move is timed with System.nanoTime() around it, as the game's poll would wait for it. Returns false if the
+	   minimax pursuer caught the robot in fewer games than the shortest path pursuer, or if more than one move in
+	   LATE_MOVES_ALLOWED took longer than its budget (-Dgrandfinale.pursuer.budgetMicros, 2000 by default) plus CLOCK_SLACK_NANOS.
+	   A few late moves are allowed because on a machine shared with other programs the thread can wait several milliseconds for
+	   the CPU a few times a second, whatever the pursuer does; a pursuer that doesn't keep to its deadline is late on most moves
+	 */
+	public static boolean run(String[] generatorNames, int size, int mazes) throws Exception {
+		long budgetNanos = Long.getLong("grandfinale.pursuer.budgetMicros", 2000) * 1000;
+		long[] timings = new long[4]; // Moves timed, moves over the budget and the slack, the longest a move took, and plies searched
+		long minimaxMoves = 0, shortestPathMoves = 0;
+		int minimaxCaught = 0, shortestPathCaught = 0, minimaxSooner = 0, minimaxLater = 0, games = 0;
+		int gridSize = 0, minimaxGame, shortestPathGame;
+		int[][] grid;
+		TreeDistanceOracle treeOracle;
+		PursuerSearch pursuerSearch = null;
+		FlowField fromRobot = null, fromTarget = null;
+		Maze maze;
+		boolean passed = true;
+
+		for (int i = 0; i < mazes; i++) {
+			maze = HeadlessRunner.createGenerator(generatorNames[i % generatorNames.length], size).generateMaze();
+			if (HeadlessRunner.shortestPathLength(maze) < 1) {
+				continue;
+			}
+			// The pursuer's storage is kept from one maze to the next, as in the controller, unless a maze doesn't fit in it
+			if (pursuerSearch == null || Math.max(maze.getWidth(), maze.getHeight()) > gridSize) {
+				gridSize = Math.max(HeadlessRunner.GRID_SIZE, Math.max(maze.getWidth(), maze.getHeight()));
+				pursuerSearch = new PursuerSearch(gridSize);
+				fromRobot = new FlowField(gridSize);
+				fromTarget = new FlowField(gridSize);
+			}
+			grid = new int[gridSize][gridSize];
+			for (int x = 0; x < maze.getWidth(); x++) {
+				for (int y = 0; y < maze.getHeight(); y++) {
+					grid[x][y] = maze.getCellType(x, y) == Maze.WALL ? -1 : 0;
+				}
+			}
+			// No leaf square: the robot can get past the finish once the target has moved off it
+			treeOracle = new TreeDistanceOracle(gridSize);
+			if (treeOracle.build(grid, maze.getStart().x, maze.getStart().y, -1, -1) == false) {
+				treeOracle = null;
+			}
+			pursuerSearch.start(grid, maze.getWidth(), maze.getHeight(), treeOracle, maze.getFinish().x * gridSize + maze.getFinish().y);
+			games++;
+
+			minimaxGame = chase(maze, grid, gridSize, pursuerSearch, budgetNanos, fromRobot, fromTarget, timings);
+			minimaxMoves += minimaxGame;
+			if (minimaxGame < CHASE_MOVES) {
+				minimaxCaught++;
+			}
+			shortestPathGame = chase(maze, grid, gridSize, null, budgetNanos, fromRobot, fromTarget, timings);
+			shortestPathMoves += shortestPathGame;
+			if (shortestPathGame < CHASE_MOVES) {
+				shortestPathCaught++;
+			}
+			if (minimaxGame < shortestPathGame) {
+				minimaxSooner++;
+			}
+			else if (minimaxGame > shortestPathGame) {
+				minimaxLater++;
+			}
+		}
+
+		System.out.printf("%-14s %7s %7s %12s%n", "Pursuer", "Games", "Caught", "Moves");
+		System.out.printf("%-14s %7d %7d %12.1f%n", "Minimax", games, minimaxCaught, (double)minimaxMoves / Math.max(1, games));
+		System.out.printf("%-14s %7d %7d %12.1f%n", "Shortest path", games, shortestPathCaught, (double)shortestPathMoves / Math.max(1, games));
+		System.out.printf("The minimax pursuer caught the robot sooner in %d games and later in %d%n", minimaxSooner, minimaxLater);
+		System.out.printf("%d minimax moves with a %d us budget: %.1f plies on average, slowest %.3f ms, %d over the budget by more than %.1f ms%n",
+			timings[0], budgetNanos / 1000, (double)timings[3] / Math.max(1, timings[0]), timings[2] / 1e6, timings[1], CLOCK_SLACK_NANOS / 1e6);
+		if (minimaxCaught < shortestPathCaught) {
+			System.out.println("The minimax pursuer caught the robot in fewer games than the shortest path pursuer");
+			passed = false;
+		}
+		if (timings[1] * LATE_MOVES_ALLOWED > timings[0]) {
+			System.out.println("Too many minimax moves went over their time budget");
+			passed = false;
+		}
+		return passed;
+	}
+
+	/* Play one chase game from the maze's start and finish, the target moving first each turn: with the minimax pursuer if one is
+	   given, otherwise along the shortest path to the robot. Returns the number of moves until the robot was caught, or
+	   CHASE_MOVES if it never was
+	 */
+	private static int chase(Maze maze, int[][] grid, int gridSize, PursuerSearch pursuerSearch, long budgetNanos, FlowField fromRobot, FlowField fromTarget, long[] timings) {
+		int robotSquare = maze.getStart().x * gridSize + maze.getStart().y;
+		int targetSquare = maze.getFinish().x * gridSize + maze.getFinish().y;
+		int heading, furthestSquare, nextSquare;
+		long startTime, moveTime;
+
+		for (int move = 1; move <= CHASE_MOVES; move++) {
+			if (pursuerSearch != null) {
+				startTime = System.nanoTime();
+				heading = pursuerSearch.chooseHeading(robotSquare, targetSquare, startTime + budgetNanos);
+				moveTime = System.nanoTime() - startTime;
+				timings[0]++;
+				if (moveTime > budgetNanos + CLOCK_SLACK_NANOS) {
+					timings[1]++;
+				}
+				timings[2] = Math.max(timings[2], moveTime);
+				timings[3] += pursuerSearch.getCompletedDepth();
+			}
+			else {
+				fromRobot.build(grid, maze.getWidth(), maze.getHeight(), robotSquare);
+				heading = fromRobot.getDistance(targetSquare) > 0 ? fromRobot.nextHeading(targetSquare) : -1;
+			}
+			if (heading != -1) {
+				targetSquare += HeadlessRobot.stepX(heading) * gridSize + HeadlessRobot.stepY(heading);
+			}
+			if (targetSquare == robotSquare) {
+				return move;
+			}
+
+			// The robot takes a step towards the square the target's search reached last, unless it is there or the step is onto the target
+			fromTarget.build(grid, maze.getWidth(), maze.getHeight(), targetSquare);
+			furthestSquare = fromTarget.getReachedSquare(fromTarget.getReachedCount() - 1);
+			if (furthestSquare != robotSquare) {
+				fromRobot.build(grid, maze.getWidth(), maze.getHeight(), furthestSquare);
+				heading = fromRobot.nextHeading(robotSquare);
+				nextSquare = robotSquare + HeadlessRobot.stepX(heading) * gridSize + HeadlessRobot.stepY(heading);
+				if (nextSquare != targetSquare) {
+					robotSquare = nextSquare;
+				}
+			}
+		}
+		return CHASE_MOVES;
+	}
+}
@@ -0,0 +1,378 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+
+/* The target's side of the chase game, searched as a two-player game over (robot square, target square) pairs: iterative
+   deepening minimax with alpha-beta, where the target moves to close in on the robot and the robot, which may also stand still,
+   moves to get away. Every position searched goes into a transposition table keyed by the two squares packed into a long, so
+   each deeper iteration, and the next move's search, starts from the best moves already found, and a position reached by two
+   move orders is only searched once. Leaves are scored with the exact distance when the maze is a tree; otherwise with the
+   largest of the Manhattan distance and the landmark bounds |d(landmark, target) - d(landmark, robot)|. The landmarks are a
+   few squares far apart, plus the robot's own square, which gives the tightest bound and is searched from again as soon as
+   the last search from it is complete; the breadth-first searches are done a slice at a time out of the moves' budgets. Every
+   phase reads the clock at least every CHECK_INTERVAL nodes or squares and stops at the deadline it was given, so a move takes
+   no longer than its budget however large the maze is; the move played is the one from the deepest iteration that finished.
+   Squares are indexed x * gridSize + y
+ */
+class PursuerSearch {
+	private static final int MAX_DEPTH = 64; // Plies searched at most
+	private static final int LANDMARKS = 4; // Distance fields kept for scoring positions in loopy mazes
+	private static final int CHECK_INTERVAL = 256; // Nodes searched, or squares cleared or searched, between two looks at the clock
+	private static final int TABLE_BITS = 18; // The transposition table has 2^TABLE_BITS entries
+	private static final int EXACT = 0, LOWER_BOUND = 1, UPPER_BOUND = 2;
+	private static final int STAY = 4; // Move index of the robot standing still; 0-3 are the headings from IRobot.NORTH
+	private static final int NO_MOVE = 7;
+
+	private int gridSize; // Width and height of the grid the squares are indexed in
+	private int[][] grid; // -1 for walls
+	private int width, height;
+	private TreeDistanceOracle treeOracle; // Exact distances if the maze is a tree, otherwise null
+	private long deadline; // System.nanoTime() by which the current phase must stop
+	private int work; // Nodes or squares since the clock was last read
+	private boolean outOfTime; // True once the deadline passed; the search in progress is then abandoned
+	private int completedDepth; // Depth of the deepest iteration that finished for the last move
+	private int rootValue; // Score of the best move found by the last iteration that finished
+
+	private long[] tableKeys; // robot << 32 | target << 1 | 1 if the target is to move
+	private int[] tableValues;
+	private int[] tableInfo; // generation << 16 | depth << 8 | bound << 3 | best move; 0 for an empty entry
+	private int generation = 1; // Entries of other generations are out of date, because the leaves are scored differently now
+
+	private int[][] landmarkDistance; // Steps plus one from each landmark, then from the robot twice over, 0 for squares not reached; null for trees
+	private int landmarksReady; // Number of complete landmark fields, used for scoring
+	private int landmarkSquare; // The landmark of the next landmark field
+	private int robotField; // Index of the robot field complete last, used for scoring, or -1
+	private int buildingField; // Index of the field being built: a landmark field until they are all there, then the other robot field
+	private int clearedSquares; // Squares of the field being built set back to 0 so far
+	private int[] queue; // Breadth-first search queue of the field being built
+	private int queueHead, queueTail;
+
+	public PursuerSearch(int gridSize) {
+		this.gridSize = gridSize;
+		tableKeys = new long[1 << TABLE_BITS];
+		tableValues = new int[1 << TABLE_BITS];
+		tableInfo = new int[1 << TABLE_BITS];
+	}
+
+	/* Start a game on the given grid. Without a tree oracle the distance fields are built over the next moves, the first from the
+	   given square; apart from allocating them the first time, nothing here takes time in proportion to the size of the maze
+	 */
+	public void start(int[][] grid, int width, int height, TreeDistanceOracle treeOracle, int firstLandmark) {
+		this.grid = grid;
+		this.width = width;
+		this.height = height;
+		this.treeOracle = treeOracle;
+		landmarksReady = 0;
+		landmarkSquare = firstLandmark;
+		robotField = -1;
+		buildingField = 0;
+		clearedSquares = 0;
+		queueHead = 0;
+		queueTail = 0;
+		if (treeOracle == null && landmarkDistance == null) {
+			landmarkDistance = new int[LANDMARKS + 2][gridSize * gridSize];
+			queue = new int[gridSize * gridSize];
+		}
+		nextGeneration();
+	}
+
+	public int getCompletedDepth() {
+		return completedDepth;
+	}
+
+	/* Return the heading the target should take from its square towards the robot's, or -1 if it is on the robot's square or
+	   walled in. Returns by the deadline, a System.nanoTime() value, give or take one look at the clock
+	 */
+	public int chooseHeading(int robotSquare, int targetSquare, long deadline) {
+		int bestMove = NO_MOVE;
+		int move;
+
+		completedDepth = 0;
+		if (robotSquare == targetSquare) {
+			return -1;
+		}
+		// Spend up to half the time on the distance fields
+		if (treeOracle == null) {
+			this.deadline = System.nanoTime() + (deadline - System.nanoTime()) / 2;
+			buildFields(robotSquare);
+		}
+		this.deadline = deadline;
+		outOfTime = false;
+		work = 0;
+		for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+			move = searchRoot(robotSquare, targetSquare, depth);
+			if (outOfTime == true) {
+				break;
+			}
+			bestMove = move;
+			completedDepth = depth;
+			// The target is walled in, or catches the robot whatever it does; looking deeper won't change the move
+			if (bestMove == NO_MOVE || rootValue < 0) {
+				break;
+			}
+		}
+		// If not even one ply could be searched, take the move that looks closest
+		if (bestMove == NO_MOVE) {
+			bestMove = greedyMove(robotSquare, targetSquare);
+		}
+		return bestMove == NO_MOVE ? -1 : bestMove + IRobot.NORTH;
+	}
+
+	// Search the target's moves at the root, returning the best one, or NO_MOVE if it has none or time ran out
+	private int searchRoot(int robotSquare, int targetSquare, int depth) {
+		long key = keyOf(robotSquare, targetSquare, true);
+		int slot = slotOf(key);
+		int firstMove = tableKeys[slot] == key && tableInfo[slot] >>> 16 == generation ? tableInfo[slot] & 7 : NO_MOVE;
+		int bestMove = NO_MOVE;
+		int bestValue = Integer.MAX_VALUE;
+		int move, next, value;
+
+		for (int i = -1; i < 4; i++) {
+			// The best move of the last iteration goes first, so alpha-beta cuts the most
+			move = i == -1 ? firstMove : i;
+			if (move == NO_MOVE || (i != -1 && move == firstMove) || (next = step(targetSquare, move)) == -1) {
+				continue;
+			}
+			value = search(robotSquare, next, depth - 1, Integer.MIN_VALUE, bestValue, false);
+			if (outOfTime == true) {
+				return NO_MOVE;
+			}
+			if (value < bestValue) {
+				bestValue = value;
+				bestMove = move;
+			}
+		}
+		if (bestMove != NO_MOVE) {
+			store(key, slot, depth, bestValue, EXACT, bestMove);
+		}
+		rootValue = bestValue;
+		return bestMove;
+	}
+
+	// Score a position: the steps between the robot and the target if neither catches the other, or below 0 if the target does, lower the sooner
+	private int search(int robotSquare, int targetSquare, int depth, int alpha, int beta, boolean targetToMove) {
+		long key;
+		int slot, info, bound;
+		int firstMove = NO_MOVE;
+		int bestMove = NO_MOVE;
+		int bestValue;
+		int originalAlpha = alpha, originalBeta = beta;
+		int move, next, value;
+
+		if (robotSquare == targetSquare) {
+			return -1 - depth;
+		}
+		if (depth == 0) {
+			return evaluate(robotSquare, targetSquare);
+		}
+		if (++work >= CHECK_INTERVAL) {
+			work = 0;
+			outOfTime = System.nanoTime() > deadline;
+		}
+		if (outOfTime == true) {
+			return 0;
+		}
+
+		key = keyOf(robotSquare, targetSquare, targetToMove);
+		slot = slotOf(key);
+		info = tableInfo[slot];
+		if (tableKeys[slot] == key && info >>> 16 == generation) {
+			// Scores from other depths aren't comparable: the leaves are a different number of moves away, and captures are scored by how soon they come
+			if ((info >> 8 & 0xff) == depth) {
+				bound = info >> 3 & 3;
+				value = tableValues[slot];
+				if (bound == EXACT || (bound == LOWER_BOUND && value >= beta) || (bound == UPPER_BOUND && value <= alpha)) {
+					return value;
+				}
+			}
+			firstMove = info & 7;
+		}
+
+		bestValue = targetToMove == true ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+		for (int i = -1; i <= (targetToMove == true ? 3 : STAY); i++) {
+			move = i == -1 ? firstMove : i;
+			if (move == NO_MOVE || (i != -1 && move == firstMove)) {
+				continue;
+			}
+			if (targetToMove == true) {
+				if (move == STAY || (next = step(targetSquare, move)) == -1) {
+					continue;
+				}
+				value = search(robotSquare, next, depth - 1, alpha, beta, false);
+				if (value < bestValue) {
+					bestValue = value;
+					bestMove = move;
+					beta = Math.min(beta, value);
+				}
+			}
+			else {
+				if ((next = step(robotSquare, move)) == -1) {
+					continue;
+				}
+				value = search(next, targetSquare, depth - 1, alpha, beta, true);
+				if (value > bestValue) {
+					bestValue = value;
+					bestMove = move;
+					alpha = Math.max(alpha, value);
+				}
+			}
+			if (outOfTime == true) {
+				return 0;
+			}
+			if (alpha >= beta) {
+				break;
+			}
+		}
+		// A side with nowhere to go leaves the position as it is
+		if (bestMove == NO_MOVE) {
+			return evaluate(robotSquare, targetSquare);
+		}
+		store(key, slot, depth, bestValue, bestValue <= originalAlpha ? UPPER_BOUND : bestValue >= originalBeta ? LOWER_BOUND : EXACT, bestMove);
+		return bestValue;
+	}
+
+	// Return the square a move leads to, or -1 if it is a wall or off the grid; STAY leads to the same square
+	private int step(int square, int move) {
+		int testX, testY;
+
+		if (move == STAY) {
+			return square;
+		}
+		testX = square / gridSize + Headings.x(move + IRobot.NORTH);
+		testY = square % gridSize + Headings.y(move + IRobot.NORTH);
+		if (testX < 0 || testX >= width || testY < 0 || testY >= height || grid[testX][testY] == -1) {
+			return -1;
+		}
+		return testX * gridSize + testY;
+	}
+
+	// A lower bound on the steps between two different squares, exact in a tree
+	private int evaluate(int robotSquare, int targetSquare) {
+		int score = Math.abs(robotSquare / gridSize - targetSquare / gridSize) + Math.abs(robotSquare % gridSize - targetSquare % gridSize);
+		int robotSteps, targetSteps;
+		int[] field;
+
+		if (treeOracle != null) {
+			robotSteps = treeOracle.distance(targetSquare, robotSquare);
+			return robotSteps == -1 ? score : robotSteps;
+		}
+		for (int i = 0; i < landmarksReady || (i == landmarksReady && robotField != -1); i++) {
+			// The robot field comes after the landmark fields
+			field = landmarkDistance[i == landmarksReady ? robotField : i];
+			robotSteps = field[robotSquare];
+			targetSteps = field[targetSquare];
+			if (robotSteps != 0 && targetSteps != 0) {
+				score = Math.max(score, Math.abs(robotSteps - targetSteps));
+			}
+		}
+		return score;
+	}
+
+	private int greedyMove(int robotSquare, int targetSquare) {
+		int bestMove = NO_MOVE;
+		int bestValue = Integer.MAX_VALUE;
+		int next, value;
+
+		for (int move = 0; move < 4; move++) {
+			if ((next = step(targetSquare, move)) != -1) {
+				value = next == robotSquare ? -1 : evaluate(robotSquare, next);
+				if (value < bestValue) {
+					bestValue = value;
+					bestMove = move;
+				}
+			}
+		}
+		return bestMove;
+	}
+
+	/* Carry on building the distance fields until one robot field is complete or the deadline passes. Each field is cleared, then
+	   filled by a breadth-first search; the next landmark is the last square the search from the one before reached, the furthest
+	   from it, and a robot field is searched from the robot's square when its clearing is done. The robot fields take turns, so
+	   the last complete one can be used while the other is built
+	 */
+	private void buildFields(int robotSquare) {
+		int[] field;
+		int square, squareX, squareY, testX, testY, steps;
+		boolean robotFieldDone = false;
+
+		outOfTime = false;
+		work = 0;
+		while (robotFieldDone == false && outOfTime == false) {
+			field = landmarkDistance[buildingField];
+			if (clearedSquares < field.length) {
+				Arrays.fill(field, clearedSquares, Math.min(field.length, clearedSquares + 16 * CHECK_INTERVAL), 0);
+				clearedSquares = Math.min(field.length, clearedSquares + 16 * CHECK_INTERVAL);
+				// Clearing a slice costs about as much as searching CHECK_INTERVAL squares, so look at the clock after each one
+				work = CHECK_INTERVAL - 1;
+				if (clearedSquares == field.length) {
+					queue[0] = buildingField < LANDMARKS ? landmarkSquare : robotSquare;
+					field[queue[0]] = 1;
+					queueHead = 0;
+					queueTail = 1;
+				}
+			}
+			else if (queueHead < queueTail) {
+				square = queue[queueHead++];
+				squareX = square / gridSize;
+				squareY = square % gridSize;
+				steps = field[square] + 1;
+				for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+					testX = squareX + Headings.x(heading);
+					testY = squareY + Headings.y(heading);
+					if (testX >= 0 && testX < width && testY >= 0 && testY < height && grid[testX][testY] != -1 && field[testX * gridSize + testY] == 0) {
+						field[testX * gridSize + testY] = steps;
+						queue[queueTail++] = testX * gridSize + testY;
+					}
+				}
+			}
+			else {
+				// The field is complete; positions are scored differently from now on
+				if (buildingField < LANDMARKS) {
+					landmarkSquare = queue[queueTail - 1];
+					landmarksReady++;
+					buildingField = landmarksReady;
+				}
+				else {
+					robotField = buildingField;
+					buildingField = LANDMARKS + (LANDMARKS + 1 - buildingField);
+					robotFieldDone = true;
+				}
+				clearedSquares = 0;
+				nextGeneration();
+			}
+			if (++work >= CHECK_INTERVAL) {
+				work = 0;
+				outOfTime = System.nanoTime() > deadline;
+			}
+		}
+	}
+
+	private long keyOf(int robotSquare, int targetSquare, boolean targetToMove) {
+		return (long)robotSquare << 32 | (long)targetSquare << 1 | (targetToMove == true ? 1 : 0);
+	}
+
+	private int slotOf(long key) {
+		key *= 0x9e3779b97f4a7c15L;
+		return (int)(key >>> (64 - TABLE_BITS));
+	}
+
+	// Keep an entry unless the one in its slot is from this generation and was searched deeper
+	private void store(long key, int slot, int depth, int value, int bound, int bestMove) {
+		int info = tableInfo[slot];
+
+		if (info >>> 16 == generation && tableKeys[slot] != key && (info >> 8 & 0xff) > depth) {
+			return;
+		}
+		tableKeys[slot] = key;
+		tableValues[slot] = value;
+		tableInfo[slot] = generation << 16 | depth << 8 | bound << 3 | bestMove;
+	}
+
+	// Make every entry out of date without touching the table, except when the generation number wraps round
+	private void nextGeneration() {
+		generation = (generation + 1) & 0xffff;
+		if (generation == 0) {
+			Arrays.fill(tableInfo, 0);
+			generation = 1;
+		}
+	}
+}
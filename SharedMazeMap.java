@@ -0,0 +1,93 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/* What several robots exploring the same maze at once know about it between them. Every square is one int of an atomic array, so
+   the robots publish walls and passages, and claim the passages they head into, with a compare-and-set on that square alone
+   rather than a lock on the whole map. A square claimed or entered by one robot is left to it by the others, so no branch is
+   explored twice; squares seen but not claimed yet are the frontier any idle robot can take. Squares are indexed x * gridSize + y
+ */
+class SharedMazeMap {
+	private static final int UNKNOWN = 0;
+	private static final int WALL = -1;
+	private static final int SEEN = 1; // A passage nobody has claimed; robot r claims a square as 2 + 2r and enters it as 3 + 2r
+
+	private int gridSize;
+	private AtomicIntegerArray squares;
+	private AtomicInteger unexploredSquares = new AtomicInteger(); // Passages seen but not entered yet, claimed or not
+	private AtomicInteger robotCount = new AtomicInteger();
+	private volatile boolean started; // True once a robot entered a square, so that an empty map doesn't count as explored
+
+	public SharedMazeMap(int gridSize) {
+		this.gridSize = gridSize;
+		squares = new AtomicIntegerArray(gridSize * gridSize);
+	}
+
+	public int getGridSize() {
+		return gridSize;
+	}
+
+	// Return the number of a new robot, from 0
+	public int join() {
+		return robotCount.getAndIncrement();
+	}
+
+	public void addWall(int square) {
+		squares.set(square, WALL);
+	}
+
+	// Publish a passage seen next to a robot; only the first robot to see it counts it as unexplored
+	public void addPassage(int square) {
+		if (squares.get(square) == UNKNOWN && squares.compareAndSet(square, UNKNOWN, SEEN) == true) {
+			unexploredSquares.incrementAndGet();
+		}
+	}
+
+	// Claim a passage nobody has claimed, before heading into it; return false if another robot got there first
+	public boolean claim(int square, int robot) {
+		return squares.get(square) == SEEN && squares.compareAndSet(square, SEEN, 2 + 2 * robot) == true;
+	}
+
+	/* Publish the square a robot stands on. The robot's passages around it must be published first, so that the unexplored count
+	   never drops to 0 while a passage is still to be entered
+	 */
+	public void enter(int square, int robot) {
+		int state;
+
+		started = true;
+		do {
+			state = squares.get(square);
+			// Squares entered stay with the robot that entered them first
+			if (state >= 3 && state % 2 == 1) {
+				return;
+			}
+		} while (squares.compareAndSet(square, state, 3 + 2 * robot) == false);
+		if (state != UNKNOWN) {
+			unexploredSquares.decrementAndGet();
+		}
+	}
+
+	// Check whether a square was claimed or entered by a robot other than the given one
+	public boolean isTakenByOther(int square, int robot) {
+		int state = squares.get(square);
+
+		return state >= 2 && (state - 2) / 2 != robot;
+	}
+
+	public boolean isUnclaimed(int square) {
+		return squares.get(square) == SEEN;
+	}
+
+	// Check whether a square is known to be a passage, explored or not
+	public boolean isPassage(int square) {
+		return squares.get(square) >= SEEN;
+	}
+
+	public boolean isWall(int square) {
+		return squares.get(square) == WALL;
+	}
+
+	// Check whether every passage seen has been entered, so the map holds every square that can be reached
+	public boolean isExplored() {
+		return started == true && unexploredSquares.get() == 0;
+	}
+}
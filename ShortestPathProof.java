@@ -0,0 +1,191 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+
+/* Work out, while the robot explores, whether the shortest path from the starting square to the target is known yet. Distances
+   over the squares known to be passages only shrink as more of them are found, so they are kept up to date square by square; a
+   search which takes every square not known to be a wall for a passage can only find paths as short as the real ones or shorter,
+   so once it finds nothing shorter than the known path, no unexplored part of the maze can hold a shorter one. That search is
+   only repeated when a wall turns up on the path it found last, and not more often than keeps its cost to about
+   SQUARES_PER_CHECK expanded squares per step; this can delay the end of exploring by a few steps
+ */
+class ShortestPathProof {
+	private static final byte UNKNOWN = 0;
+	private static final byte PASSAGE = 1;
+	private static final byte WALL = 2;
+	private static final int MIN_SEARCH_INTERVAL = 16; // Fewest checks between two searches through unknown squares
+	private static final int SQUARES_PER_CHECK = 64; // Squares the searches may expand per check, on average
+
+	private int gridSize; // Width and height of the grid the squares are indexed in
+	private int width, height; // Size of the maze; the search doesn't leave it
+	private int startSquare, targetSquare; // Indices (x * gridSize + y) of the starting square and the target
+	private byte[] squareType; // What is known about each square: UNKNOWN, PASSAGE or WALL
+	private int[] knownSteps; // Steps from the starting square to each known passage over known passages, -1 if not connected yet
+	private int[] updatedSquares; // Queue of squares whose knownSteps went down and whose neighbours must be checked
+	private int[] stepsToSquare; // Number of steps from the start to each square reached in the current search
+	private int[] parentSquare; // The square each square was reached from in the current search
+	private int[] searchStamp; // The search in which each square was last reached; other entries are left over from older searches
+	private int currentSearch; // Number of the current search
+	private boolean[] onBoundPath; // True for the squares of the last path found through unknown squares
+	private int boundPathLength; // Length of that path, or -1 if a wall has been found on it since
+	private int checksSinceSearch; // Checks made since the last search through unknown squares
+	private int searchInterval; // Checks to wait before searching again, set from the number of squares the last search expanded
+	private IndexedSquareHeap openSquares; // The squares left to expand, ordered by steps plus Manhattan distance to the target
+
+	public ShortestPathProof(int gridSize) {
+		this.gridSize = gridSize;
+		squareType = new byte[gridSize * gridSize];
+		knownSteps = new int[gridSize * gridSize];
+		updatedSquares = new int[gridSize * gridSize];
+		stepsToSquare = new int[gridSize * gridSize];
+		parentSquare = new int[gridSize * gridSize];
+		searchStamp = new int[gridSize * gridSize];
+		onBoundPath = new boolean[gridSize * gridSize];
+		openSquares = new IndexedSquareHeap(gridSize * gridSize);
+	}
+
+	// Forget the last maze and start on a new one
+	public void start(int startSquare, int targetSquare, int width, int height) {
+		this.startSquare = startSquare;
+		this.targetSquare = targetSquare;
+		this.width = width;
+		this.height = height;
+		Arrays.fill(squareType, UNKNOWN);
+		Arrays.fill(knownSteps, -1);
+		Arrays.fill(onBoundPath, false);
+		boundPathLength = -1;
+		searchInterval = MIN_SEARCH_INTERVAL;
+		checksSinceSearch = searchInterval;
+		addPassage(startSquare);
+	}
+
+	public boolean isPassage(int square) {
+		return squareType[square] == PASSAGE;
+	}
+
+	public void addWall(int square) {
+		squareType[square] = WALL;
+		if (onBoundPath[square] == true) {
+			boundPathLength = -1;
+		}
+	}
+
+	// Record a passage, and shorten the known distances of the squares it leads to; the target is only a way in, not through
+	public void addPassage(int square) {
+		int head = 0, tail = 0;
+		int currentSquare;
+		int testSquare;
+
+		if (squareType[square] == PASSAGE) {
+			return;
+		}
+		squareType[square] = PASSAGE;
+		if (square == startSquare) {
+			knownSteps[square] = 0;
+		}
+		for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+			testSquare = square + Headings.x(heading) * gridSize + Headings.y(heading);
+			if (testSquare != targetSquare && knownSteps[testSquare] != -1 && (knownSteps[square] == -1 || knownSteps[testSquare] + 1 < knownSteps[square])) {
+				knownSteps[square] = knownSteps[testSquare] + 1;
+			}
+		}
+		if (knownSteps[square] == -1 || square == targetSquare) {
+			return;
+		}
+
+		updatedSquares[tail++] = square;
+		while (head < tail) {
+			currentSquare = updatedSquares[head++];
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				testSquare = currentSquare + Headings.x(heading) * gridSize + Headings.y(heading);
+				if (squareType[testSquare] == PASSAGE && (knownSteps[testSquare] == -1 || knownSteps[currentSquare] + 1 < knownSteps[testSquare])) {
+					knownSteps[testSquare] = knownSteps[currentSquare] + 1;
+					if (testSquare != targetSquare) {
+						updatedSquares[tail++] = testSquare;
+					}
+				}
+			}
+		}
+	}
+
+	// Return true if no path through unknown squares can be shorter than the shortest path through known passages
+	public boolean isProven() {
+		int knownLength = knownSteps[targetSquare];
+
+		if (knownLength == -1) {
+			return false;
+		}
+		// The last path through unknown squares is still open and still shorter
+		if (boundPathLength != -1 && boundPathLength < knownLength) {
+			return false;
+		}
+		if (++checksSinceSearch < searchInterval) {
+			return false;
+		}
+		checksSinceSearch = 0;
+		return searchShorterPath(knownLength - 1) == false;
+	}
+
+	// A* for a path of at most maxLength steps which may go through unknown squares; remember it if there is one
+	private boolean searchShorterPath(int maxLength) {
+		int currentSquare;
+		int currentX, currentY;
+		int testX, testY;
+		int testSquare;
+		int steps;
+		int distance;
+		int expandedSquares = 0;
+		int targetX = targetSquare / gridSize;
+		int targetY = targetSquare % gridSize;
+
+		currentSearch++;
+		openSquares.clear();
+		stepsToSquare[startSquare] = 0;
+		searchStamp[startSquare] = currentSearch;
+		openSquares.addOrDecrease(startSquare, 0);
+
+		while (openSquares.isEmpty() == false) {
+			currentSquare = openSquares.removeFirst();
+			if (currentSquare == targetSquare) {
+				rememberBoundPath();
+				searchInterval = Math.max(MIN_SEARCH_INTERVAL, expandedSquares / SQUARES_PER_CHECK);
+				return true;
+			}
+			expandedSquares++;
+			currentX = currentSquare / gridSize;
+			currentY = currentSquare % gridSize;
+			steps = stepsToSquare[currentSquare] + 1;
+
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				testX = currentX + Headings.x(heading);
+				testY = currentY + Headings.y(heading);
+				testSquare = testX * gridSize + testY;
+				if (testX < 0 || testX >= width || testY < 0 || testY >= height || squareType[testSquare] == WALL) {
+					continue;
+				}
+				if (searchStamp[testSquare] == currentSearch && stepsToSquare[testSquare] <= steps) {
+					continue;
+				}
+				distance = Math.abs(testX - targetX) + Math.abs(testY - targetY);
+				if (steps + distance > maxLength) {
+					continue;
+				}
+				stepsToSquare[testSquare] = steps;
+				parentSquare[testSquare] = currentSquare;
+				searchStamp[testSquare] = currentSearch;
+				// Among squares with the same estimate, expand the one closest to the target first, or an open area is searched square by square
+				openSquares.addOrDecrease(testSquare, (steps + distance) * 1024 + distance);
+			}
+		}
+
+		return false;
+	}
+
+	private void rememberBoundPath() {
+		Arrays.fill(onBoundPath, false);
+		for (int square = targetSquare; square != startSquare; square = parentSquare[square]) {
+			onBoundPath[square] = true;
+		}
+		onBoundPath[startSquare] = true;
+		boundPathLength = stepsToSquare[targetSquare];
+	}
+}
@@ -0,0 +1,73 @@
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import jdk.jfr.EventType;
+
+/* Metrics of the solver's hot paths, shared by every controller in the program. Histograms are only kept when
+   -Dgrandfinale.metrics=<file.csv> is set, and the file is written again at the end of every run; the JFR events are
+   recorded whenever a flight recording has them enabled
+ */
+class SolverMetrics {
+	private static final String CSV_FILE = System.getProperty("grandfinale.metrics");
+	private static final EventType POLL_EVENT = EventType.getEventType(ControlRobotEvent.class);
+	private static final EventType SEARCH_EVENT = EventType.getEventType(PathSearchEvent.class);
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final Map<String, ValueHistogram> histograms = new ConcurrentHashMap<String, ValueHistogram>();
+
+	// True if polls should be measured at all
+	public static boolean isRecording() {
+		return CSV_FILE != null || POLL_EVENT.isEnabled() == true || SEARCH_EVENT.isEnabled() == true;
+	}
+
+	public static boolean isRecordingSearches() {
+		return CSV_FILE != null || SEARCH_EVENT.isEnabled() == true;
+	}
+
+	public static void record(String name, long value) {
+		if (CSV_FILE != null) {
+			histograms.computeIfAbsent(name, key -> new ValueHistogram()).record(value);
+		}
+	}
+
+	// Return the bytes allocated by this thread so far, or 0 if the JVM can't tell
+	public static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	// Return the CPU time this thread has used so far, which leaves out the time it was waiting for the CPU, or 0 if the JVM can't tell
+	public static long cpuNanos() {
+		if (THREADS.isCurrentThreadCpuTimeSupported() == true) {
+			return THREADS.getCurrentThreadCpuTime();
+		}
+		return 0;
+	}
+
+	// Write every histogram to the CSV file, one line per metric
+	public static synchronized void writeCsv() {
+		List<String> names;
+
+		if (CSV_FILE == null) {
+			return;
+		}
+		names = new ArrayList<String>(histograms.keySet());
+		Collections.sort(names);
+		try (PrintWriter output = new PrintWriter(Files.newBufferedWriter(Paths.get(CSV_FILE)))) {
+			output.println("metric,count,min,mean,p50,p90,p99,p99.9,max");
+			for (String name : names) {
+				ValueHistogram histogram = histograms.get(name);
+				output.printf(Locale.ROOT, "%s,%d,%d,%.1f,%d,%d,%d,%d,%d%n", name, histogram.getCount(), histogram.getMinimum(), histogram.getMean(),
+							  histogram.valueAtPercentile(50), histogram.valueAtPercentile(90), histogram.valueAtPercentile(99),
+							  histogram.valueAtPercentile(99.9), histogram.getMaximum());
+			}
+		}
+		catch (IOException e) {
+			System.err.println("Could not write metrics: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,44 @@
+import java.util.*;
+
+/* Source of the solver's random choices, SplitMix64, so that a run can be repeated exactly. Every maze starts again from a seed:
+   the one fixed by fixSeed or -Dgrandfinale.seed=<seed> if either is set, so the same maze always gets the same choices, and
+   otherwise a new seed each time, which can be read back with getSeed(). Unlike Math.random, the state can be read, which step
+   traces check against
+ */
+class SolverRandom {
+	private long seed;
+	private long state;
+	private Long fixedSeed; // Seed every maze starts from, or null to go by -Dgrandfinale.seed
+
+	// Start every maze from this seed from now on
+	public void fixSeed(long seed) {
+		fixedSeed = seed;
+	}
+
+	// Start again from the seed asked for, or a new one
+	public void restart() {
+		Long fixedSeed = this.fixedSeed != null ? this.fixedSeed : Long.getLong("grandfinale.seed");
+
+		seed = fixedSeed != null ? fixedSeed : new Random().nextLong();
+		state = seed;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getState() {
+		return state;
+	}
+
+	// Return a number from 0 to bound - 1
+	public int nextInt(int bound) {
+		long z = state += 0x9e3779b97f4a7c15L;
+
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		z ^= z >>> 31;
+		// The top 32 bits scaled to the bound; the bias is far too small to matter for a handful of headings
+		return (int)(((z >>> 32) * bound) >>> 32);
+	}
+}
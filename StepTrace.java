@@ -0,0 +1,130 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.io.*;
+import java.awt.Point;
+
+/* A step trace read back a chunk at a time: the maze and seed from the header, then for each chunk its checkpoint and headings.
+   A trace replayed by a controller built the same way, with the same seed, should give the same heading at every poll
+ */
+public class StepTrace implements Closeable {
+	static final int FILE_MAGIC = 0x524d5a54; // Marks a step trace file ("RMZT")
+	static final int VERSION = 2;
+	static final int CHECKPOINT_INTERVAL = 1024; // Polls between checkpoints; a multiple of 4, so the headings fill whole bytes
+	static final int CHECKPOINT_LENGTH = 30;
+
+	private DataInputStream input;
+	private long seed;
+	private boolean directedExploration;
+	private Maze maze;
+	private byte[] headings = new byte[CHECKPOINT_INTERVAL / 4];
+	private int headingCount; // Polls in the current chunk
+	// The current chunk's checkpoint
+	private long firstPoll;
+	private int run;
+	private Point location = new Point();
+	private int heading;
+	private int searchMode;
+	private long randomState;
+
+	private StepTrace() {
+	}
+
+	public static StepTrace open(File file) throws IOException {
+		StepTrace trace = new StepTrace();
+		int width, height;
+		byte[] walls;
+
+		trace.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (trace.input.readInt() != FILE_MAGIC || trace.input.readInt() != VERSION) {
+				throw new IOException("Not a step trace file: " + file);
+			}
+			trace.seed = trace.input.readLong();
+			trace.directedExploration = trace.input.readBoolean();
+			width = trace.input.readInt();
+			height = trace.input.readInt();
+			trace.maze = new Maze(width, height);
+			trace.maze.setStart(trace.input.readInt(), trace.input.readInt());
+			trace.maze.setFinish(trace.input.readInt(), trace.input.readInt());
+			walls = new byte[(width * height + 7) / 8];
+			trace.input.readFully(walls);
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					trace.maze.setCellType(x, y, (walls[(y * width + x) / 8] & (1 << ((y * width + x) % 8))) != 0 ? Maze.WALL : Maze.PASSAGE);
+				}
+			}
+		}
+		catch (EOFException e) {
+			trace.input.close();
+			throw new IOException("Step trace file is cut short: " + file);
+		}
+		return trace;
+	}
+
+	// Read the next chunk; returns false at the end of the trace
+	public boolean nextChunk() throws IOException {
+		try {
+			firstPoll = input.readLong();
+		}
+		catch (EOFException e) {
+			return false;
+		}
+		run = input.readInt();
+		location.setLocation(input.readInt(), input.readInt());
+		heading = IRobot.NORTH + input.readByte();
+		searchMode = input.readByte();
+		randomState = input.readLong();
+		headingCount = input.readShort();
+		input.readFully(headings, 0, (headingCount + 3) / 4);
+		return true;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	// True if the traced controller explored towards the target rather than the whole maze
+	public boolean isDirectedExploration() {
+		return directedExploration;
+	}
+
+	public Maze getMaze() {
+		return maze;
+	}
+
+	public int getHeadingCount() {
+		return headingCount;
+	}
+
+	// The heading the robot was left facing by a poll of the current chunk
+	public int getHeading(int poll) {
+		return IRobot.NORTH + ((headings[poll / 4] >> (poll % 4 * 2)) & 3);
+	}
+
+	public long getFirstPoll() {
+		return firstPoll;
+	}
+
+	public int getRun() {
+		return run;
+	}
+
+	public Point getLocation() {
+		return new Point(location);
+	}
+
+	public int getCheckpointHeading() {
+		return heading;
+	}
+
+	public int getSearchMode() {
+		return searchMode;
+	}
+
+	public long getRandomState() {
+		return randomState;
+	}
+
+	public void close() throws IOException {
+		input.close();
+	}
+}
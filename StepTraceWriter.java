@@ -0,0 +1,86 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/* Writes the steps a controller took on one maze to a binary trace file, so they can be replayed by StepTrace. The file is a
+   header (magic, version, the seed of the controller's random choices, whether exploring was directed, width, height, start,
+   finish), the maze's walls at one bit per square as in a binary maze file, and then chunks of up to CHECKPOINT_INTERVAL polls.
+   Each chunk starts with a checkpoint of the state before its first poll (poll number, run, the robot's square and heading,
+   search mode and the state of the random choices) and a count of polls, followed by the heading each poll left the robot
+   facing, 2 bits each. A chunk ends early at the end of every run, so a run always starts with a checkpoint. A traced maze is
+   always explored and planned in the poll that needs it, so the header doesn't need the planner or cache settings
+ */
+class StepTraceWriter implements Closeable {
+	private DataOutputStream output;
+	private byte[] headings = new byte[StepTrace.CHECKPOINT_INTERVAL / 4]; // Headings of the chunk's polls, 4 to a byte
+	private int headingCount; // Polls in the chunk so far
+	private long polls; // Polls recorded before the chunk
+	private ByteBuffer checkpoint = ByteBuffer.allocate(StepTrace.CHECKPOINT_LENGTH); // Checkpoint of the chunk, written with its headings
+
+	public StepTraceWriter(File file, long seed, boolean directedExploration, Maze maze) throws IOException {
+		int width = maze.getWidth();
+		byte[] walls = new byte[(width * maze.getHeight() + 7) / 8];
+
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		output.writeInt(StepTrace.FILE_MAGIC);
+		output.writeInt(StepTrace.VERSION);
+		output.writeLong(seed);
+		output.writeBoolean(directedExploration);
+		output.writeInt(width);
+		output.writeInt(maze.getHeight());
+		output.writeInt(maze.getStart().x);
+		output.writeInt(maze.getStart().y);
+		output.writeInt(maze.getFinish().x);
+		output.writeInt(maze.getFinish().y);
+		for (int y = 0; y < maze.getHeight(); y++) {
+			for (int x = 0; x < width; x++) {
+				if (maze.getCellType(x, y) == Maze.WALL) {
+					walls[(y * width + x) / 8] |= 1 << ((y * width + x) % 8);
+				}
+			}
+		}
+		output.write(walls);
+	}
+
+	// True if the next poll starts a chunk, and so needs a checkpoint first
+	public boolean needsCheckpoint() {
+		return headingCount == 0 && checkpoint.position() == 0;
+	}
+
+	public void checkpoint(int run, int x, int y, int heading, int searchMode, long randomState) {
+		checkpoint.putLong(polls).putInt(run).putInt(x).putInt(y).put((byte)(heading - IRobot.NORTH)).put((byte)searchMode).putLong(randomState);
+	}
+
+	// Record the heading a poll left the robot facing; a full chunk is written out
+	public void record(int heading) throws IOException {
+		headings[headingCount / 4] |= (heading - IRobot.NORTH) << (headingCount % 4 * 2);
+		headingCount++;
+		if (headingCount == StepTrace.CHECKPOINT_INTERVAL) {
+			writeChunk();
+		}
+	}
+
+	// Write out the chunk so far, so that the next run starts a new one, and make sure everything is in the file
+	public void endRun() throws IOException {
+		if (headingCount > 0) {
+			writeChunk();
+		}
+		output.flush();
+	}
+
+	public void close() throws IOException {
+		endRun();
+		output.close();
+	}
+
+	private void writeChunk() throws IOException {
+		output.write(checkpoint.array(), 0, checkpoint.position());
+		output.writeShort(headingCount);
+		output.write(headings, 0, (headingCount + 3) / 4);
+		polls += headingCount;
+		Arrays.fill(headings, (byte)0);
+		headingCount = 0;
+		checkpoint.clear();
+	}
+}
@@ -0,0 +1,325 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+import java.io.*;
+import java.awt.Point;
+import javax.swing.*;
+import javax.swing.event.*;
+
+/* Eller's algorithm: the maze is carved one row of cells at a time, keeping only the set each cell of the current row belongs to,
+   so the memory used is proportional to the width however tall the maze is. Cells are on odd coordinates, as with PrimGenerator,
+   and the sets are kept in a union-find over labels which are renumbered at the start of every row. With a loop probability above
+   0, some walls between cells which are already connected are knocked down as well, giving a loopy maze. The same seed, size and
+   loop probability always give the same maze
+ */
+public class StreamingMazeGenerator implements IMazeGenerator {
+	private static final int MIN_SIZE = 5;
+
+	private int mazeWidth = 31; // Width and height in squares, walls included; rounded down to odd numbers
+	private int mazeHeight = 31;
+	private double loopProbability = 0; // Chance of knocking down a wall between two cells already in the same set
+	private long seed;
+	private boolean seedFixed; // If false, every maze gets a new seed, which can be read back with getSeed()
+
+	public StreamingMazeGenerator() {
+	}
+
+	public StreamingMazeGenerator(int mazeWidth, int mazeHeight, double loopProbability, long seed) {
+		setSize(mazeWidth, mazeHeight);
+		setLoopProbability(loopProbability);
+		setSeed(seed);
+	}
+
+	public void setSize(int mazeWidth, int mazeHeight) {
+		this.mazeWidth = mazeWidth;
+		this.mazeHeight = mazeHeight;
+	}
+
+	public void setLoopProbability(double loopProbability) {
+		this.loopProbability = Math.max(0, Math.min(1, loopProbability));
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+		seedFixed = true;
+	}
+
+	// Seed of the last maze generated, or of the next one if the seed was set
+	public long getSeed() {
+		return seed;
+	}
+
+	public Maze generateMaze() {
+		int width = oddSize(mazeWidth);
+		int height = oddSize(mazeHeight);
+		Maze maze = new Maze(width, height);
+
+		try {
+			generateRows((y, cellTypes) -> {
+				for (int x = 0; x < width; x++) {
+					maze.setCellType(x, y, cellTypes[x]);
+				}
+			});
+		}
+		catch (IOException e) {
+			// Only a sink writing to a file can throw
+			throw new UncheckedIOException(e);
+		}
+		maze.setStart(1, 1);
+		maze.setFinish(width - 2, height - 2);
+		return maze;
+	}
+
+	// Write the maze straight to a file in the environment's format, a row at a time, without ever holding the whole maze
+	public void writeMaze(File file) throws IOException {
+		int width = oddSize(mazeWidth);
+		int height = oddSize(mazeHeight);
+		byte[] line = new byte[width + 1];
+
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+			output.write(("Type: WarwickMaze\nVersion: 1.0\nWidth: " + width + "\nHeight: " + height + "\nHeaderEnd\n").getBytes("US-ASCII"));
+			line[width] = '\n';
+			generateRows((y, cellTypes) -> {
+				for (int x = 0; x < width; x++) {
+					line[x] = (byte)(cellTypes[x] == Maze.WALL ? '#' : '.');
+				}
+				// The start is drawn as the robot facing north, as Maze.writeToFile does when it isn't given a robot
+				if (y == 1) {
+					line[1] = '^';
+				}
+				if (y == height - 2) {
+					line[width - 2] = 'F';
+				}
+				output.write(line);
+			});
+		}
+	}
+
+	// Carve the maze and pass it to the sink row by row
+	public void generateRows(MazeRowSink sink) throws IOException {
+		int width = oddSize(mazeWidth);
+		int height = oddSize(mazeHeight);
+		int cells = (width - 1) / 2; // Cells in a row
+		int rows = (height - 1) / 2;
+		int[] label = new int[cells]; // Set label of each cell in the current row, -1 for a cell not joined from above
+		int[] parent = new int[cells]; // Union-find over the labels
+		int[] setSize = new int[cells]; // Cells of each set in the current row, counted for picking the ones which carve down
+		int[] downCount = new int[cells]; // Cells of each set which carve down
+		int[] downCell = new int[cells]; // A cell of each set picked at random, which carves down if no other does
+		int[] cellRow = new int[width]; // The row through the cells, with the walls between them
+		int[] wallRow = new int[width]; // The row below it, with the passages down
+		int nextLabel, root;
+		boolean lastRow;
+		Random random;
+
+		if (seedFixed == false) {
+			seed = new Random().nextLong();
+		}
+		random = new Random(seed);
+
+		Arrays.fill(cellRow, Maze.WALL);
+		sink.acceptRow(0, cellRow);
+		Arrays.fill(label, -1);
+		for (int row = 0; row < rows; row++) {
+			lastRow = row == rows - 1;
+
+			// Renumber the sets carried down from the last row as 0, 1, 2...; cells not joined from above get sets of their own
+			Arrays.fill(parent, -1);
+			nextLabel = 0;
+			for (int i = 0; i < cells; i++) {
+				if (label[i] != -1) {
+					if (parent[label[i]] == -1) {
+						parent[label[i]] = nextLabel++;
+					}
+					label[i] = parent[label[i]];
+				}
+			}
+			for (int i = 0; i < cells; i++) {
+				if (label[i] == -1) {
+					label[i] = nextLabel++;
+				}
+			}
+			for (int i = 0; i < cells; i++) {
+				parent[i] = i;
+			}
+
+			// Join neighbouring cells of different sets at random, and on the last row always, so that the maze is connected
+			Arrays.fill(cellRow, Maze.WALL);
+			Arrays.fill(wallRow, Maze.WALL);
+			cellRow[1] = Maze.PASSAGE;
+			for (int i = 1; i < cells; i++) {
+				cellRow[2 * i + 1] = Maze.PASSAGE;
+				if (find(parent, label[i - 1]) != find(parent, label[i])) {
+					if (lastRow == true || random.nextBoolean() == true) {
+						cellRow[2 * i] = Maze.PASSAGE;
+						parent[find(parent, label[i])] = find(parent, label[i - 1]);
+					}
+				}
+				else if (loopProbability > 0 && random.nextDouble() < loopProbability) {
+					cellRow[2 * i] = Maze.PASSAGE;
+				}
+			}
+
+			if (lastRow == false) {
+				// Every set carries on into the next row through at least one cell, picked by reservoir sampling if none carves down on its own
+				Arrays.fill(setSize, 0);
+				Arrays.fill(downCount, 0);
+				for (int i = 0; i < cells; i++) {
+					root = find(parent, label[i]);
+					label[i] = root;
+					setSize[root]++;
+					if (random.nextInt(setSize[root]) == 0) {
+						downCell[root] = i;
+					}
+					if (random.nextBoolean() == true) {
+						wallRow[2 * i + 1] = Maze.PASSAGE;
+						downCount[root]++;
+					}
+				}
+				for (int i = 0; i < cells; i++) {
+					root = label[i];
+					if (downCount[root] == 0 && downCell[root] == i) {
+						wallRow[2 * i + 1] = Maze.PASSAGE;
+					}
+				}
+				// Cells which don't carve down leave their set behind
+				for (int i = 0; i < cells; i++) {
+					if (wallRow[2 * i + 1] == Maze.WALL) {
+						label[i] = -1;
+					}
+				}
+			}
+
+			sink.acceptRow(2 * row + 1, cellRow);
+			sink.acceptRow(2 * row + 2, wallRow);
+		}
+	}
+
+	private static int find(int[] parent, int label) {
+		int root = label;
+
+		while (parent[root] != root) {
+			root = parent[root];
+		}
+		// Point every label on the way straight at the root
+		while (parent[label] != root) {
+			int next = parent[label];
+
+			parent[label] = root;
+			label = next;
+		}
+		return root;
+	}
+
+	private static int oddSize(int size) {
+		size = Math.max(MIN_SIZE, size);
+		return size % 2 == 0 ? size - 1 : size;
+	}
+
+	public JPanel getConfigurator() {
+		return new StreamingConfigPanel();
+	}
+
+	public String getDescription() {
+		return "Streaming Eller generator (row by row, seeded, optional loops)";
+	}
+
+	// Spinners for the size, loop probability and seed; a seed of 0 means a new seed for every maze
+	private class StreamingConfigPanel extends JPanel implements ChangeListener {
+		private static final long serialVersionUID = 1L;
+
+		private JSpinner widthSpinner = new JSpinner(new SpinnerNumberModel(mazeWidth, MIN_SIZE, Integer.MAX_VALUE, 2));
+		private JSpinner heightSpinner = new JSpinner(new SpinnerNumberModel(mazeHeight, MIN_SIZE, Integer.MAX_VALUE, 2));
+		private JSpinner loopSpinner = new JSpinner(new SpinnerNumberModel(loopProbability, 0.0, 1.0, 0.01));
+		private JSpinner seedSpinner = new JSpinner(new SpinnerNumberModel(seedFixed ? seed : 0L, Long.MIN_VALUE, Long.MAX_VALUE, 1L));
+
+		public StreamingConfigPanel() {
+			add(new JLabel("Width"));
+			add(widthSpinner);
+			add(new JLabel("Height"));
+			add(heightSpinner);
+			add(new JLabel("Loops"));
+			add(loopSpinner);
+			add(new JLabel("Seed"));
+			add(seedSpinner);
+			widthSpinner.addChangeListener(this);
+			heightSpinner.addChangeListener(this);
+			loopSpinner.addChangeListener(this);
+			seedSpinner.addChangeListener(this);
+		}
+
+		public void stateChanged(ChangeEvent event) {
+			long newSeed = ((Number)seedSpinner.getValue()).longValue();
+
+			setSize(((Number)widthSpinner.getValue()).intValue(), ((Number)heightSpinner.getValue()).intValue());
+			setLoopProbability(((Number)loopSpinner.getValue()).doubleValue());
+			if (newSeed == 0) {
+				seedFixed = false;
+			}
+			else {
+				setSeed(newSeed);
+			}
+		}
+	}
+
+	// Write the maze straight to a binary maze file (see MappedMaze), one bit per square
+	public void writeBinaryMaze(File file) throws IOException {
+		int width = oddSize(mazeWidth);
+		int height = oddSize(mazeHeight);
+
+		try (BinaryMazeWriter writer = new BinaryMazeWriter(file, width, height, new Point(1, 1), new Point(width - 2, height - 2))) {
+			generateRows(writer);
+		}
+	}
+
+	/* Write a maze to a file without the GUI, e.g. -width 20001 -height 20001 -loops 0.05 -seed 42 -out big.maze; with -format binary
+	   the file is a binary maze file, and -distances true adds the distance section to it
+	 */
+	public static void main(String[] args) throws Exception {
+		StreamingMazeGenerator generator = new StreamingMazeGenerator();
+		File file = new File("streamed.maze");
+		boolean binary = false;
+		boolean distances = false;
+		long startTime;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "-width":
+					generator.mazeWidth = Integer.parseInt(args[i + 1]);
+					break;
+				case "-height":
+					generator.mazeHeight = Integer.parseInt(args[i + 1]);
+					break;
+				case "-loops":
+					generator.setLoopProbability(Double.parseDouble(args[i + 1]));
+					break;
+				case "-seed":
+					generator.setSeed(Long.parseLong(args[i + 1]));
+					break;
+				case "-out":
+					file = new File(args[i + 1]);
+					break;
+				case "-format":
+					binary = "binary".equals(args[i + 1]);
+					break;
+				case "-distances":
+					distances = Boolean.parseBoolean(args[i + 1]);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		startTime = System.nanoTime();
+		if (binary == true) {
+			generator.writeBinaryMaze(file);
+			if (distances == true) {
+				MappedMaze.addDistances(file);
+			}
+		}
+		else {
+			generator.writeMaze(file);
+		}
+		System.out.printf("Wrote a %dx%d maze with seed %d to %s in %.2f s%n", oddSize(generator.mazeWidth), oddSize(generator.mazeHeight),
+			generator.getSeed(), file, (System.nanoTime() - startTime) / 1e9);
+	}
+}
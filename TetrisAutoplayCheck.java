@@ -0,0 +1,111 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.awt.Point;
+
+// The -tetris autoplay option of the headless runner: time the Tetris autoplayer once a blank maze has been solved
+class TetrisAutoplayCheck {
+	private static final int WARMUP_PLACEMENTS = 1000; // Tetriminos placed before the autoplayer is timed
+
+	/* Solve a blank maze for the four runs, then let the controller's autoplayer play the Tetris game the fifth run starts, and
+	   print how many tetriminos it placed a second once WARMUP_PLACEMENTS were placed. Each poll either brings in a new tetrimino,
+	   planning where it goes, or moves it there and drops it; returns false if the game never started
+	 */
+	public static boolean run(int size, int placements, int threads) throws Exception {
+		Maze maze = HeadlessRunner.createGenerator("Blank", size).generateMaze();
+		GrandFinale controller = new GrandFinale();
+		HeadlessRobot robot = new HeadlessRobot(maze);
+		TetrisAutoplayer autoplayer;
+		long startTime = 0, polls = 0, startLines = 0, startGames = 0, elapsedTime;
+
+		for (int run = 0; run < HeadlessRunner.MAX_RUNS; run++) {
+			while (robot.isAtTarget() == false) {
+				controller.controlRobot(robot);
+				robot.advance();
+			}
+			controller.reset();
+			robot.reset();
+		}
+		// The first poll of the fifth run starts the game; the robot stays where it is from then on
+		controller.controlRobot(robot);
+		autoplayer = controller.getTetrisAutoplayer();
+		if (controller.getSearchMode() != 5 || autoplayer == null) {
+			System.out.println("The Tetris game did not start");
+			return false;
+		}
+		if (blockedTurnKeepsTetrimino(controller, robot) == false) {
+			return false;
+		}
+
+		while (autoplayer.getPlacements() < WARMUP_PLACEMENTS + placements) {
+			if (autoplayer.getPlacements() == WARMUP_PLACEMENTS && startTime == 0) {
+				startTime = System.nanoTime();
+				startLines = autoplayer.getLinesCleared();
+				startGames = autoplayer.getGamesLost();
+				polls = 0;
+			}
+			controller.controlRobot(robot);
+			polls++;
+		}
+		elapsedTime = System.nanoTime() - startTime;
+
+		System.out.printf("%d tetriminos placed on a %dx%d board in %.2f s on %d threads: %.0f placements/sec, %d polls, %d lines cleared, %d games lost%n",
+			placements, maze.getWidth() - 2, maze.getHeight() - 2, elapsedTime / 1e9, threads, placements / (elapsedTime / 1e9), polls,
+			autoplayer.getLinesCleared() - startLines, autoplayer.getGamesLost() - startGames);
+		return true;
+	}
+
+	/* Fill every square of the board around the next tetrimino that isn't a square, so it can't turn, and check that turning it
+	   leaves both its squares and its rotation index as they were; the filled lines are cleared once the tetrimino lands
+	 */
+	private static boolean blockedTurnKeepsTetrimino(GrandFinale controller, HeadlessRobot robot) {
+		Maze maze = robot.getMaze();
+		TetrisBitboard board = controller.getTetrisBoard();
+		Point[] before = controller.getFallingTetrimino();
+		Point[] after;
+		int index;
+
+		while (before == null || isSquare(before) == true) {
+			controller.controlRobot(robot);
+			before = controller.getFallingTetrimino();
+		}
+		for (int y = 1; y < maze.getHeight() - 1; y++) {
+			for (int x = 1; x < maze.getWidth() - 1; x++) {
+				if (contains(before, x, y) == false) {
+					board.fillSquare(x, y);
+				}
+			}
+		}
+		index = controller.getTetriminoIndex();
+		controller.turnTetrimino(robot);
+		after = controller.getFallingTetrimino();
+
+		for (int i = 0; i <= 3; i++) {
+			if (after[i].equals(before[i]) == false || controller.getTetriminoIndex() != index) {
+				System.out.println("A tetrimino that could not turn changed from rotation " + index + " to " + controller.getTetriminoIndex());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Check whether the squares make a 2x2 square, which looks the same turned
+	private static boolean isSquare(Point[] squares) {
+		int left = Integer.MAX_VALUE, right = Integer.MIN_VALUE, top = Integer.MAX_VALUE, bottom = Integer.MIN_VALUE;
+
+		for (int i = 0; i < squares.length; i++) {
+			left = Math.min(left, squares[i].x);
+			right = Math.max(right, squares[i].x);
+			top = Math.min(top, squares[i].y);
+			bottom = Math.max(bottom, squares[i].y);
+		}
+		return right - left == 1 && bottom - top == 1;
+	}
+
+	private static boolean contains(Point[] squares, int x, int y) {
+		for (int i = 0; i < squares.length; i++) {
+			if (squares[i].x == x && squares[i].y == y) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
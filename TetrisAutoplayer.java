@@ -0,0 +1,319 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.awt.Point;
+
+/* Plays the Tetris game by itself. For each new tetrimino it tries every rotation in every column it can be dropped straight
+   down into, scores the board each one would leave with the usual four features (aggregate height, complete lines, holes and
+   bumpiness, weighted as tuned by Yiyuan Lee's genetic algorithm) and keeps the best. Those features score a tetrimino the same
+   wherever it lands without holes, and on a board as wide as a maze they build a staircase against one wall that never
+   completes a line, so the height the tetrimino lands at counts against it too. The candidates are scored in parallel on a
+   fork-join pool (-Dgrandfinale.tetris.threads, the number of processors by default), CANDIDATES_PER_TASK to a task, so a
+   narrow board is scored by a single task; the board is only read while they run. A candidate which completes no line only
+   changes the columns it lands on, so it is scored from the board's column heights and holes, worked out once per tetrimino;
+   one which completes lines is scored by going over the whole board as it would be after they are removed
+ */
+class TetrisAutoplayer {
+	private static final double HEIGHT_WEIGHT = -0.510066;
+	private static final double LINES_WEIGHT = 0.760666;
+	private static final double HOLES_WEIGHT = -0.35663;
+	private static final double BUMPINESS_WEIGHT = -0.184483;
+	private static final double LANDING_WEIGHT = -0.2; // For the average height of the tetrimino's squares once it has landed
+	private static final int CANDIDATES_PER_TASK = 64;
+	private static final ForkJoinPool POOL = new ForkJoinPool(Integer.getInteger("grandfinale.tetris.threads", Runtime.getRuntime().availableProcessors())); // Shared by every controller
+
+	private TetrisBitboard board;
+	private Point[][] tetriminoList; // Every tetrimino in each of its 4 rotations, where it appears at the top of the maze
+	private int width, height; // Size of the maze; the board is the inside of its border
+	private int[] columnTop; // Row of the highest landed square in each column, or height - 1 if the column is empty
+	private int[] columnHoles; // Empty squares below that square in each column
+	private int[] rowFill; // Landed squares in each row
+	private int totalHeight, totalHoles, totalBumpiness; // The features of the board as it is
+	private double[] scores; // Score of each candidate, rotation * width + leftmost column; NEGATIVE_INFINITY if it can't be dropped there
+	private int plannedIndex; // The tetrimino's index in the list once it is turned as planned
+	private int plannedShift; // Columns to move it by once it is turned, right if positive
+	private long placements; // Tetriminos planned for
+	private long linesCleared;
+	private long gamesLost;
+
+	public TetrisAutoplayer(TetrisBitboard board, Point[][] tetriminoList, int width, int height) {
+		this.board = board;
+		this.tetriminoList = tetriminoList;
+		this.width = width;
+		this.height = height;
+		columnTop = new int[width];
+		columnHoles = new int[width];
+		rowFill = new int[height];
+		scores = new double[4 * width];
+	}
+
+	/* Choose where the falling tetrimino, at the given index of the list, should go; read the plan back with getPlannedIndex and
+	   getPlannedShift. Returns false if it can't be dropped anywhere, and the plan is then to leave it as it is
+	 */
+	public boolean plan(Point[] tetrimino, int tetriminoIndex) {
+		int firstRotation = tetriminoIndex / 4 * 4;
+		int offsetX = tetrimino[0].x - tetriminoList[tetriminoIndex][0].x;
+		int offsetY = tetrimino[0].y - tetriminoList[tetriminoIndex][0].y;
+		int best = -1;
+
+		measureBoard();
+		POOL.invoke(new CandidateTask(this, 0, scores.length, firstRotation, offsetX, offsetY));
+		for (int candidate = 0; candidate < scores.length; candidate++) {
+			if (scores[candidate] != Double.NEGATIVE_INFINITY && (best == -1 || scores[candidate] > scores[best])) {
+				best = candidate;
+			}
+		}
+		placements++;
+		plannedIndex = tetriminoIndex;
+		plannedShift = 0;
+		if (best == -1) {
+			return false;
+		}
+		plannedIndex = firstRotation + best / width;
+		plannedShift = best % width - (leftmostX(plannedIndex) + offsetX);
+		return true;
+	}
+
+	public int getPlannedIndex() {
+		return plannedIndex;
+	}
+
+	public int getPlannedShift() {
+		return plannedShift;
+	}
+
+	public void recordLines(int lines) {
+		linesCleared += lines;
+	}
+
+	public void recordGameLost() {
+		gamesLost++;
+	}
+
+	public long getPlacements() {
+		return placements;
+	}
+
+	public long getLinesCleared() {
+		return linesCleared;
+	}
+
+	public long getGamesLost() {
+		return gamesLost;
+	}
+
+	// Work out the column heights, holes and row counts of the landed squares, which every candidate starts from
+	private void measureBoard() {
+		totalHeight = 0;
+		totalHoles = 0;
+		totalBumpiness = 0;
+		Arrays.fill(rowFill, 0);
+		for (int x = 1; x < width - 1; x++) {
+			columnTop[x] = height - 1;
+			columnHoles[x] = 0;
+			for (int y = 1; y < height - 1; y++) {
+				if (board.isBlocked(x, y) == true) {
+					if (columnTop[x] == height - 1) {
+						columnTop[x] = y;
+					}
+					rowFill[y]++;
+				}
+				else if (columnTop[x] != height - 1) {
+					columnHoles[x]++;
+				}
+			}
+			totalHeight += height - 1 - columnTop[x];
+			totalHoles += columnHoles[x];
+			if (x > 1) {
+				totalBumpiness += Math.abs(columnTop[x] - columnTop[x - 1]);
+			}
+		}
+	}
+
+	private int leftmostX(int index) {
+		int leftmost = Integer.MAX_VALUE;
+
+		for (int i = 0; i < 4; i++) {
+			leftmost = Math.min(leftmost, tetriminoList[index][i].x);
+		}
+		return leftmost;
+	}
+
+	/* Score the board left by dropping the tetrimino at the given index of the list, moved by the offset, so that its leftmost
+	   square is in the given column. The squares' arrays are scratch space of the calling task
+	 */
+	private double score(int index, int offsetX, int offsetY, int leftmostColumn, int[] squareX, int[] squareY) {
+		int shift = leftmostColumn - (leftmostX(index) + offsetX);
+		int drop = Integer.MAX_VALUE;
+		int lines = 0;
+		int firstColumn = Integer.MAX_VALUE, lastColumn = 0;
+		int heightSum = totalHeight, holes = totalHoles, bumpiness = totalBumpiness;
+		int top, newTop, nextTop, newNextTop;
+		int rowSquares;
+		double landing = 0;
+
+		for (int i = 0; i < 4; i++) {
+			squareX[i] = tetriminoList[index][i].x + offsetX + shift;
+			squareY[i] = tetriminoList[index][i].y + offsetY;
+			if (squareX[i] > width - 2 || columnTop[squareX[i]] <= squareY[i]) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			drop = Math.min(drop, columnTop[squareX[i]] - 1 - squareY[i]);
+			firstColumn = Math.min(firstColumn, squareX[i]);
+			lastColumn = Math.max(lastColumn, squareX[i]);
+		}
+		for (int i = 0; i < 4; i++) {
+			squareY[i] += drop;
+			landing += height - 1 - squareY[i];
+		}
+
+		// Count the lines the tetrimino completes, each row once
+		for (int i = 0; i < 4; i++) {
+			rowSquares = 0;
+			for (int j = 0; j < 4; j++) {
+				if (squareY[j] == squareY[i]) {
+					if (j < i) {
+						rowSquares = -1;
+						break;
+					}
+					rowSquares++;
+				}
+			}
+			if (rowSquares > 0 && rowFill[squareY[i]] + rowSquares == width - 2) {
+				lines++;
+			}
+		}
+		if (lines > 0) {
+			return scoreAfterLines(squareX, squareY, lines) + LANDING_WEIGHT * landing / 4;
+		}
+
+		// Only the tetrimino's columns change: each gets taller, and gets a hole for every empty square the tetrimino lands above
+		for (int x = firstColumn; x <= lastColumn; x++) {
+			top = columnTop[x];
+			newTop = pieceTop(x, top, squareX, squareY);
+			heightSum += top - newTop;
+			holes += top - 1 - pieceBottom(x, squareX, squareY);
+		}
+		for (int x = Math.max(1, firstColumn - 1); x <= Math.min(width - 3, lastColumn); x++) {
+			top = columnTop[x];
+			nextTop = columnTop[x + 1];
+			newTop = x >= firstColumn ? pieceTop(x, top, squareX, squareY) : top;
+			newNextTop = x + 1 <= lastColumn ? pieceTop(x + 1, nextTop, squareX, squareY) : nextTop;
+			bumpiness += Math.abs(newTop - newNextTop) - Math.abs(top - nextTop);
+		}
+		return HEIGHT_WEIGHT * heightSum + HOLES_WEIGHT * holes + BUMPINESS_WEIGHT * bumpiness + LANDING_WEIGHT * landing / 4;
+	}
+
+	// Return the highest row of a column once the tetrimino has landed in it, given its highest landed square
+	private int pieceTop(int x, int top, int[] squareX, int[] squareY) {
+		for (int i = 0; i < 4; i++) {
+			if (squareX[i] == x) {
+				top = Math.min(top, squareY[i]);
+			}
+		}
+		return top;
+	}
+
+	// Return the lowest row of the tetrimino in a column it covers
+	private int pieceBottom(int x, int[] squareX, int[] squareY) {
+		int bottom = 0;
+
+		for (int i = 0; i < 4; i++) {
+			if (squareX[i] == x) {
+				bottom = Math.max(bottom, squareY[i]);
+			}
+		}
+		return bottom;
+	}
+
+	// Score the board with the tetrimino landed and the complete lines removed, going over every square
+	private double scoreAfterLines(int[] squareX, int[] squareY, int lines) {
+		int heightSum = 0, holes = 0, bumpiness = 0;
+		int rowsLeft, columnHeight, lastHeight = 0;
+		boolean filled;
+
+		for (int x = 1; x < width - 1; x++) {
+			columnHeight = 0;
+			rowsLeft = height - 2 - lines; // Rows from this one to the bottom once the lines are removed
+			// Go down the column: the first filled square sets its height, and every empty square below it is a hole
+			for (int y = 1; y < height - 1; y++) {
+				if (rowFill[y] + pieceSquares(y, squareY) == width - 2) {
+					continue;
+				}
+				filled = board.isBlocked(x, y) == true || isPieceSquare(x, y, squareX, squareY) == true;
+				if (filled == true && columnHeight == 0) {
+					columnHeight = rowsLeft;
+				}
+				else if (filled == false && columnHeight != 0) {
+					holes++;
+				}
+				rowsLeft--;
+			}
+			heightSum += columnHeight;
+			if (x > 1) {
+				bumpiness += Math.abs(columnHeight - lastHeight);
+			}
+			lastHeight = columnHeight;
+		}
+		return HEIGHT_WEIGHT * heightSum + LINES_WEIGHT * lines + HOLES_WEIGHT * holes + BUMPINESS_WEIGHT * bumpiness;
+	}
+
+	private int pieceSquares(int y, int[] squareY) {
+		int count = 0;
+
+		for (int i = 0; i < 4; i++) {
+			if (squareY[i] == y) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private boolean isPieceSquare(int x, int y, int[] squareX, int[] squareY) {
+		for (int i = 0; i < 4; i++) {
+			if (squareX[i] == x && squareY[i] == y) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Scores a range of candidates, splitting it in half until it is small enough
+	private static class CandidateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final TetrisAutoplayer autoplayer; // Holds the scores and the board being scored
+		private int first, last; // Candidates first to last - 1
+		private int firstRotation, offsetX, offsetY;
+
+		CandidateTask(TetrisAutoplayer autoplayer, int first, int last, int firstRotation, int offsetX, int offsetY) {
+			this.autoplayer = autoplayer;
+			this.first = first;
+			this.last = last;
+			this.firstRotation = firstRotation;
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+		}
+
+		protected void compute() {
+			int middle, width;
+			int[] squareX, squareY;
+
+			if (last - first > CANDIDATES_PER_TASK) {
+				middle = (first + last) >>> 1;
+				invokeAll(new CandidateTask(autoplayer, first, middle, firstRotation, offsetX, offsetY), new CandidateTask(autoplayer, middle, last, firstRotation, offsetX, offsetY));
+				return;
+			}
+			squareX = new int[4];
+			squareY = new int[4];
+			width = autoplayer.width;
+			for (int candidate = first; candidate < last; candidate++) {
+				if (candidate % width < 1 || candidate % width > width - 2) {
+					autoplayer.scores[candidate] = Double.NEGATIVE_INFINITY;
+				}
+				else {
+					autoplayer.scores[candidate] = autoplayer.score(firstRotation + candidate / width, offsetX, offsetY, candidate % width, squareX, squareY);
+				}
+			}
+		}
+	}
+}
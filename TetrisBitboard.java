@@ -0,0 +1,190 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+import java.awt.Point;
+
+// Board of the Tetris game, one bit per square and one row of longs per line of the maze. The landed squares and the falling
+// tetrimino are kept apart, so collisions are bit tests and a full line is a comparison of a few words; the maze is only
+// told about the squares whose bit changed since it was last synced
+class TetrisBitboard {
+	private int width, height; // Size of the maze; the board is the inside of its border, from (1, 1) to (width - 2, height - 2)
+	private int words; // Longs per row
+	private long[][] landed; // Squares filled by tetriminos that landed, indexed by [y][x / 64]
+	private long[][] shown; // Squares filled in the maze as it was last synced
+	private long[] fullRow; // The bits of a row with every square inside the border filled
+	private Point[] piece; // Squares of the falling tetrimino, or null if there is none
+	private int dirtyTop, dirtyBottom; // Rows which may differ from the maze, or dirtyTop > dirtyBottom if none
+	private int dirtyLeft, dirtyRight; // Words of those rows which may differ from the maze
+	private int pieceTop, pieceBottom; // Rows the falling tetrimino covered when the maze was last synced
+	private int pieceLeft, pieceRight; // Words the falling tetrimino covered when the maze was last synced
+
+	public TetrisBitboard(int width, int height) {
+		this.width = width;
+		this.height = height;
+		words = (width + 63) / 64;
+		landed = new long[height][words];
+		shown = new long[height][words];
+		fullRow = new long[words];
+		for (int x = 1; x < width - 1; x++) {
+			fullRow[x / 64] |= 1L << (x % 64);
+		}
+		forgetChanges();
+	}
+
+	// Take every wall inside the maze's border as a landed square
+	public void loadFrom(Maze maze) {
+		for (int y = 1; y < height - 1; y++) {
+			Arrays.fill(landed[y], 0);
+			for (int x = 1; x < width - 1; x++) {
+				if (maze.getCellType(x, y) == Maze.WALL) {
+					landed[y][x / 64] |= 1L << (x % 64);
+				}
+			}
+			System.arraycopy(landed[y], 0, shown[y], 0, words);
+		}
+		piece = null;
+		forgetChanges();
+	}
+
+	// Check whether a square is on the border, outside the maze or already filled by a landed tetrimino
+	public boolean isBlocked(int x, int y) {
+		return x < 1 || x >= width - 1 || y < 1 || y >= height - 1 || (landed[y][x / 64] & (1L << (x % 64))) != 0;
+	}
+
+	// Check whether the squares, moved by (moveX, moveY), are all free
+	public boolean canPlace(Point[] squares, int moveX, int moveY) {
+		for (int i = 0; i < squares.length; i++) {
+			if (isBlocked(squares[i].x + moveX, squares[i].y + moveY) == true) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Set the falling tetrimino; the board keeps the array, so moving its squares moves the tetrimino on the board
+	public void setPiece(Point[] squares) {
+		piece = squares;
+	}
+
+	// Make the falling tetrimino part of the landed squares
+	public void lockPiece() {
+		if (piece == null) {
+			return;
+		}
+		for (int i = 0; i < piece.length; i++) {
+			landed[piece[i].y][piece[i].x / 64] |= 1L << (piece[i].x % 64);
+			markDirty(piece[i].y, piece[i].y, piece[i].x / 64, piece[i].x / 64);
+		}
+		piece = null;
+	}
+
+	// Remove every full line, moving the lines above it down, and return how many were removed
+	public int clearFullLines() {
+		int linesCleared = 0;
+		long[] removedRow;
+
+		for (int y = height - 2; y >= 1; y--) {
+			// A line moved down into y has to be checked as well, so stay on y until it isn't full
+			while (Arrays.equals(landed[y], fullRow) == true) {
+				removedRow = landed[y];
+				System.arraycopy(landed, 1, landed, 2, y - 1);
+				Arrays.fill(removedRow, 0);
+				landed[1] = removedRow;
+				markDirty(1, y, 0, words - 1);
+				linesCleared++;
+			}
+		}
+		return linesCleared;
+	}
+
+	// Fill a square inside the border as if a tetrimino had landed on it
+	public void fillSquare(int x, int y) {
+		landed[y][x / 64] |= 1L << (x % 64);
+		markDirty(y, y, x / 64, x / 64);
+	}
+
+	// Empty the board of landed squares
+	public void clear() {
+		for (int y = 1; y < height - 1; y++) {
+			Arrays.fill(landed[y], 0);
+		}
+		markDirty(1, height - 2, 0, words - 1);
+	}
+
+	// Bring the maze up to date with the board, setting only the squares that changed since the last sync; return how many did
+	public int sync(Maze maze) {
+		long changed;
+		int x;
+		int squaresChanged = 0;
+
+		// The squares the tetrimino left and the squares it is on now may both have changed
+		markDirty(pieceTop, pieceBottom, pieceLeft, pieceRight);
+		pieceTop = height;
+		pieceBottom = -1;
+		pieceLeft = words;
+		pieceRight = -1;
+		if (piece != null) {
+			for (int i = 0; i < piece.length; i++) {
+				pieceTop = Math.min(pieceTop, piece[i].y);
+				pieceBottom = Math.max(pieceBottom, piece[i].y);
+				pieceLeft = Math.min(pieceLeft, piece[i].x / 64);
+				pieceRight = Math.max(pieceRight, piece[i].x / 64);
+			}
+			markDirty(pieceTop, pieceBottom, pieceLeft, pieceRight);
+		}
+
+		for (int y = dirtyTop; y <= dirtyBottom; y++) {
+			for (int word = dirtyLeft; word <= dirtyRight; word++) {
+				changed = (landed[y][word] | pieceBits(y, word)) ^ shown[y][word];
+				while (changed != 0) {
+					x = word * 64 + Long.numberOfTrailingZeros(changed);
+					shown[y][word] ^= Long.lowestOneBit(changed);
+					maze.setCellType(x, y, (shown[y][word] & Long.lowestOneBit(changed)) != 0 ? Maze.WALL : Maze.PASSAGE);
+					changed &= changed - 1;
+					squaresChanged++;
+				}
+			}
+		}
+		dirtyTop = height;
+		dirtyBottom = -1;
+		dirtyLeft = words;
+		dirtyRight = -1;
+		return squaresChanged;
+	}
+
+	// Return the bits of the falling tetrimino in one word of a row
+	private long pieceBits(int y, int word) {
+		long bits = 0;
+
+		if (piece == null) {
+			return 0;
+		}
+		for (int i = 0; i < piece.length; i++) {
+			if (piece[i].y == y && piece[i].x / 64 == word) {
+				bits |= 1L << (piece[i].x % 64);
+			}
+		}
+		return bits;
+	}
+
+	private void markDirty(int top, int bottom, int left, int right) {
+		if (top > bottom) {
+			return;
+		}
+		dirtyTop = Math.max(1, Math.min(dirtyTop, top));
+		dirtyBottom = Math.min(height - 2, Math.max(dirtyBottom, bottom));
+		dirtyLeft = Math.min(dirtyLeft, left);
+		dirtyRight = Math.max(dirtyRight, right);
+	}
+
+	// Take the maze as matching the board
+	private void forgetChanges() {
+		dirtyTop = height;
+		dirtyBottom = -1;
+		dirtyLeft = words;
+		dirtyRight = -1;
+		pieceTop = height;
+		pieceBottom = -1;
+		pieceLeft = words;
+		pieceRight = -1;
+	}
+}
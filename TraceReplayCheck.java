@@ -0,0 +1,105 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.io.*;
+
+// The -record and -replay options of the headless runner: record a step trace of one maze, and replay a trace poll by poll
+class TraceReplayCheck {
+	// Solve one maze from the generator with the controller recording a step trace of every poll
+	public static void record(String generatorName, int size, int runs, String recordFile) throws Exception {
+		Maze maze = HeadlessRunner.createGenerator(generatorName, size).generateMaze();
+		long maxPolls = (long)HeadlessRunner.POLLS_PER_SQUARE * maze.getWidth() * maze.getHeight();
+		long polls = 0;
+		GrandFinale controller = new GrandFinale();
+		HeadlessRobot robot = new HeadlessRobot(maze);
+
+		System.setProperty("grandfinale.trace", recordFile);
+		try {
+			for (int run = 0; run < runs; run++) {
+				while (robot.isAtTarget() == false && polls < maxPolls) {
+					controller.controlRobot(robot);
+					robot.advance();
+					polls++;
+				}
+				controller.reset();
+				robot.reset();
+			}
+		}
+		finally {
+			System.clearProperty("grandfinale.trace");
+		}
+		System.out.printf("Recorded %d polls over %d runs of a %dx%d %s maze to %s (%d bytes)%n", polls, runs, maze.getWidth(), maze.getHeight(),
+			generatorName, recordFile, new File(recordFile).length());
+	}
+
+	/* Replay a step trace: a new controller, set to replay the trace's seed and exploration, is polled on the traced maze without waiting between polls,
+	   and every poll must leave the robot facing the heading it faced in the trace, and every checkpoint must match. Each poll is
+	   timed; with a latency file, the time of every poll is written to it, one line per poll, so the files of two builds replaying
+	   the same trace can be compared line by line. Returns false at the first poll that differs from the trace
+	 */
+	public static boolean replay(String replayFile, String latencyFile) throws Exception {
+		StepTrace trace = StepTrace.open(new File(replayFile));
+		ValueHistogram latencies = new ValueHistogram();
+		PrintWriter latencyOutput = null;
+		GrandFinale controller;
+		HeadlessRobot robot;
+		String mismatch = null;
+		long poll = 0, startTime, pollNanos, elapsedTime = 0;
+
+		controller = new GrandFinale();
+		controller.replayTrace(trace.getSeed(), trace.isDirectedExploration());
+		robot = new HeadlessRobot(trace.getMaze());
+		if (latencyFile != null) {
+			latencyOutput = new PrintWriter(new BufferedWriter(new FileWriter(latencyFile)));
+			latencyOutput.println("poll,run,searchMode,nanos");
+		}
+
+		try {
+			while (mismatch == null && trace.nextChunk() == true) {
+				// The games need a player, so the trace can only be replayed up to the first one
+				if (trace.getRun() >= HeadlessRunner.MAX_RUNS) {
+					System.out.println("The trace goes on into a game, which can't be replayed; stopped at run " + HeadlessRunner.MAX_RUNS);
+					break;
+				}
+				if (trace.getFirstPoll() != poll || trace.getRun() != robot.getRuns() || trace.getLocation().equals(robot.getLocation()) == false
+					|| trace.getCheckpointHeading() != robot.getHeading() || (poll > 0 && trace.getSearchMode() != controller.getSearchMode())
+					|| (poll > 0 && trace.getRandomState() != controller.getRandomState())) {
+					mismatch = "the checkpoint before poll " + trace.getFirstPoll() + " doesn't match poll " + poll + " of the replay";
+					break;
+				}
+				for (int i = 0; i < trace.getHeadingCount(); i++, poll++) {
+					startTime = System.nanoTime();
+					controller.controlRobot(robot);
+					pollNanos = System.nanoTime() - startTime;
+					elapsedTime += pollNanos;
+					latencies.record(pollNanos);
+					if (latencyOutput != null) {
+						latencyOutput.println(poll + "," + robot.getRuns() + "," + controller.getSearchMode() + "," + pollNanos);
+					}
+					if (robot.getHeading() != trace.getHeading(i)) {
+						mismatch = "poll " + poll + " left the robot facing " + robot.getHeading() + " instead of " + trace.getHeading(i);
+						break;
+					}
+					robot.advance();
+					if (robot.isAtTarget() == true) {
+						controller.reset();
+						robot.reset();
+					}
+				}
+			}
+		}
+		finally {
+			trace.close();
+			if (latencyOutput != null) {
+				latencyOutput.close();
+			}
+		}
+
+		if (mismatch != null) {
+			System.out.println("The replay differs from the trace: " + mismatch);
+			return false;
+		}
+		System.out.printf("Replayed %d polls with seed %d in %.2f ms, the same as the trace; poll latency p50 %d ns, p99 %d ns, p99.9 %d ns, max %d ns%n",
+			poll, trace.getSeed(), elapsedTime / 1e6, latencies.valueAtPercentile(50), latencies.valueAtPercentile(99),
+			latencies.valueAtPercentile(99.9), latencies.getMaximum());
+		return true;
+	}
+}
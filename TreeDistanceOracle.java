@@ -0,0 +1,153 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+
+// Answer distance and next heading queries between any two squares of a maze without loops; such a maze is a tree, so the
+// shortest path between two squares always goes through their lowest common ancestor, which is found with an Euler tour
+// of the tree and a sparse table over it
+class TreeDistanceOracle {
+	private int gridSize; // Width and height of the grid the squares are indexed in
+	private int[] nodeOfSquare; // Node number of each square, or -1 if the square is a wall or wasn't reached
+	private int[] squareOfNode; // Square index (x * gridSize + y) of each node
+	private int[] parent; // Parent of each node, or -1 for the root
+	private int[] depth; // Number of steps from the root to each node
+	private int[] firstVisit; // Position of the first appearance of each node in the Euler tour
+	private int[] lastVisit; // Position of the last appearance of each node in the Euler tour
+	private int[][] sparseTable; // sparseTable[k][i] holds the shallowest node in the Euler tour between positions i and i + 2^k - 1
+
+	public TreeDistanceOracle(int gridSize) {
+		this.gridSize = gridSize;
+	}
+
+	/* Build the oracle over all the non-wall squares reachable from the root square without going past the leaf square; return
+	   false if the maze has a loop. The leaf is the target: the robot never stands on it, so the squares around it are never
+	   looked at and stay 0, and searching beyond it would wander through unseen walls and find loops that aren't there
+	 */
+	public boolean build(int[][] grid, int rootX, int rootY, int leafX, int leafY) {
+		int nodeCount = 0;
+		int eulerLength = 0;
+		int[] eulerTour = new int[2 * gridSize * gridSize];
+		int[] stack = new int[gridSize * gridSize];
+		int[] stackHeading = new int[gridSize * gridSize];
+		int stackSize = 0;
+		int node, child, heading;
+		int testX, testY, testSquare;
+
+		nodeOfSquare = new int[gridSize * gridSize];
+		squareOfNode = new int[gridSize * gridSize];
+		parent = new int[gridSize * gridSize];
+		depth = new int[gridSize * gridSize];
+		firstVisit = new int[gridSize * gridSize];
+		lastVisit = new int[gridSize * gridSize];
+		Arrays.fill(nodeOfSquare, -1);
+
+		// Start the depth-first search from the root
+		nodeOfSquare[rootX * gridSize + rootY] = nodeCount;
+		squareOfNode[nodeCount] = rootX * gridSize + rootY;
+		parent[nodeCount] = -1;
+		depth[nodeCount] = 0;
+		firstVisit[nodeCount] = eulerLength;
+		eulerTour[eulerLength++] = nodeCount;
+		stack[stackSize] = nodeCount++;
+		stackHeading[stackSize++] = IRobot.NORTH;
+
+		while (stackSize > 0) {
+			node = stack[stackSize - 1];
+			heading = stackHeading[stackSize - 1]++;
+			// If all the squares around this one were looked at, or it is the leaf, go back to its parent
+			if (heading > IRobot.WEST || squareOfNode[node] == leafX * gridSize + leafY) {
+				lastVisit[node] = eulerLength - 1;
+				stackSize--;
+				if (stackSize > 0) {
+					eulerTour[eulerLength++] = stack[stackSize - 1];
+				}
+				continue;
+			}
+
+			testX = squareOfNode[node] / gridSize + Headings.x(heading);
+			testY = squareOfNode[node] % gridSize + Headings.y(heading);
+			if (testX < 0 || testX >= gridSize || testY < 0 || testY >= gridSize || grid[testX][testY] == -1) {
+				continue;
+			}
+			testSquare = testX * gridSize + testY;
+			if (nodeOfSquare[testSquare] != -1) {
+				// Reaching an already visited square other than the parent means the maze has a loop
+				if (parent[node] == -1 || squareOfNode[parent[node]] != testSquare) {
+					return false;
+				}
+				continue;
+			}
+
+			child = nodeCount++;
+			nodeOfSquare[testSquare] = child;
+			squareOfNode[child] = testSquare;
+			parent[child] = node;
+			depth[child] = depth[node] + 1;
+			firstVisit[child] = eulerLength;
+			eulerTour[eulerLength++] = child;
+			stack[stackSize] = child;
+			stackHeading[stackSize++] = IRobot.NORTH;
+		}
+
+		// Build the sparse table of the shallowest nodes over the Euler tour
+		sparseTable = new int[32 - Integer.numberOfLeadingZeros(eulerLength)][];
+		sparseTable[0] = Arrays.copyOf(eulerTour, eulerLength);
+		for (int k = 1; k < sparseTable.length; k++) {
+			sparseTable[k] = new int[eulerLength - (1 << k) + 1];
+			for (int i = 0; i < sparseTable[k].length; i++) {
+				sparseTable[k][i] = shallowerNode(sparseTable[k - 1][i], sparseTable[k - 1][i + (1 << (k - 1))]);
+			}
+		}
+
+		return true;
+	}
+
+	// Return the number of steps between two squares, or -1 if either of them isn't in the tree
+	public int distance(int fromSquare, int toSquare) {
+		int from = nodeOfSquare[fromSquare];
+		int to = nodeOfSquare[toSquare];
+
+		if (from == -1 || to == -1) {
+			return -1;
+		}
+		return depth[from] + depth[to] - 2 * depth[lowestCommonAncestor(from, to)];
+	}
+
+	// Return the heading of the first step on the path between two different squares of the tree
+	public int nextHeading(int fromSquare, int toSquare) {
+		int from = nodeOfSquare[fromSquare];
+		int to = nodeOfSquare[toSquare];
+		int testX, testY, child;
+
+		// If the destination is below this square, step into the child whose subtree holds it, otherwise step up to the parent
+		if (isAncestor(from, to) == true) {
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				testX = fromSquare / gridSize + Headings.x(heading);
+				testY = fromSquare % gridSize + Headings.y(heading);
+				if (testX < 0 || testX >= gridSize || testY < 0 || testY >= gridSize) {
+					continue;
+				}
+				child = nodeOfSquare[testX * gridSize + testY];
+				if (child != -1 && parent[child] == from && isAncestor(child, to) == true) {
+					return heading;
+				}
+			}
+		}
+		return Headings.between(fromSquare, squareOfNode[parent[from]], gridSize);
+	}
+
+	private boolean isAncestor(int ancestor, int node) {
+		return firstVisit[ancestor] <= firstVisit[node] && lastVisit[node] <= lastVisit[ancestor];
+	}
+
+	private int lowestCommonAncestor(int a, int b) {
+		int left = Math.min(firstVisit[a], firstVisit[b]);
+		int right = Math.max(firstVisit[a], firstVisit[b]);
+		int k = 31 - Integer.numberOfLeadingZeros(right - left + 1);
+
+		return shallowerNode(sparseTable[k][left], sparseTable[k][right - (1 << k) + 1]);
+	}
+
+	private int shallowerNode(int a, int b) {
+		return depth[a] <= depth[b] ? a : b;
+	}
+}
@@ -0,0 +1,41 @@
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.awt.Point;
+
+// The headless runner's check that a maze without loops gets the tree distance oracle
+class TreeOracleCheck {
+	// A maze without loops that the robot mapped whole must get a tree distance oracle, not fall back to A*
+	public static boolean fellBack(GrandFinale controller) {
+		return controller.usedTreeOracle() == false && controller.isMapPartial() == false;
+	}
+
+	// Check whether the passages reachable from the start form a tree: connected, with one fewer joins than squares
+	public static boolean isTree(Maze maze) {
+		int width = maze.getWidth();
+		int height = maze.getHeight();
+		boolean[] seen = new boolean[width * height];
+		int[] queue = new int[width * height];
+		int head = 0, tail = 0;
+		int square, nextX, nextY;
+		long joins = 0;
+		Point start = maze.getStart();
+
+		seen[start.x * height + start.y] = true;
+		queue[tail++] = start.x * height + start.y;
+		while (head < tail) {
+			square = queue[head++];
+			for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+				nextX = square / height + HeadlessRobot.stepX(heading);
+				nextY = square % height + HeadlessRobot.stepY(heading);
+				if (nextX >= 0 && nextY >= 0 && nextX < width && nextY < height && maze.getCellType(nextX, nextY) == Maze.PASSAGE) {
+					joins++;
+					if (seen[nextX * height + nextY] == false) {
+						seen[nextX * height + nextY] = true;
+						queue[tail++] = nextX * height + nextY;
+					}
+				}
+			}
+		}
+		// Every join was counted from both of its squares
+		return joins / 2 == tail - 1;
+	}
+}
@@ -0,0 +1,70 @@
+/* Histogram of non-negative values in the style of HdrHistogram: values below 64 have a bucket each, and every power of two
+   above that is split into 32 buckets, so a value is known to within about 3% with under two thousand counters
+ */
+class ValueHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private long[] counts = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+	private long totalCount;
+	private long minimum = Long.MAX_VALUE;
+	private long maximum;
+	private double sum;
+
+	public synchronized void record(long value) {
+		value = Math.max(0, value);
+		counts[bucketOf(value)]++;
+		totalCount++;
+		minimum = Math.min(minimum, value);
+		maximum = Math.max(maximum, value);
+		sum += value;
+	}
+
+	public synchronized long getCount() {
+		return totalCount;
+	}
+
+	public synchronized long getMinimum() {
+		return totalCount == 0 ? 0 : minimum;
+	}
+
+	public synchronized long getMaximum() {
+		return maximum;
+	}
+
+	public synchronized double getMean() {
+		return totalCount == 0 ? 0 : sum / totalCount;
+	}
+
+	// Return the largest value that falls in the same bucket as the value at the given percentile
+	public synchronized long valueAtPercentile(double percentile) {
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100 * totalCount));
+		long seen = 0;
+
+		for (int bucket = 0; bucket < counts.length; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				return Math.min(maximum, highestValueIn(bucket));
+			}
+		}
+		return maximum;
+	}
+
+	private static int bucketOf(long value) {
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+		if (shift <= 0) {
+			return (int)value;
+		}
+		return (shift + 1) * SUB_BUCKETS + (int)(value >>> shift) - SUB_BUCKETS;
+	}
+
+	private static long highestValueIn(int bucket) {
+		int shift = bucket / SUB_BUCKETS - 1;
+
+		if (shift <= 0) {
+			return bucket;
+		}
+		return ((long)(bucket % SUB_BUCKETS + SUB_BUCKETS + 1) << shift) - 1;
+	}
+}
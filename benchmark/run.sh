@@ -0,0 +1,26 @@
+#!/bin/sh
+# Compile the solver and the benchmarks, then run them. Any arguments are passed on to JMH, e.g. ./run.sh aStar -p size=101
+set -e
+cd "$(dirname "$0")"
+
+JMH_VERSION=1.37
+MAVEN=https://repo1.maven.org/maven2
+LIBRARIES="org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar
+org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar
+net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar
+org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"
+
+# JMH is not shipped with the project; fetch it the first time
+mkdir -p lib
+for library in $LIBRARIES; do
+	if [ ! -f "lib/$(basename "$library")" ]; then
+		curl -sSfo "lib/$(basename "$library")" "$MAVEN/$library"
+	fi
+done
+
+CLASSPATH="../maze-environment.jar:build/solver:build/benchmark:$(echo lib/*.jar | tr ' ' ':')"
+rm -rf build
+mkdir -p build/solver build/benchmark
+javac -cp ../maze-environment.jar -d build/solver ../*.java
+javac -cp "$CLASSPATH" -processor org.openjdk.jmh.generators.BenchmarkProcessor -d build/benchmark src/benchmark/*.java
+java -cp "$CLASSPATH" benchmark.BenchmarkMain "$@"
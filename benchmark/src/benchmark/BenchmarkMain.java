@@ -0,0 +1,23 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/* Run the benchmarks with the GC profiler always on, so every result comes with bytes allocated per operation, and with the maze
+   knowledge cache off, so that a controller starting on a maze already solved still explores it. Takes the usual JMH options,
+   e.g. "aStar -p generator=Loopy -p size=101" to run a single benchmark on one kind of maze
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+			.parent(new CommandLineOptions(args))
+			.addProfiler(GCProfiler.class)
+			.jvmArgsAppend("-Djava.awt.headless=true", "-Dgrandfinale.cache.entries=0")
+			.build();
+
+		new Runner(options).run();
+	}
+}
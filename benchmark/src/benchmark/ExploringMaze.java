@@ -0,0 +1,35 @@
+package benchmark;
+
+import uk.ac.warwick.dcs.maze.logic.*;
+import org.openjdk.jmh.annotations.*;
+
+/* A robot part way through its first run. Each step is one poll in Explore or Backtrack mode followed by a move, as in the
+   environment; when the robot reaches the target, a new controller and robot start over on the same maze, so the set-up of a
+   new maze is spread over the steps of the run like it is for real
+ */
+@State(Scope.Thread)
+public class ExploringMaze {
+	private Maze maze;
+	private Object controller;
+	private IRobot robot;
+
+	@Setup(Level.Trial)
+	public void setUp(SolvedMaze solvedMaze) {
+		maze = solvedMaze.maze;
+		startRun();
+	}
+
+	int step() throws Throwable {
+		if ((boolean)Solver.IS_AT_TARGET.invokeExact((Object)robot) == true) {
+			startRun();
+		}
+		Solver.CONTROL_ROBOT.invokeExact(controller, robot);
+		Solver.ADVANCE.invokeExact((Object)robot);
+		return robot.getHeading();
+	}
+
+	private void startRun() {
+		controller = Solver.newController();
+		robot = Solver.newRobot(maze);
+	}
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.util.*;
+import org.openjdk.jmh.annotations.*;
+
+/* A loopy maze from the streaming generator, far larger than the controller's own grid, with the hierarchical planner already
+   built for it and a fixed list of squares to search between; each call searches between the next pair on the list
+ */
+@State(Scope.Thread)
+public class LargeMaze {
+	private static final int PAIRS = 64;
+	private static final int CLUSTER_SIZE = 32;
+
+	@Param({"2001", "3001"})
+	public int size;
+
+	int[][] grid;
+	int width, height;
+	Object hierarchicalPlanner;
+	Object flowField;
+	Object path;
+	private int[] pairSquares = new int[2 * PAIRS];
+	private int nextPair;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		Maze maze = Solver.generateMaze("EllerLoopy", size);
+		List<Integer> openSquares = new ArrayList<Integer>();
+		Random random = new Random(1);
+
+		width = maze.getWidth();
+		height = maze.getHeight();
+		grid = new int[size][size];
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				grid[x][y] = maze.getCellType(x, y) == Maze.WALL ? -1 : 0;
+				if (grid[x][y] == 0) {
+					openSquares.add(x * size + y);
+				}
+			}
+		}
+		for (int i = 0; i < pairSquares.length; i++) {
+			pairSquares[i] = openSquares.get(random.nextInt(openSquares.size()));
+		}
+		hierarchicalPlanner = Solver.newInstance(Solver.HIERARCHICAL_PLANNER, size, CLUSTER_SIZE);
+		Solver.HIERARCHICAL_BUILD.invokeExact(hierarchicalPlanner, grid, width, height);
+		flowField = Solver.newInstance(Solver.FLOW_FIELD, size);
+		path = Solver.newInstance(Solver.HEADING_PATH);
+	}
+
+	int startSquare() {
+		return pairSquares[2 * nextPair];
+	}
+
+	int targetSquare() {
+		return pairSquares[2 * nextPair + 1];
+	}
+
+	// Move on to the next pair once a call has searched between the current one
+	void nextPair() {
+		nextPair = (nextPair + 1) % PAIRS;
+	}
+}
@@ -0,0 +1,48 @@
+package benchmark;
+
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.awt.Point;
+import org.openjdk.jmh.annotations.*;
+
+// A maze the controller has already explored, so that the shortest path methods can be measured on their own
+@State(Scope.Thread)
+public class SolvedMaze {
+	@Param({"Prim", "Loopy", "Blank", "Hill"})
+	public String generator;
+
+	@Param({"31", "101"})
+	public int size;
+
+	Maze maze;
+	Object controller;
+	IRobot robot;
+	Point startSquare;
+	Point targetSquare;
+	int searchSquaresExpanded; // Squares the first search expanded; every later one should expand the same
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		maze = Solver.generateMaze(generator, size);
+		controller = Solver.newController();
+		robot = Solver.newRobot(maze);
+		Solver.runFirstRun(controller, robot);
+		startSquare = robot.getLocation();
+		targetSquare = robot.getTargetLocation();
+
+		// Leave the parent headings of a finished search for retracePath
+		Solver.PREPARE_MAZE_GRID.invokeExact(controller, startSquare);
+		Solver.A_STAR.invokeExact(controller, startSquare, targetSquare);
+		searchSquaresExpanded = (int)Solver.getField(controller, "squaresExpanded");
+	}
+
+	// Check that the last search of the iteration expanded as many squares as the first, so that a benchmark which stopped
+	// searching, e.g. because the grid was not put back, fails instead of timing nothing
+	@TearDown(Level.Iteration)
+	public void checkSearch() {
+		int squaresExpanded = (int)Solver.getField(controller, "squaresExpanded");
+
+		if (squaresExpanded != searchSquaresExpanded) {
+			throw new IllegalStateException("A* expanded " + squaresExpanded + " squares instead of " + searchSquaresExpanded);
+		}
+	}
+}
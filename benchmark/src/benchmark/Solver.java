@@ -0,0 +1,157 @@
+package benchmark;
+
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.awt.Point;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/* The solver and the headless robot live in the default package, which a named package cannot import, and the methods worth
+   measuring are private. This class finds them once through method handles; the handles take the controller as an Object, so
+   benchmarks can call them with invokeExact and the JIT can inline them like ordinary calls.
+ */
+final class Solver {
+	static final Class<?> CONTROLLER = load("GrandFinale");
+	static final Class<?> ROBOT = load("HeadlessRobot");
+	static final Class<?> RUNNER = load("HeadlessRunner");
+	static final Class<?> TETRIS_BOARD = load("TetrisBitboard");
+	static final Class<?> HIERARCHICAL_PLANNER = load("HierarchicalPlanner");
+	static final Class<?> FLOW_FIELD = load("FlowField");
+	static final Class<?> HEADING_PATH = load("HeadingPath");
+
+	static final MethodHandle CONTROL_ROBOT = method(CONTROLLER, "controlRobot", void.class, IRobot.class);
+	static final MethodHandle RESET = method(CONTROLLER, "reset", void.class);
+	static final MethodHandle A_STAR = method(CONTROLLER, "aStarAlgorithm", void.class, Point.class, Point.class);
+	static final MethodHandle RETRACE_PATH = method(CONTROLLER, "retracePath", void.class, Point.class, Point.class);
+	static final MethodHandle PREPARE_MAZE_GRID = method(CONTROLLER, "prepareMazeGrid", void.class, Point.class);
+	static final MethodHandle ERASE_LINES = method(CONTROLLER, "eraseLines", void.class, IRobot.class);
+	static final MethodHandle ADVANCE = method(ROBOT, "advance", void.class);
+	static final MethodHandle IS_AT_TARGET = method(ROBOT, "isAtTarget", boolean.class);
+	static final MethodHandle ROBOT_RESET = method(ROBOT, "reset", void.class);
+	static final MethodHandle LOAD_BOARD = method(TETRIS_BOARD, "loadFrom", void.class, Maze.class);
+	static final MethodHandle HIERARCHICAL_BUILD = method(HIERARCHICAL_PLANNER, "build", void.class, int[][].class, int.class, int.class);
+	static final MethodHandle HIERARCHICAL_FIND_PATH = method(HIERARCHICAL_PLANNER, "findPath", int.class, int.class, int.class, HEADING_PATH);
+	static final MethodHandle FLOW_FIELD_BUILD = method(FLOW_FIELD, "build", void.class, int[][].class, int.class, int.class, int.class);
+
+	private Solver() {
+	}
+
+	public static Object newController() {
+		try {
+			return lookup(CONTROLLER).findConstructor(CONTROLLER, MethodType.methodType(void.class)).invoke();
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static IRobot newRobot(Maze maze) {
+		try {
+			return (IRobot)lookup(ROBOT).findConstructor(ROBOT, MethodType.methodType(void.class, Maze.class)).invoke(maze);
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static Object newTetrisBoard(int width, int height) {
+		try {
+			return lookup(TETRIS_BOARD).findConstructor(TETRIS_BOARD, MethodType.methodType(void.class, int.class, int.class)).invoke(width, height);
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Create one of the solver's helper classes, e.g. newInstance(FLOW_FIELD, 2001)
+	public static Object newInstance(Class<?> owner, Object... arguments) {
+		Class<?>[] parameterTypes = new Class<?>[arguments.length];
+
+		// Every constructor measured takes ints
+		for (int i = 0; i < arguments.length; i++) {
+			parameterTypes[i] = int.class;
+		}
+		try {
+			return lookup(owner).findConstructor(owner, MethodType.methodType(void.class, parameterTypes)).invokeWithArguments(arguments);
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Build a maze with one of the environment's generators, sized the same way the headless runner does it
+	public static Maze generateMaze(String generatorName, int size) {
+		try {
+			MethodHandle createGenerator = lookup(RUNNER).findStatic(RUNNER, "createGenerator", MethodType.methodType(IMazeGenerator.class, String.class, int.class));
+
+			return ((IMazeGenerator)createGenerator.invoke(generatorName, size)).generateMaze();
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Let the controller explore the maze and walk back to the start, leaving it ready for the shortest path runs
+	public static void runFirstRun(Object controller, IRobot robot) {
+		try {
+			while ((boolean)IS_AT_TARGET.invokeExact((Object)robot) == false) {
+				CONTROL_ROBOT.invokeExact(controller, robot);
+				ADVANCE.invokeExact((Object)robot);
+			}
+			RESET.invokeExact(controller);
+			ROBOT_RESET.invokeExact((Object)robot);
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static Object getField(Object controller, String name) {
+		try {
+			return lookup(CONTROLLER).findVarHandle(CONTROLLER, name, CONTROLLER.getDeclaredField(name).getType()).get(controller);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static void setField(Object controller, String name, Object value) {
+		try {
+			lookup(CONTROLLER).findVarHandle(CONTROLLER, name, CONTROLLER.getDeclaredField(name).getType()).set(controller, value);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Class<?> load(String name) {
+		try {
+			return Class.forName(name);
+		}
+		catch (ClassNotFoundException e) {
+			throw new IllegalStateException(name + " is not on the class path; compile the solver first", e);
+		}
+	}
+
+	private static MethodHandles.Lookup lookup(Class<?> owner) throws IllegalAccessException {
+		return MethodHandles.privateLookupIn(owner, MethodHandles.lookup());
+	}
+
+	// Find an instance method and widen its receiver, and any parameter of a solver class, to Object
+	private static MethodHandle method(Class<?> owner, String name, Class<?> returnType, Class<?>... parameterTypes) {
+		try {
+			MethodHandle handle = lookup(owner).findVirtual(owner, name, MethodType.methodType(returnType, parameterTypes));
+			MethodType widenedType = handle.type().changeParameterType(0, Object.class);
+
+			for (int i = 0; i < parameterTypes.length; i++) {
+				if (parameterTypes[i].getPackageName().isEmpty() == true) {
+					widenedType = widenedType.changeParameterType(i + 1, Object.class);
+				}
+			}
+			return handle.asType(widenedType);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
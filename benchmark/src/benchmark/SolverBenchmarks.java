@@ -0,0 +1,68 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Time taken by the solver's hot paths; run through BenchmarkMain to get the allocation figures alongside
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmarks {
+	/* The grid is put back the way findShortestPath leaves it before every search, inside the measurement: A* on a grid another
+	   search has already filled in stops at the first square. Since the grid became epoch-stamped, the restore is a constant
+	   few nanoseconds (see prepareMazeGrid), so nearly all of the time is the search
+	 */
+	@Benchmark
+	public Object aStarAlgorithm(SolvedMaze solvedMaze) throws Throwable {
+		Solver.PREPARE_MAZE_GRID.invokeExact(solvedMaze.controller, solvedMaze.startSquare);
+		Solver.A_STAR.invokeExact(solvedMaze.controller, solvedMaze.startSquare, solvedMaze.targetSquare);
+		return solvedMaze.controller;
+	}
+
+	@Benchmark
+	public Object retracePath(SolvedMaze solvedMaze) throws Throwable {
+		Solver.RETRACE_PATH.invokeExact(solvedMaze.controller, solvedMaze.startSquare, solvedMaze.targetSquare);
+		return solvedMaze.controller;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Object prepareMazeGrid(SolvedMaze solvedMaze) throws Throwable {
+		Solver.PREPARE_MAZE_GRID.invokeExact(solvedMaze.controller, solvedMaze.startSquare);
+		return solvedMaze.controller;
+	}
+
+	// One poll and move of the first run, covering exploreControl and backtrackControl
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public int exploreStep(ExploringMaze exploringMaze) throws Throwable {
+		return exploringMaze.step();
+	}
+
+	// One query on a large loopy maze, searching the cluster entrances and then the squares of the clusters on the route
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int hierarchicalSearch(LargeMaze largeMaze) throws Throwable {
+		int pathLength = (int)Solver.HIERARCHICAL_FIND_PATH.invokeExact(largeMaze.hierarchicalPlanner, largeMaze.startSquare(), largeMaze.targetSquare(), largeMaze.path);
+
+		largeMaze.nextPair();
+		return pathLength;
+	}
+
+	// The same query answered by a breadth-first search over every square, for comparison with hierarchicalSearch
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Object flatSearch(LargeMaze largeMaze) throws Throwable {
+		Solver.FLOW_FIELD_BUILD.invokeExact(largeMaze.flowField, largeMaze.grid, largeMaze.width, largeMaze.height, largeMaze.targetSquare());
+		largeMaze.nextPair();
+		return largeMaze.flowField;
+	}
+
+	@Benchmark
+	public Object eraseLines(TetrisBoard tetrisBoard) throws Throwable {
+		Solver.ERASE_LINES.invokeExact(tetrisBoard.controller, tetrisBoard.robot);
+		return tetrisBoard.robot.getMaze();
+	}
+}
@@ -0,0 +1,44 @@
+package benchmark;
+
+import uk.ac.warwick.dcs.maze.logic.*;
+import java.awt.Point;
+import org.openjdk.jmh.annotations.*;
+
+// A blank maze whose four bottom lines are full, with the last tetrimino lying across them: the most eraseLines ever has to do
+@State(Scope.Thread)
+public class TetrisBoard {
+	@Param({"31", "101"})
+	public int size;
+
+	Object controller;
+	IRobot robot;
+	private Maze maze;
+	private Object board;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Point[] tetrimino = new Point[4];
+
+		maze = Solver.generateMaze("Blank", size);
+		controller = Solver.newController();
+		robot = Solver.newRobot(maze);
+		for (int i = 0; i <= 3; i++) {
+			tetrimino[i] = new Point(1, maze.getHeight() - 2 - i);
+		}
+		Solver.setField(controller, "tetrimino", tetrimino);
+		Solver.setField(controller, "mazeX", maze.getWidth());
+		board = Solver.newTetrisBoard(maze.getWidth(), maze.getHeight());
+		Solver.setField(controller, "tetrisBoard", board);
+	}
+
+	// Erasing moves every line down, so fill the bottom lines again before each call and load them into the Tetris board
+	@Setup(Level.Invocation)
+	public void fillBottomLines() throws Throwable {
+		for (int y = maze.getHeight() - 5; y <= maze.getHeight() - 2; y++) {
+			for (int x = 1; x < maze.getWidth() - 1; x++) {
+				maze.setCellType(x, y, Maze.WALL);
+			}
+		}
+		Solver.LOAD_BOARD.invokeExact(board, maze);
+	}
+}